@@ -0,0 +1,310 @@
+package Benchmark;
+
+import Model.Book;
+import Model.CollectionOfBooks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrencyStress runs readers and writers on one CollectionOfBooks at
+ * the same time and checks that nothing breaks. The readers search for the
+ * books the library started with, which the writers never change, and
+ * must always find them. The writers add books, change and remove the
+ * books they added and sort the library. Books are not thread safe, so a
+ * writer only changes its own books. At the end the indexes are compared
+ * with the books of the library.
+ * <p>
+ * Usage: java -cp classes Benchmark.ConcurrencyStress [options]
+ * <pre>
+ *   -books 100000          books the library starts with
+ *   -readers 8             reading threads
+ *   -writers 2             writing threads
+ *   -seconds 10            duration of the test
+ *   -columnar true         store the books in columns
+ * </pre>
+ * The exit code is 1 if a thread failed or an index is wrong.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class ConcurrencyStress {
+
+    private static final long SEED = 42;
+    // Writes between two sorts of the library by a writer
+    private static final int SORT_INTERVAL = 5000;
+    // Books whose index entries are checked at the end
+    private static final int CHECKED = 1000;
+
+    private final CollectionOfBooks library;
+    private final List<Book> stable;
+    private final CountDownLatch start;
+    private final AtomicLong reads;
+    private final AtomicLong writes;
+    private final AtomicReference<Throwable> failure;
+    private volatile boolean running;
+
+    public ConcurrencyStress(CollectionOfBooks library, List<Book> stable) {
+        this.library = library;
+        this.stable = stable;
+        this.start = new CountDownLatch(1);
+        this.reads = new AtomicLong();
+        this.writes = new AtomicLong();
+        this.failure = new AtomicReference<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int books = 100000;
+        int readers = 8;
+        int writers = 2;
+        int seconds = 10;
+        boolean columnar = false;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "-books":
+                    books = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-readers":
+                    readers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-writers":
+                    writers = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-seconds":
+                    seconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-columnar":
+                    columnar = Boolean.parseBoolean(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        System.out.println("Creating " + books + " books");
+        ArrayList<Book> data = new SyntheticLibrary(SEED, books).books(books);
+        CollectionOfBooks library = new CollectionOfBooks();
+        library.setColumnar(columnar);
+        for(Book book: data) {
+            library.addBook(book);
+        }
+        // Books stored in columns are created again when they are used
+        ArrayList<Book> stable = new ArrayList<>(library.snapshot());
+
+        ConcurrencyStress stress = new ConcurrencyStress(library, stable);
+        boolean passed = stress.run(readers, writers, seconds) && stress.check();
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Run the readers and writers for a time.
+     * @param readers The number of reading threads.
+     * @param writers The number of writing threads.
+     * @param seconds The duration.
+     * @return true if no thread failed, false otherwise.
+     * @throws InterruptedException If the test was interrupted.
+     */
+    public boolean run(int readers, int writers, int seconds)
+            throws InterruptedException {
+        ArrayList<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < readers; i++) {
+            threads.add(new Thread(new Reader(SEED + i), "Reader " + i));
+        }
+        for(int i = 0; i < writers; i++) {
+            threads.add(new Thread(new Writer(SEED + readers + i),
+                    "Writer " + i));
+        }
+
+        running = true;
+        for(Thread thread: threads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running = false;
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        System.out.printf("%d readers: %,.0f reads/s%n", readers,
+                reads.get() / elapsed);
+        System.out.printf("%d writers: %,.0f writes/s%n", writers,
+                writes.get() / elapsed);
+        System.out.println("Books at the end: " + library.getSize());
+        if(failure.get() != null) {
+            System.out.println("A thread failed:");
+            failure.get().printStackTrace(System.out);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check that the indexes of the library find the books of the library.
+     * @return true if every checked book is found, false otherwise.
+     */
+    public boolean check() {
+        List<Book> books = library.snapshot();
+        Random random = new Random(SEED);
+        int wrong = 0;
+
+        if(books.size() != library.getSize()) {
+            System.out.println("Snapshot has " + books.size() + " books");
+            wrong++;
+        }
+        for(int i = 0; i < CHECKED && !books.isEmpty(); i++) {
+            Book book = books.get(random.nextInt(books.size()));
+            if(!found(book)) {
+                System.out.println("Not found: " + book.getIsbn() + " " +
+                        book.getTitle());
+                wrong++;
+            }
+        }
+        System.out.println("Books not found by the indexes: " + wrong);
+        return wrong == 0;
+    }
+
+    /**
+     * Determine whether the ISBN, title and author searches find a book.
+     */
+    private boolean found(Book book) {
+        String author = book.getAuthors().get(0).getName();
+        return containsBook(library.getBooksByExactIsbn(book.getIsbn()), book) &&
+                containsBook(library.getBooksByTitle(book.getTitle()), book) &&
+                containsBook(library.getBooksByAuthor(author), book);
+    }
+
+    /**
+     * Determine whether a search result holds a book. Books stored in
+     * columns may be created again, so equal values count as found.
+     */
+    private static boolean containsBook(List<Book> found, Book book) {
+        for(Book other: found) {
+            if(other == book || (other.getIsbn().equals(book.getIsbn()) &&
+                    other.getTitle().equals(book.getTitle()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void fail(Throwable ex) {
+        failure.compareAndSet(null, ex);
+        running = false;
+    }
+
+    /**
+     * A Reader searches for the books the library started with.
+     */
+    private class Reader implements Runnable {
+        private final Random random;
+
+        Reader(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                long count = 0;
+                while(running) {
+                    Book book = stable.get(random.nextInt(stable.size()));
+                    boolean ok;
+                    switch(random.nextInt(4)) {
+                        case 0:
+                            ok = containsBook(library.getBooksByExactIsbn(
+                                    book.getIsbn()), book);
+                            break;
+                        case 1:
+                            ok = containsBook(library.getBooksByTitle(
+                                    book.getTitle(), true), book);
+                            break;
+                        case 2:
+                            ok = containsBook(library.getBooksByPrice(
+                                    book.getPrice(), book.getPrice()), book);
+                            break;
+                        default:
+                            ok = library.getSize() >= 0;
+                            break;
+                    }
+                    if(!ok) {
+                        throw new IllegalStateException("Book not found: " +
+                                book.getIsbn() + " " + book.getTitle());
+                    }
+                    count++;
+                }
+                reads.addAndGet(count);
+            }
+            catch(Throwable ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    /**
+     * A Writer adds books, changes and removes the books it added and
+     * sorts the library from time to time.
+     */
+    private class Writer implements Runnable {
+        private final Random random;
+        private final SyntheticLibrary books;
+        private final ArrayList<Book> added;
+
+        Writer(long seed) {
+            this.random = new Random(seed);
+            this.books = new SyntheticLibrary(seed, stable.size());
+            this.added = new ArrayList<>();
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                long count = 0;
+                while(running) {
+                    int action = random.nextInt(10);
+                    if(added.isEmpty() || action < 4) {
+                        Book book = books.nextBook();
+                        library.addBook(book);
+                        added.add(book);
+                    }
+                    else if(action < 7) {
+                        Book book = added.remove(random.nextInt(added.size()));
+                        if(!library.removeBook(book)) {
+                            throw new IllegalStateException("Book not removed: " +
+                                    book.getIsbn());
+                        }
+                    }
+                    else if(action < 8) {
+                        Book book = added.get(random.nextInt(added.size()));
+                        book.setTitle(books.word() + " " + book.getTitle());
+                    }
+                    else if(action < 9) {
+                        Book book = added.get(random.nextInt(added.size()));
+                        book.setPrice(random.nextInt(10000) / 100.0);
+                    }
+                    else {
+                        Book book = added.get(random.nextInt(added.size()));
+                        book.addAuthor(books.word());
+                    }
+                    count++;
+                    if(count % SORT_INTERVAL == 0) {
+                        library.sortBooks();
+                    }
+                }
+                writes.addAndGet(count);
+            }
+            catch(Throwable ex) {
+                fail(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package Benchmark;
+
+import Model.Book;
+import Model.CollectionOfBooks;
+import Model.Metric;
+import Model.Metrics;
+import Service.CatalogServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LoadGenerator sends requests to a CatalogServer from many clients at the
+ * same time and checks the answers. Most requests look up a book by its
+ * ISBN number, a percentage searches titles. The ISBN numbers and title
+ * words are taken from the books of the server. After the load a book is
+ * added, looked up and removed again to check the other requests. Without
+ * -url a server with a synthetic library is started in the same program.
+ * <p>
+ * Usage: java -cp classes Benchmark.LoadGenerator [options]
+ * <pre>
+ *   -url http://host:8080  server to load, none to start one
+ *   -books 100000          books of the server started
+ *   -clients 16            client threads, each on its own connection
+ *   -seconds 10            duration of the load
+ *   -searches 5            percentage of requests that search titles
+ *   -max-in-flight 256     requests handled at once by the server started
+ * </pre>
+ * Requests rejected by the server with 503 are counted but are not
+ * failures. The exit code is 1 if a request failed or got a wrong answer.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class LoadGenerator {
+
+    private static final long SEED = 42;
+    // Books listed to pick the lookups and searches from
+    private static final int SAMPLE = 10000;
+    private static final Pattern ISBN = Pattern.compile("\"isbn\":\"([^\"]*)\"");
+    private static final Pattern TITLE = Pattern.compile("\"title\":\"(\\w+)");
+
+    private static final Metric LOOKUP = Metrics.metric("LoadGenerator.lookup");
+    private static final Metric SEARCH = Metrics.metric("LoadGenerator.search");
+
+    private final String url;
+    private final List<String> isbns;
+    private final List<String> words;
+    private final int searches;
+    private final CountDownLatch start;
+    private final AtomicLong requests;
+    private final AtomicLong rejected;
+    private final AtomicReference<Throwable> failure;
+    private volatile boolean running;
+
+    public LoadGenerator(String url, List<String> isbns, List<String> words,
+            int searches) {
+        this.url = url;
+        this.isbns = isbns;
+        this.words = words;
+        this.searches = searches;
+        this.start = new CountDownLatch(1);
+        this.requests = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.failure = new AtomicReference<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int books = 100000;
+        int clients = 16;
+        int seconds = 10;
+        int searches = 5;
+        int maxInFlight = 256;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "-url":
+                    url = args[i + 1];
+                    break;
+                case "-books":
+                    books = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-clients":
+                    clients = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-seconds":
+                    seconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-searches":
+                    searches = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-max-in-flight":
+                    maxInFlight = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        CatalogServer server = null;
+        if(url == null) {
+            System.out.println("Creating " + books + " books");
+            ArrayList<Book> data = new SyntheticLibrary(SEED, books).books(books);
+            CollectionOfBooks library = new CollectionOfBooks();
+            library.addBooks(data);
+            server = new CatalogServer(library,
+                    new InetSocketAddress("127.0.0.1", 0), maxInFlight);
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+        }
+
+        String sample = get(url + "/books?field=isbn&q=978&limit=" + SAMPLE);
+        List<String> isbns = matches(ISBN, sample);
+        List<String> words = matches(TITLE, sample);
+        if(isbns.isEmpty()) {
+            System.out.println("No books served by " + url);
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+
+        LoadGenerator load = new LoadGenerator(url, isbns, words, searches);
+        boolean passed = load.run(clients, seconds) && load.check();
+        if(server != null) {
+            System.out.println("Rejected by the server: " + server.getRejected());
+            server.stop(0);
+        }
+        System.out.print(Metrics.report());
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Send requests from the clients for a time.
+     * @param clients The number of client threads.
+     * @param seconds The duration.
+     * @return true if no request failed, false otherwise.
+     * @throws InterruptedException If the test was interrupted.
+     */
+    public boolean run(int clients, int seconds) throws InterruptedException {
+        ArrayList<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < clients; i++) {
+            threads.add(new Thread(new Client(SEED + i), "Client " + i));
+        }
+
+        running = true;
+        for(Thread thread: threads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running = false;
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        System.out.printf("%d clients: %,.0f requests/s, %,d rejected%n",
+                clients, requests.get() / elapsed, rejected.get());
+        if(failure.get() != null) {
+            System.out.println("Failed: " + failure.get());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add a book, look it up, remove it and check it is gone.
+     * @return true if every answer was right, false otherwise.
+     * @throws IOException If the server cannot be reached.
+     */
+    public boolean check() throws IOException {
+        String isbn = "9799999999995";
+        String book = "{\"isbn\":\"" + isbn + "\",\"title\":\"Load \\\"test\\\"\"," +
+                "\"edition\":2,\"price\":9.5,\"authors\":[\"A Tester\",\"B Tester\"]}";
+        boolean passed = send("POST", "/books", book) == 201 &&
+                get(url + "/books/" + isbn).contains("Load \\\"test\\\"") &&
+                send("DELETE", "/books/" + isbn, null) == 200 &&
+                send("GET", "/books/" + isbn, null) == 404 &&
+                send("POST", "/books", "{\"isbn\":\"1\"}") == 400;
+        if(!passed) {
+            System.out.println("Adding and removing a book failed");
+        }
+        return passed;
+    }
+
+    /**
+     * Send a request and return the status of the answer.
+     */
+    private int send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setRequestMethod(method);
+        if(body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try(OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        read(connection);
+        return status;
+    }
+
+    /**
+     * Return the body of the answer to a GET request.
+     */
+    private static String get(String url) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(url).openConnection();
+        if(connection.getResponseCode() != 200) {
+            throw new IOException("Status " + connection.getResponseCode() +
+                    " from " + url);
+        }
+        return read(connection);
+    }
+
+    /**
+     * Read the whole body of an answer, so the connection can be reused.
+     */
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 ?
+                connection.getInputStream() : connection.getErrorStream();
+        if(in == null) {
+            return "";
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> matches(Pattern pattern, String text) {
+        List<String> found = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        while(matcher.find()) {
+            found.add(matcher.group(1));
+        }
+        return found;
+    }
+
+    /**
+     * A Client looks up random books and searches random title words
+     * until the load is over, every lookup must find its book
+     */
+    private class Client implements Runnable {
+        private final Random random;
+
+        Client(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                while(running && failure.get() == null) {
+                    boolean search = !words.isEmpty() &&
+                            random.nextInt(100) < searches;
+                    String query = search ?
+                            words.get(random.nextInt(words.size())) :
+                            isbns.get(random.nextInt(isbns.size()));
+                    String path = search ? "/books?field=title&limit=100&q=" +
+                            URLEncoder.encode(query, "UTF-8") : "/books/" + query;
+                    Metric metric = search ? SEARCH : LOOKUP;
+
+                    long begin = metric.start();
+                    HttpURLConnection connection = (HttpURLConnection)
+                            new URL(url + path).openConnection();
+                    int status = connection.getResponseCode();
+                    String body = read(connection);
+                    metric.stop(begin);
+
+                    if(status == 503) {
+                        rejected.incrementAndGet();
+                        continue;
+                    }
+                    if(status != 200 || (!search && !body.contains(query))) {
+                        throw new IllegalStateException("Status " + status +
+                                " for " + path + ": " + body);
+                    }
+                    requests.incrementAndGet();
+                }
+            }
+            catch(Throwable ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,671 @@
+package Benchmark;
+
+import Model.Book;
+import Model.CatalogExporter;
+import Model.CatalogImporter;
+import Model.CollectionOfBooks;
+import Model.ExportFormat;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ModelBenchmark measures the operations of CollectionOfBooks on synthetic
+ * libraries of different sizes and saves the results as JSON, in the
+ * layout used by JMH, so that runs before and after a change can be
+ * compared. Every benchmark is run for a number of warmup iterations that
+ * are not measured, followed by the measured iterations; the score is the
+ * average time per operation.
+ * <p>
+ * Usage: java -Xmx8g -cp classes Benchmark.ModelBenchmark [options]
+ * <pre>
+ *   -sizes 10000,1000000   library sizes (10000000 needs a large heap)
+ *   -warmup 3              warmup iterations
+ *   -iterations 5          measured iterations
+ *   -filter search         only run benchmarks whose name contains the text
+ *   -out results.json      file the results are saved to
+ *   -baseline old.json     results of an earlier run to compare with
+ *   -columnar true         store the books in columns
+ *   -cache 0               searches cached per library, 0 disables the cache
+ * </pre>
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class ModelBenchmark {
+
+    private static final long SEED = 42;
+    // Books removed or searched for per iteration of a benchmark
+    private static final int SAMPLE = 100;
+    // Above this size the whole library as text does not fit in a String
+    private static final int MAX_TEXT_SIZE = 1000000;
+
+    // Results are added to the sink so the JIT cannot remove the work
+    private static volatile long sink;
+    // Whether the libraries of the benchmarks store their books in columns
+    private static boolean columnar;
+    // The number of searches cached by the libraries, -1 for the default
+    private static int cacheSize = -1;
+
+    private final int warmup;
+    private final int iterations;
+    private final String filter;
+    private final List<Result> results;
+
+    public ModelBenchmark(int warmup, int iterations, String filter) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.filter = filter;
+        this.results = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10000, 1000000};
+        int warmup = 3;
+        int iterations = 5;
+        String filter = "";
+        File out = new File("benchmark-results.json");
+        File baseline = null;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "-sizes":
+                    String[] parts = args[i + 1].split(",");
+                    sizes = new int[parts.length];
+                    for(int j = 0; j < parts.length; j++) {
+                        sizes[j] = Integer.parseInt(parts[j].trim());
+                    }
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-iterations":
+                    iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-filter":
+                    filter = args[i + 1];
+                    break;
+                case "-out":
+                    out = new File(args[i + 1]);
+                    break;
+                case "-baseline":
+                    baseline = new File(args[i + 1]);
+                    break;
+                case "-columnar":
+                    columnar = Boolean.parseBoolean(args[i + 1]);
+                    break;
+                case "-cache":
+                    cacheSize = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ModelBenchmark benchmark = new ModelBenchmark(warmup, iterations, filter);
+        for(int size: sizes) {
+            benchmark.runAll(size);
+        }
+        benchmark.save(out);
+        System.out.println("Results saved to " + out);
+        if(baseline != null) {
+            benchmark.compare(baseline);
+        }
+    }
+
+    /**
+     * Return an empty library, storing its books as chosen by -columnar and
+     * caching searches as chosen by -cache.
+     */
+    private static CollectionOfBooks newLibrary() {
+        CollectionOfBooks library = new CollectionOfBooks();
+        library.setColumnar(columnar);
+        if(cacheSize >= 0) {
+            library.setQueryCacheSize(cacheSize);
+        }
+        return library;
+    }
+
+    /**
+     * Run all benchmarks on a library of a size.
+     * @param size The number of books in the library.
+     * @throws Exception The exceptions thrown by the benchmarks.
+     */
+    public void runAll(int size) throws Exception {
+        System.out.println("Creating " + size + " books");
+        ArrayList<Book> data = new SyntheticLibrary(SEED, size).books(size);
+        CollectionOfBooks library = newLibrary();
+        for(Book book: data) {
+            library.addBook(book);
+        }
+
+        for(Case test: cases(library, data)) {
+            if(test.name.contains(filter) &&
+                    (size <= MAX_TEXT_SIZE || !test.name.equals("toString"))) {
+                run(test, size);
+            }
+        }
+        System.out.printf(Locale.ROOT, "Query cache: %d hits, %d misses%n",
+                library.getQueryCacheHits(), library.getQueryCacheMisses());
+    }
+
+    private List<Case> cases(CollectionOfBooks library, ArrayList<Book> data) {
+        return Arrays.asList(new AddBook(data), new RemoveBook(library),
+                new RemoveBookByTitle(library),
+                new Search(library, "getBooksByTitle"),
+                new Search(library, "getBooksByAuthor"),
+                new Search(library, "getBooksByIsbn"),
+                new SortBooks(data), new GetBooks(library),
+                new ToText(library), new RoundTrip(library),
+                new ImportCsv(data), new Export(library, ExportFormat.CSV),
+                new Export(library, ExportFormat.JSON_LINES));
+    }
+
+    private void run(Case test, int size) throws Exception {
+        double[] scores = new double[iterations];
+
+        for(int i = 0; i < warmup + iterations; i++) {
+            test.setup();
+            long start = System.nanoTime();
+            int ops = test.run();
+            long time = System.nanoTime() - start;
+            test.teardown();
+            if(i >= warmup) {
+                scores[i - warmup] = time / 1000.0 / ops;
+            }
+        }
+
+        Result result = new Result(test.name, size, scores);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-20s %10d %14.3f us/op%n", test.name,
+                size, result.score());
+    }
+
+    /**
+     * Save the results in the JSON layout of JMH.
+     * @param file The file to save to.
+     * @throws IOException The exception might occur.
+     */
+    public void save(File file) throws IOException {
+        try(PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println("[");
+            for(int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                out.println("  {");
+                out.println("    \"benchmark\" : \"Model.CollectionOfBooks." +
+                        result.name + "\",");
+                out.println("    \"mode\" : \"avgt\",");
+                out.println("    \"warmupIterations\" : " + warmup + ",");
+                out.println("    \"measurementIterations\" : " + iterations + ",");
+                out.println("    \"params\" : { \"size\" : \"" + result.size + "\" },");
+                out.println("    \"primaryMetric\" : {");
+                out.println("      \"score\" : " + format(result.score()) + ",");
+                out.println("      \"scoreError\" : " + format(result.error()) + ",");
+                out.println("      \"scoreUnit\" : \"us/op\",");
+                StringBuilder raw = new StringBuilder();
+                for(double score: result.scores) {
+                    raw.append(raw.length() == 0 ? "" : ", ").append(format(score));
+                }
+                out.println("      \"rawData\" : [ [ " + raw + " ] ]");
+                out.println("    }");
+                out.println(i + 1 < results.size() ? "  }," : "  }");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Print the change of every score compared with an earlier run.
+     * @param file The results of the earlier run.
+     * @throws IOException The exception might occur.
+     */
+    public void compare(File file) throws IOException {
+        String json = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+        Matcher matcher = Pattern.compile("\"benchmark\" : \"[^\"]*\\.(\\w+)\"" +
+                "[^}]*?\"size\" : \"(\\d+)\"[^}]*\\}[^}]*?\"score\" : ([-0-9.eE]+)")
+                .matcher(json);
+        Map<String, Double> old = new LinkedHashMap<>();
+        while(matcher.find()) {
+            old.put(matcher.group(1) + " " + matcher.group(2),
+                    Double.parseDouble(matcher.group(3)));
+        }
+
+        System.out.println("Compared with " + file);
+        for(Result result: results) {
+            Double before = old.get(result.name + " " + result.size);
+            if(before != null && before > 0) {
+                System.out.printf(Locale.ROOT, "%-20s %10d %+8.1f%%%n",
+                        result.name, result.size,
+                        (result.score() - before) / before * 100);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        if(Double.isNaN(value)) {
+            return "\"NaN\"";
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * A Result object holds the measured scores of a benchmark
+     */
+    private static class Result {
+        private final String name;
+        private final int size;
+        private final double[] scores;
+
+        Result(String name, int size, double[] scores) {
+            this.name = name;
+            this.size = size;
+            this.scores = scores;
+        }
+
+        double score() {
+            double sum = 0;
+            for(double score: scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+
+        // The half width of the 99.9% confidence interval, as JMH reports it
+        double error() {
+            if(scores.length < 2) {
+                return Double.NaN;
+            }
+            double mean = score();
+            double sum = 0;
+            for(double score: scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            return 3.29 * Math.sqrt(sum / (scores.length - 1) / scores.length);
+        }
+    }
+
+    /**
+     * A Case object is one benchmark. Only run is measured, setup and
+     * teardown prepare and restore the library.
+     */
+    private abstract static class Case {
+        final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        void setup() throws Exception {
+        }
+
+        /**
+         * Run the measured operations.
+         * @return The number of operations run.
+         * @throws Exception The exceptions thrown by the operations.
+         */
+        abstract int run() throws Exception;
+
+        void teardown() throws Exception {
+        }
+    }
+
+    /**
+     * Adds all books to an empty library
+     */
+    private static class AddBook extends Case {
+        private final List<Book> data;
+        private CollectionOfBooks library;
+
+        AddBook(List<Book> data) {
+            super("addBook");
+            this.data = data;
+        }
+
+        @Override
+        void setup() {
+            library = newLibrary();
+        }
+
+        @Override
+        int run() {
+            for(Book book: data) {
+                library.addBook(book);
+            }
+            return data.size();
+        }
+
+        @Override
+        void teardown() {
+            // Release the indexes and listeners of the library
+            library = null;
+        }
+    }
+
+    /**
+     * Removes books from the library and adds them again
+     */
+    private static class RemoveBook extends Case {
+        private final CollectionOfBooks library;
+        private final Random random = new Random(SEED);
+        private final List<Book> removed = new ArrayList<>();
+
+        RemoveBook(CollectionOfBooks library) {
+            super("removeBook");
+            this.library = library;
+        }
+
+        @Override
+        void setup() {
+            removed.clear();
+            for(int i = 0; i < Math.min(SAMPLE, library.getSize()); i++) {
+                Book book = library.getBook(random.nextInt(library.getSize()));
+                if(!removed.contains(book)) {
+                    removed.add(book);
+                }
+            }
+        }
+
+        @Override
+        int run() {
+            for(Book book: removed) {
+                if(!library.removeBook(book)) {
+                    throw new IllegalStateException("Book not removed");
+                }
+            }
+            return removed.size();
+        }
+
+        @Override
+        void teardown() {
+            for(Book book: removed) {
+                library.addBook(book);
+            }
+        }
+    }
+
+    /**
+     * Removes books by title from the library and adds them again
+     */
+    private static class RemoveBookByTitle extends Case {
+        private final CollectionOfBooks library;
+        private final Random random = new Random(SEED);
+        private final List<Book> removed = new ArrayList<>();
+
+        RemoveBookByTitle(CollectionOfBooks library) {
+            super("removeBookByTitle");
+            this.library = library;
+        }
+
+        @Override
+        void setup() {
+            removed.clear();
+            for(int i = 0; i < Math.min(SAMPLE, library.getSize()); i++) {
+                removed.add(library.getBook(random.nextInt(library.getSize())));
+            }
+        }
+
+        @Override
+        int run() {
+            for(Book book: removed) {
+                library.removeBookByTitle(book.getTitle());
+            }
+            return removed.size();
+        }
+
+        @Override
+        void teardown() {
+            // Books sharing a title with a removed book are removed as well
+            HashSet<Book> present = new HashSet<>(library.asList());
+            for(Book book: removed) {
+                if(!present.contains(book)) {
+                    library.addBook(book);
+                    present.add(book);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the library for parts of titles, author names or ISBN
+     * numbers of random books
+     */
+    private static class Search extends Case {
+        private final CollectionOfBooks library;
+        private final Random random = new Random(SEED);
+        private final List<String> queries = new ArrayList<>();
+
+        Search(CollectionOfBooks library, String name) {
+            super(name);
+            this.library = library;
+        }
+
+        @Override
+        void setup() {
+            queries.clear();
+            for(int i = 0; i < SAMPLE; i++) {
+                Book book = library.getBook(random.nextInt(library.getSize()));
+                String text;
+                switch(name) {
+                    case "getBooksByTitle":
+                        text = book.getTitle();
+                        break;
+                    case "getBooksByAuthor":
+                        text = book.getAuthors().get(0).getName();
+                        break;
+                    default:
+                        text = book.getIsbn();
+                        break;
+                }
+                int start = random.nextInt(Math.max(1, text.length() - 5));
+                queries.add(text.substring(start, Math.min(text.length(), start + 6)));
+            }
+        }
+
+        @Override
+        int run() {
+            long found = 0;
+            for(String query: queries) {
+                switch(name) {
+                    case "getBooksByTitle":
+                        found += library.getBooksByTitle(query).size();
+                        break;
+                    case "getBooksByAuthor":
+                        found += library.getBooksByAuthor(query).size();
+                        break;
+                    default:
+                        found += library.getBooksByIsbn(query).size();
+                        break;
+                }
+            }
+            sink += found;
+            return queries.size();
+        }
+    }
+
+    /**
+     * Sorts a library holding the books in random order
+     */
+    private static class SortBooks extends Case {
+        private final List<Book> data;
+        private final Random random = new Random(SEED);
+        private CollectionOfBooks library;
+
+        SortBooks(List<Book> data) {
+            super("sortBooks");
+            this.data = data;
+        }
+
+        @Override
+        void setup() {
+            ArrayList<Book> shuffled = new ArrayList<>(data);
+            Collections.shuffle(shuffled, random);
+            library = newLibrary();
+            for(Book book: shuffled) {
+                library.addBook(book);
+            }
+        }
+
+        @Override
+        int run() {
+            library.sortBooks();
+            return 1;
+        }
+
+        @Override
+        void teardown() {
+            library = null;
+        }
+    }
+
+    /**
+     * Returns the list of books of the library
+     */
+    private static class GetBooks extends Case {
+        private final CollectionOfBooks library;
+
+        GetBooks(CollectionOfBooks library) {
+            super("getBooks");
+            this.library = library;
+        }
+
+        @Override
+        int run() {
+            int calls = 10;
+            for(int i = 0; i < calls; i++) {
+                sink += library.getBooks().size();
+            }
+            return calls;
+        }
+    }
+
+    /**
+     * Returns the library as text
+     */
+    private static class ToText extends Case {
+        private final CollectionOfBooks library;
+
+        ToText(CollectionOfBooks library) {
+            super("toString");
+            this.library = library;
+        }
+
+        @Override
+        int run() {
+            sink += library.toString().length();
+            return 1;
+        }
+    }
+
+    /**
+     * Saves the library to a file and loads it again
+     */
+    private static class RoundTrip extends Case {
+        private final CollectionOfBooks library;
+        private File file;
+
+        RoundTrip(CollectionOfBooks library) {
+            super("serializeRoundTrip");
+            this.library = library;
+        }
+
+        @Override
+        void setup() throws IOException {
+            file = File.createTempFile("benchmark", ".lib");
+        }
+
+        @Override
+        int run() throws Exception {
+            library.serializeToFile(file);
+            CollectionOfBooks loaded = newLibrary();
+            loaded.deSerializeFromFile(file);
+            sink += loaded.getSize();
+            return 1;
+        }
+
+        @Override
+        void teardown() {
+            file.delete();
+        }
+    }
+
+    /**
+     * Exports a snapshot of the library to a file
+     */
+    private static class Export extends Case {
+        private final CollectionOfBooks library;
+        private final ExportFormat format;
+        private File file;
+
+        Export(CollectionOfBooks library, ExportFormat format) {
+            super(format == ExportFormat.CSV ? "exportCsv" : "exportJsonLines");
+            this.library = library;
+            this.format = format;
+        }
+
+        @Override
+        void setup() throws IOException {
+            file = File.createTempFile("benchmark", ".export");
+        }
+
+        @Override
+        int run() throws Exception {
+            List<Book> books = library.snapshot();
+            new CatalogExporter(format).export(books, file, null);
+            sink += file.length();
+            return books.size();
+        }
+
+        @Override
+        void teardown() {
+            file.delete();
+        }
+    }
+
+    /**
+     * Imports the books from a CSV catalogue feed into an empty library
+     */
+    private static class ImportCsv extends Case {
+        private final List<Book> data;
+        private File file;
+
+        ImportCsv(List<Book> data) {
+            super("importCsv");
+            this.data = data;
+        }
+
+        @Override
+        void setup() throws IOException {
+            if(file != null) {
+                return;
+            }
+            file = File.createTempFile("benchmark", ".csv");
+            file.deleteOnExit();
+            new CatalogExporter(ExportFormat.CSV).export(data, file, null);
+        }
+
+        @Override
+        int run() throws Exception {
+            CollectionOfBooks library = newLibrary();
+            sink += new CatalogImporter(library).importFile(file, null)
+                    .getImported();
+            return data.size();
+        }
+    }
+}
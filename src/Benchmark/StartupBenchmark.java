@@ -0,0 +1,204 @@
+package Benchmark;
+
+import View.Main;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+/**
+ * StartupBenchmark measures the time from starting the Java process of the
+ * program to the first frame of its window. Every run starts a new Java
+ * process, as the program is started by users, with the class path of the
+ * benchmark. The same runs are repeated with an application class data
+ * sharing (AppCDS) archive of the classes loaded until the first frame, so
+ * the classes are mapped from the archive instead of being read, verified
+ * and parsed again. The archive is created by a training run if it does
+ * not exist, which needs Java 13 or later and the classes in jar files,
+ * since class paths with directories cannot be archived. Start the program
+ * with the option -XX:SharedArchiveFile=library.jsa to use the archive.
+ * <p>
+ * Usage: java -cp classes[:javafx jars] Benchmark.StartupBenchmark [options]
+ * <pre>
+ *   -runs 5                measured starts per configuration
+ *   -archive library.jsa   the AppCDS archive, created if missing
+ *   -cds true              also measure the starts with the archive
+ * </pre>
+ * Each run prints the milliseconds until the window was built and until
+ * its first frame, the summary the median and the fastest run.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class StartupBenchmark {
+
+    private static final String FIRST_FRAME = "First frame ";
+    // The Java version with archives of the classes loaded by a program
+    private static final int DYNAMIC_ARCHIVE_VERSION = 13;
+
+    private final List<String> options;
+
+    public StartupBenchmark(List<String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length == 2 && args[0].equals("-child")) {
+            FirstFrame.launched = Long.parseLong(args[1]);
+            Application.launch(FirstFrame.class);
+            return;
+        }
+        int runs = 5;
+        File archive = new File("library.jsa");
+        boolean cds = true;
+
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "-runs":
+                    runs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "-archive":
+                    archive = new File(args[i + 1]);
+                    break;
+                case "-cds":
+                    cds = Boolean.parseBoolean(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        new StartupBenchmark(new ArrayList<>()).measure("Default", runs);
+        if(!cds) {
+            return;
+        }
+        if(javaVersion() < DYNAMIC_ARCHIVE_VERSION) {
+            System.out.println("AppCDS archives of the program need Java " +
+                    DYNAMIC_ARCHIVE_VERSION + " or later");
+            return;
+        }
+        if(!jarsOnly()) {
+            System.out.println("AppCDS archives need the classes in jar " +
+                    "files, for example: jar cf library.jar -C classes .");
+            return;
+        }
+        if(!archive.exists()) {
+            System.out.println("Creating " + archive);
+            new StartupBenchmark(Collections.singletonList(
+                    "-XX:ArchiveClassesAtExit=" + archive)).start();
+        }
+        new StartupBenchmark(Collections.singletonList(
+                "-XX:SharedArchiveFile=" + archive)).measure("AppCDS", runs);
+    }
+
+    /**
+     * Start the program a number of times and print the times to the first
+     * frame.
+     * @param name The name of the configuration.
+     * @param runs The number of starts.
+     * @throws IOException If the program cannot be started.
+     * @throws InterruptedException If the benchmark was interrupted.
+     */
+    public void measure(String name, int runs) throws IOException,
+            InterruptedException {
+        List<Double> times = new ArrayList<>();
+        for(int i = 0; i < runs; i++) {
+            times.add(start());
+        }
+        Collections.sort(times);
+        System.out.printf(Locale.ROOT, "%s: median %.0f ms, fastest %.0f ms%n",
+                name, times.get(times.size() / 2), times.get(0));
+    }
+
+    /**
+     * Start the program once and return the time to its first frame.
+     */
+    private double start() throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" +
+                File.separator + "java");
+        command.addAll(options);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupBenchmark.class.getName());
+        command.add("-child");
+        command.add(Long.toString(System.currentTimeMillis()));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).
+                start();
+        double time = -1;
+        try(BufferedReader out = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = out.readLine()) != null) {
+                System.out.println("  " + line);
+                if(line.startsWith(FIRST_FRAME)) {
+                    time = Double.parseDouble(line.substring(
+                            FIRST_FRAME.length(), line.indexOf(" ms")));
+                }
+            }
+        }
+        if(process.waitFor() != 0 || time < 0) {
+            throw new IOException("The program did not show its window");
+        }
+        return time;
+    }
+
+    private static boolean jarsOnly() {
+        for(String path: System.getProperty("java.class.path").split(
+                File.pathSeparator)) {
+            if(new File(path).isDirectory()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ?
+                version.substring(2) : version);
+    }
+
+    /**
+     * A FirstFrame application starts the program, prints the times since
+     * the process was started when the window is built and when the first
+     * frame is shown, and stops
+     */
+    public static class FirstFrame extends Application {
+        // When the benchmark started the process, in milliseconds
+        private static long launched;
+
+        @Override
+        public void start(Stage primaryStage) {
+            new Main().start(primaryStage);
+            System.out.println("Window built " +
+                    (System.currentTimeMillis() - launched) + " ms");
+            new FrameTimer().start();
+        }
+    }
+
+    /**
+     * A FrameTimer object is called on every frame, the first one ends the
+     * program
+     */
+    private static class FrameTimer extends AnimationTimer {
+
+        @Override
+        public void handle(long now) {
+            stop();
+            System.out.println(FIRST_FRAME +
+                    (System.currentTimeMillis() - FirstFrame.launched) + " ms");
+            Platform.exit();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package Benchmark;
+
+import Model.Author;
+import Model.Book;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A SyntheticLibrary creates books resembling a real catalogue: valid
+ * ISBN-13 numbers, titles of a few common words, authors shared by many
+ * books (a few authors wrote most of them) and a spread of editions and
+ * prices. The same seed always creates the same books.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class SyntheticLibrary {
+
+    private static final String[] WORDS = {
+        "The", "A", "History", "of", "Java", "Programming", "Introduction",
+        "to", "Algorithms", "Modern", "Art", "Science", "Data", "Structures",
+        "and", "Design", "Patterns", "Guide", "Complete", "Handbook", "World",
+        "War", "Peace", "Garden", "Night", "Summer", "Winter", "Ocean",
+        "Mountain", "River", "Caf\u00e9", "\u00c5ngstr\u00f6m", "\u00c9conomie", "Systems",
+        "Networks", "Theory", "Practice", "Principles", "Essentials", "Life"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Anna", "Erik", "Maria", "Johan", "Sofia", "Lars", "Emma", "Karl",
+        "Eva", "Nils", "Ingrid", "Per", "Astrid", "Olof", "M\u00e4rta", "Jos\u00e9"
+    };
+    private static final String[] LAST_NAMES = {
+        "Andersson", "Johansson", "Karlsson", "Nilsson", "Eriksson",
+        "Larsson", "Olsson", "Persson", "Svensson", "Gustafsson", "Lindqvist",
+        "Bj\u00f6rk", "M\u00fcller", "Garc\u00eda", "Smith", "Knuth", "Stroustrup", "Gosling"
+    };
+
+    private final Random random;
+    private final int authors;
+    private long isbn;
+
+    /**
+     * Constructor, prepares the creation of books.
+     * @param seed The seed of the random numbers.
+     * @param size The number of books that will be created, used to choose
+     * the number of authors.
+     */
+    public SyntheticLibrary(long seed, int size) {
+        this.random = new Random(seed);
+        this.authors = Math.max(10, size / 20);
+        this.isbn = 978000000000L + random.nextInt(1000000);
+    }
+
+    /**
+     * Create books.
+     * @param count The number of books.
+     * @return The books created.
+     */
+    public ArrayList<Book> books(int count) {
+        ArrayList<Book> books = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++) {
+            books.add(nextBook());
+        }
+        return books;
+    }
+
+    /**
+     * Create the next book.
+     * @return The book created.
+     */
+    public Book nextBook() {
+        StringBuilder title = new StringBuilder();
+        int words = 2 + random.nextInt(5);
+        for(int i = 0; i < words; i++) {
+            if(i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        title.append(' ').append(random.nextInt(10000));
+
+        Book book = new Book(nextIsbn(), title.toString(),
+                1 + (int) Math.abs(random.nextGaussian() * 2),
+                Math.round((5 + random.nextDouble() * 95) * 100) / 100.0,
+                author());
+        if(random.nextInt(5) == 0) {
+            book.addAuthor(author().getName());
+        }
+        return book;
+    }
+
+    /**
+     * Return a word used in the titles, to be searched for.
+     * @return A word.
+     */
+    public String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * Return an author, skewed so that some authors wrote many books.
+     * @return The author.
+     */
+    private Author author() {
+        double skew = random.nextDouble();
+        int id = (int) (authors * skew * skew * skew);
+        return Author.valueOf(FIRST_NAMES[id % FIRST_NAMES.length] + " " +
+                LAST_NAMES[(id / FIRST_NAMES.length) % LAST_NAMES.length] +
+                " " + id);
+    }
+
+    private String nextIsbn() {
+        isbn += 1 + random.nextInt(50);
+        String digits = Long.toString(isbn);
+        int sum = 0;
+        for(int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,514 @@
+package Cli;
+
+import Model.Author;
+import Model.Book;
+import Model.DaemonThreadFactory;
+import Model.ImportReport;
+import Model.LibraryEngine;
+import Model.Metrics;
+import Model.SearchField;
+import Model.SearchHit;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LibraryShell runs library commands from scripts or the terminal without
+ * a user interface, so libraries can be loaded, changed, searched and
+ * saved by cron jobs and performance checks. It only uses LibraryEngine,
+ * the JavaFX toolkit is never started. Every command prints how long it
+ * took, and its time is recorded in the metrics named LibraryShell.command.
+ * <p>
+ * Usage: java -cp classes Cli.LibraryShell [options] [script ...]
+ * <pre>
+ *   -c "command"   run a command, may be repeated, before the scripts
+ *   -k             keep going after a failed command
+ *   -q             do not print the time of every command
+ *   -report        print the times of all operations at the end
+ *   script         a file of commands, - reads the commands from stdin
+ * </pre>
+ * Without commands or scripts the commands are read from stdin. Lines are
+ * split at spaces, text with spaces is written in double quotes, and lines
+ * starting with # are comments. Type help for the commands. The exit
+ * status is 1 if a command failed, 0 otherwise.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class LibraryShell {
+
+    private static final String HELP =
+            "new NAME                     create an empty library and use it\n" +
+            "load NAME FILE               load a library file and use it\n" +
+            "use NAME                     use another open library\n" +
+            "list                         list the open libraries\n" +
+            "close                        close the library used, keeping its unsaved changes\n" +
+            "discard                      close the library used and discard its unsaved changes\n" +
+            "save FILE                    save the library used\n" +
+            "import FILE                  import a .csv or .mrk catalogue\n" +
+            "export FILE                  export the library used (.csv, .jsonl, .txt)\n" +
+            "export-found FILE            export the books found by the last search\n" +
+            "add ISBN TITLE EDITION PRICE AUTHOR[;AUTHOR...]\n" +
+            "remove ISBN                  remove the books with an ISBN number\n" +
+            "sort                         sort the books of the library used\n" +
+            "search FIELD TEXT [-i]       search isbn, title or author, -i ignores case\n" +
+            "search-all FIELD TEXT [-i]   search all open libraries\n" +
+            "show [N]                     print the first N books found, 10 by default\n" +
+            "size                         print the number of books\n" +
+            "cache N                      set the number of searches cached\n" +
+            "report                       print the times of all operations\n" +
+            "reset                        forget the times of all operations\n" +
+            "timing on|off                print the time of every command or not\n" +
+            "echo TEXT                    print a text\n" +
+            "quit                         stop reading commands";
+    private static final int SHOW_DEFAULT = 10;
+
+    private final LibraryEngine engine;
+    private ExecutorService searcher;
+    // The index of the library used, -1 if none
+    private int current;
+    private List<Book> found;
+    private List<SearchHit> hits;
+    private boolean timing;
+    private boolean keepGoing;
+    private boolean failed;
+    private boolean quit;
+
+    /**
+     * Constructor, creates a shell without libraries.
+     * @param timing true to print the time of every command.
+     * @param keepGoing true to run the next commands of a script after a
+     * command failed.
+     */
+    public LibraryShell(boolean timing, boolean keepGoing) {
+        this.engine = new LibraryEngine();
+        this.current = -1;
+        this.found = new ArrayList<>();
+        this.timing = timing;
+        this.keepGoing = keepGoing;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean timing = true;
+        boolean keepGoing = false;
+        boolean report = false;
+        List<String> commands = new ArrayList<>();
+        List<String> scripts = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-c":
+                    if(i + 1 == args.length) {
+                        throw new IllegalArgumentException("-c needs a command");
+                    }
+                    commands.add(args[++i]);
+                    break;
+                case "-k":
+                    keepGoing = true;
+                    break;
+                case "-q":
+                    timing = false;
+                    break;
+                case "-report":
+                    report = true;
+                    break;
+                default:
+                    scripts.add(args[i]);
+                    break;
+            }
+        }
+        if(commands.isEmpty() && scripts.isEmpty()) {
+            scripts.add("-");
+        }
+
+        LibraryShell shell = new LibraryShell(timing, keepGoing);
+        try {
+            for(int i = 0; i < commands.size() && shell.running(); i++) {
+                shell.execute(commands.get(i), "-c", i + 1);
+            }
+            for(String script: scripts) {
+                if(!shell.running()) {
+                    break;
+                }
+                if(script.equals("-")) {
+                    shell.run(new BufferedReader(new InputStreamReader(
+                            System.in, StandardCharsets.UTF_8)), "stdin",
+                            System.console() != null);
+                }
+                else {
+                    try(BufferedReader in = new BufferedReader(
+                            new InputStreamReader(new FileInputStream(script),
+                            StandardCharsets.UTF_8))) {
+                        shell.run(in, script, false);
+                    }
+                }
+            }
+        }
+        finally {
+            shell.close();
+        }
+        if(report) {
+            System.out.print(Metrics.report());
+        }
+        System.exit(shell.failed ? 1 : 0);
+    }
+
+    /**
+     * Run the commands read from a reader until it ends, a quit command is
+     * read or a command fails without -k.
+     * @param in The reader of the commands.
+     * @param source The name of the script, shown with errors.
+     * @param interactive true to prompt for every command and keep going
+     * after a failed command, until quit or the end of the input.
+     * @throws IOException If the commands cannot be read.
+     */
+    public void run(BufferedReader in, String source, boolean interactive)
+            throws IOException {
+        int number = 0;
+        String line;
+
+        while(!quit && (interactive || running())) {
+            if(interactive) {
+                System.out.print("library> ");
+                System.out.flush();
+            }
+            line = in.readLine();
+            if(line == null) {
+                break;
+            }
+            number++;
+            execute(line, source, number);
+        }
+    }
+
+    /**
+     * Run a command and print its output and time.
+     * @param line The command.
+     * @param source The name of the script, shown with errors.
+     * @param number The line of the command in the script.
+     * @return true if the command succeeded or was empty, false otherwise.
+     */
+    public boolean execute(String line, String source, int number) {
+        String command = "";
+        long start = System.nanoTime();
+
+        try {
+            List<String> words = split(line);
+            if(words.isEmpty() || words.get(0).startsWith("#")) {
+                return true;
+            }
+            command = words.get(0).toLowerCase(Locale.ROOT);
+            run(command, words.subList(1, words.size()));
+        }
+        catch(IOException | ClassNotFoundException | InterruptedException |
+                RuntimeException ex) {
+            System.out.flush();
+            System.err.println(source + ":" + number + ": " + command + ": " +
+                    (ex.getMessage() != null ? ex.getMessage() : ex.toString()));
+            failed = true;
+            return false;
+        }
+        long nanos = System.nanoTime() - start;
+        if(Metrics.isEnabled()) {
+            Metrics.metric("LibraryShell." + command).record(nanos);
+        }
+        if(timing) {
+            System.out.printf(Locale.ROOT, "(%.3f ms)%n", nanos / 1e6);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the searches of all libraries and close the journals of the
+     * libraries, the changes not saved stay in the journals and are
+     * recovered when the library files are loaded again.
+     */
+    public void close() {
+        if(searcher != null) {
+            searcher.shutdownNow();
+        }
+        try {
+            engine.closeJournals();
+        }
+        catch(IOException ex) {
+            System.err.println("Journal not closed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Return whether more commands should be run.
+     * @return false after a quit command, or after a failed command
+     * unless the shell keeps going.
+     */
+    public boolean running() {
+        return !quit && (keepGoing || !failed);
+    }
+
+    private void run(String command, List<String> args) throws IOException,
+            ClassNotFoundException, InterruptedException {
+        switch(command) {
+            case "new":
+                arguments(args, 1, 1);
+                current = engine.createLibrary(args.get(0));
+                break;
+            case "load":
+                arguments(args, 2, 2);
+                current = engine.createLibrary(args.get(0));
+                try {
+                    int recovered = engine.loadFile(current, new File(args.get(1)));
+                    System.out.println(engine.getLibrary(current).getSize() +
+                            " books, " + recovered + " unsaved changes recovered");
+                }
+                catch(IOException | ClassNotFoundException | RuntimeException ex) {
+                    engine.closeLibrary(current);
+                    current = engine.getSize() - 1;
+                    throw ex;
+                }
+                break;
+            case "use":
+                arguments(args, 1, 1);
+                int lib = engine.indexOf(args.get(0));
+                if(lib < 0) {
+                    throw new IllegalArgumentException("No library " + args.get(0));
+                }
+                current = lib;
+                break;
+            case "list":
+                arguments(args, 0, 0);
+                for(int i = 0; i < engine.getSize(); i++) {
+                    System.out.println((i == current ? "* " : "  ") +
+                            engine.getName(i) + ": " +
+                            engine.getLibrary(i).getSize() + " books");
+                }
+                break;
+            case "close":
+                arguments(args, 0, 0);
+                engine.closeLibrary(library());
+                current = engine.getSize() - 1;
+                break;
+            case "discard":
+                arguments(args, 0, 0);
+                engine.discardJournal(library());
+                engine.closeLibrary(current);
+                current = engine.getSize() - 1;
+                break;
+            case "save":
+                arguments(args, 1, 1);
+                engine.saveFile(library(), new File(args.get(0)), null);
+                break;
+            case "import":
+                arguments(args, 1, 1);
+                ImportReport report = engine.importCatalog(library(),
+                        new File(args.get(0)), null);
+                System.out.println(report);
+                break;
+            case "export":
+                arguments(args, 1, 1);
+                LibraryEngine.export(engine.getLibrary(library()).snapshot(),
+                        new File(args.get(0)), null);
+                break;
+            case "export-found":
+                arguments(args, 1, 1);
+                LibraryEngine.export(found, new File(args.get(0)), null);
+                System.out.println(found.size() + " books exported");
+                break;
+            case "add":
+                arguments(args, 5, 5);
+                engine.addBook(library(), book(args));
+                break;
+            case "remove":
+                arguments(args, 1, 1);
+                int removed = 0;
+                for(Book book: engine.getLibrary(library()).getBooksByExactIsbn(
+                        args.get(0))) {
+                    if(engine.removeBook(current, book)) {
+                        removed++;
+                    }
+                }
+                System.out.println(removed + " books removed");
+                break;
+            case "sort":
+                arguments(args, 0, 0);
+                engine.sortBooks(library());
+                break;
+            case "search":
+                arguments(args, 2, 3);
+                found = engine.search(library(), field(args.get(0)), args.get(1),
+                        ignoreCase(args));
+                hits = null;
+                System.out.println(found.size() + " books found");
+                break;
+            case "search-all":
+                arguments(args, 2, 3);
+                hits = engine.federatedSearch(searcher()).search(
+                        field(args.get(0)), args.get(1), ignoreCase(args), null);
+                found = new ArrayList<>();
+                for(SearchHit hit: hits) {
+                    found.add(hit.getBook());
+                }
+                System.out.println(found.size() + " books found");
+                break;
+            case "show":
+                arguments(args, 0, 1);
+                show(args.isEmpty() ? SHOW_DEFAULT : Integer.parseInt(args.get(0)));
+                break;
+            case "size":
+                arguments(args, 0, 0);
+                System.out.println(engine.getLibrary(library()).getSize());
+                break;
+            case "cache":
+                arguments(args, 1, 1);
+                engine.getLibrary(library()).setQueryCacheSize(
+                        Integer.parseInt(args.get(0)));
+                break;
+            case "report":
+                arguments(args, 0, 0);
+                System.out.print(Metrics.report());
+                break;
+            case "reset":
+                arguments(args, 0, 0);
+                Metrics.reset();
+                break;
+            case "timing":
+                arguments(args, 1, 1);
+                timing = args.get(0).equalsIgnoreCase("on");
+                break;
+            case "echo":
+                System.out.println(String.join(" ", args));
+                break;
+            case "help":
+                System.out.println(HELP);
+                break;
+            case "quit":
+            case "exit":
+                quit = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command, type help");
+        }
+    }
+
+    /**
+     * Print the first books found by the last search, with the libraries
+     * holding them after a search of all libraries.
+     */
+    private void show(int count) {
+        for(int i = 0; i < count && i < found.size(); i++) {
+            // Book.toString ends the line
+            if(hits != null) {
+                System.out.print(hits.get(i).getLibraries() + ": " +
+                        found.get(i));
+            }
+            else {
+                System.out.print(found.get(i));
+            }
+        }
+    }
+
+    private int library() {
+        if(current < 0) {
+            throw new IllegalStateException("No library, use new or load");
+        }
+        return current;
+    }
+
+    private ExecutorService searcher() {
+        if(searcher == null) {
+            searcher = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new DaemonThreadFactory("Library search"));
+        }
+        return searcher;
+    }
+
+    private static void arguments(List<String> args, int min, int max) {
+        if(args.size() < min || args.size() > max) {
+            throw new IllegalArgumentException("Wrong number of arguments, " +
+                    "type help");
+        }
+    }
+
+    private static Book book(List<String> args) {
+        String[] authors = args.get(4).split(";");
+        Book book = new Book(args.get(0), args.get(1),
+                Integer.parseInt(args.get(2)), Double.parseDouble(args.get(3)),
+                Author.valueOf(authors[0]));
+        for(int i = 1; i < authors.length; i++) {
+            book.addAuthor(authors[i]);
+        }
+        return book;
+    }
+
+    private static SearchField field(String name) {
+        try {
+            return SearchField.valueOf(name.toUpperCase(Locale.ROOT));
+        }
+        catch(IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Search isbn, title or author");
+        }
+    }
+
+    private static boolean ignoreCase(List<String> args) {
+        if(args.size() == 3 && !args.get(2).equals("-i")) {
+            throw new IllegalArgumentException("Unknown option " + args.get(2));
+        }
+        return args.size() == 3;
+    }
+
+    /**
+     * Split a command into words at spaces, text in double quotes is one
+     * word and "" inside quotes is a quote.
+     */
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(quoted) {
+                if(c != '"') {
+                    word.append(c);
+                }
+                else if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    word.append('"');
+                    i++;
+                }
+                else {
+                    quoted = false;
+                }
+            }
+            else if(c == '"') {
+                quoted = true;
+                inWord = true;
+            }
+            else if(Character.isWhitespace(c)) {
+                if(inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            }
+            else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if(quoted) {
+            throw new IllegalArgumentException("Missing quote");
+        }
+        if(inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
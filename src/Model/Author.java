@@ -1,6 +1,10 @@
 package Model;
 
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.Locale;
 
 /**
  * An Author is an object that contains a writer's information.
@@ -10,15 +14,31 @@ import java.io.Serializable;
  */
 public class Author implements Serializable {
     
+    // Kept from version 1.2 so that existing library files can still be read
+    private static final long serialVersionUID = -7840794180006013796L;
+    
     private String name;
+    private transient PropertyChangeSupport changes;
     
     /**
      * Constructor, initializes data member name with specified name and 
-     * create a new author object.
+     * create a new author object. Surrounding spaces are removed from the
+     * name.
      * @param name The name of author.
      */
     public Author(String name) {
-        this.name = name;
+        this.name = name.trim();
+    }
+    
+    /**
+     * Return an author with the specified name. A collection shares one
+     * author object among its books for names differing only in case, see
+     * CollectionOfBooks.
+     * @param name The name of author.
+     * @return The author object.
+     */
+    public static Author valueOf(String name) {
+        return new Author(name);
     }
     
     /**
@@ -30,11 +50,66 @@ public class Author implements Serializable {
     }
     
     /**
-     * Set a new specified author name.
+     * Set a new specified author name. The author is renamed in all books
+     * of the collection sharing it.
      * @param name The new name of the books author.
      */
     public void changeName(String name) {
-        this.name = name;
+        String old = this.name;
+        this.name = name.trim();
+        if(changes != null) {
+            changes.firePropertyChange("name", old, this.name);
+        }
+    }
+    
+    /**
+     * Add a listener that is notified when the name of the author changes.
+     * @param listener The listener to be added.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        if(changes == null) {
+            changes = new PropertyChangeSupport(this);
+        }
+        changes.addPropertyChangeListener(listener);
+    }
+    
+    /**
+     * Remove a listener added by addPropertyChangeListener.
+     * @param listener The listener to be removed.
+     */
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        if(changes != null) {
+            changes.removePropertyChangeListener(listener);
+        }
+    }
+    
+    /**
+     * Return the normalized name, names differing only in case belong to
+     * the same author.
+     * @return The normalized name.
+     */
+    String getKey() {
+        return key(this.name);
+    }
+    
+    /**
+     * Normalize an author name, see getKey.
+     * @param name The name of the author.
+     * @return The normalized name.
+     */
+    static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Remove surrounding spaces from the name of a deserialized author, 
+     * written before names were trimmed.
+     * @return The author.
+     * @throws ObjectStreamException Never thrown.
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        name = name.trim();
+        return this;
     }
     
     /**
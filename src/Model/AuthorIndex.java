@@ -0,0 +1,207 @@
+package Model;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * An AuthorIndex maps the authors of a collection to their books.
+ * The author names are indexed by trigrams, so an author search only
+ * visits the authors that may match and the books of those authors.
+ * The books of a collection share one author object per name, names
+ * differing only in case included, so renaming the author of one book
+ * renames it in all books of the collection and in no other collection.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class AuthorIndex {
+
+    // Authors are shared and compared by identity
+    private final HashMap<Author, ArrayList<Book>> books;
+    private final HashMap<String, Author> shared;
+    private final NGramIndex<Author> names;
+    private final PropertyChangeListener nameListener;
+
+    /**
+     * Constructor, creates an empty index.
+     * @param nameListener The listener added to every indexed author, which
+     * calls renamed when the author is renamed.
+     */
+    AuthorIndex(PropertyChangeListener nameListener) {
+        this.books = new HashMap<>();
+        this.shared = new HashMap<>();
+        this.names = new NGramIndex<>();
+        this.nameListener = nameListener;
+    }
+
+    /**
+     * Add a book to the index under all of its authors. Authors having the
+     * name of an indexed author are replaced with the indexed one.
+     * @param book The book to be indexed.
+     */
+    void add(Book book) {
+        List<Author> authors = book.authorList();
+
+        for(int i = 0; i < authors.size(); i++) {
+            book.shareAuthor(i, share(authors.get(i)));
+            if(isFirst(authors, i)) {
+                add(book, authors.get(i));
+            }
+        }
+    }
+
+    /**
+     * Return the indexed author having the same name as an author, or the
+     * author itself if there is none.
+     * @param author The author to be looked up.
+     * @return The shared author.
+     */
+    Author share(Author author) {
+        Author found = shared.get(author.getKey());
+        return found != null ? found : author;
+    }
+
+    /**
+     * Add a book to the index under one author. The book must not already
+     * be indexed under this author, which must have been shared.
+     * @param book The book to be indexed.
+     * @param author The author of the book.
+     */
+    void add(Book book, Author author) {
+        ArrayList<Book> written = books.get(author);
+
+        if(written == null) {
+            written = new ArrayList<>(1);
+            books.put(author, written);
+            shared.putIfAbsent(author.getKey(), author);
+            names.add(author, author.getName());
+            author.addPropertyChangeListener(nameListener);
+        }
+        written.add(book);
+    }
+
+    /**
+     * Remove a book from the index.
+     * @param book The book to be removed.
+     */
+    void remove(Book book) {
+        List<Author> authors = book.authorList();
+
+        for(int i = 0; i < authors.size(); i++) {
+            if(isFirst(authors, i)) {
+                remove(book, authors.get(i));
+            }
+        }
+    }
+
+    /**
+     * Remove all books and authors from the index.
+     */
+    void clear() {
+        for(Author author: books.keySet()) {
+            author.removePropertyChangeListener(nameListener);
+        }
+        books.clear();
+        shared.clear();
+        names.clear();
+    }
+
+    /**
+     * Return the books having an author whose name contains the text.
+     * A book is only returned once, even if several of its authors match.
+     * The books are grouped by author, not in the order of the collection.
+     * @param name The text to be searched in the author names.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    ArrayList<Book> search(String name, boolean ignoreCase) {
+        LinkedHashSet<Book> found = new LinkedHashSet<>();
+        List<Author> candidates = names.candidates(name);
+        String query = ignoreCase ? NGramIndex.fold(name) : name;
+
+        for(Author author: candidates != null ? candidates : books.keySet()) {
+            String text = ignoreCase ? NGramIndex.fold(author.getName()) :
+                    author.getName();
+            if(text.contains(query)) {
+                found.addAll(books.get(author));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Index an author under its new name. If another author already has
+     * the new name, both stay in use by their books.
+     * @param author The renamed author.
+     * @param oldName The name before it was changed.
+     */
+    void renamed(Author author, String oldName) {
+        if(!books.containsKey(author)) {
+            return;
+        }
+        shared.remove(Author.key(oldName), author);
+        shared.putIfAbsent(author.getKey(), author);
+        names.remove(author, oldName);
+        names.add(author, author.getName());
+    }
+
+    /**
+     * Return the books of an author.
+     * @param author The author.
+     * @return The books, empty if the author is not indexed.
+     */
+    List<Book> booksOf(Author author) {
+        ArrayList<Book> written = books.get(author);
+        return written != null ? written : Collections.<Book>emptyList();
+    }
+
+    /**
+     * Return the number of books an author search would visit.
+     * @param name The text to be searched in the author names.
+     * @return The number of books, or -1 if the text is too short to be
+     * looked up and all authors would be visited.
+     */
+    int candidateBooks(String name) {
+        List<Author> candidates = names.candidates(name);
+        if(candidates == null) {
+            return -1;
+        }
+        int count = 0;
+        for(Author author: candidates) {
+            count += books.get(author).size();
+        }
+        return count;
+    }
+
+    private void remove(Book book, Author author) {
+        ArrayList<Book> written = books.get(author);
+        if(written == null) {
+            return;
+        }
+        for(int i = written.size() - 1; i >= 0; i--) {
+            if(written.get(i) == book) {
+                written.remove(i);
+                break;
+            }
+        }
+        if(written.isEmpty()) {
+            books.remove(author);
+            shared.remove(author.getKey(), author);
+            names.remove(author, author.getName());
+            author.removePropertyChangeListener(nameListener);
+        }
+    }
+
+    private static boolean isFirst(List<Author> authors, int index) {
+        for(int i = 0; i < index; i++) {
+            if(authors.get(i) == authors.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,7 +1,11 @@
 package Model;
 
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A Book is an object that contains information about a book.
@@ -11,11 +15,15 @@ import java.util.ArrayList;
  */
 public class Book implements Comparable<Book>, Serializable {
     
+    // Kept from version 1.2 so that existing library files can still be read
+    private static final long serialVersionUID = -5375421939691499912L;
+    
     private String isbn;
     private String title;
     private int edition;
     private double price;
     private ArrayList<Author> author;
+    private transient PropertyChangeSupport changes;
     
     /**
      * Constructor, initializes all data members with specified arguments and 
@@ -40,10 +48,28 @@ public class Book implements Comparable<Book>, Serializable {
         this.title = title;
         this.edition = edition;
         this.price = price;
-        this.author = new ArrayList<>();
+        this.author = new ArrayList<>(1);
         this.author.add(author);
     }
     
+    /**
+     * Constructor used when reading books from a library file, the fields
+     * were validated when the book was first created.
+     * @param isbn The ISBN number of the book.
+     * @param title The title of the book.
+     * @param edition The edition of the book.
+     * @param price The price of the book.
+     * @param authors The authors of the book, at least one.
+     */
+    Book(String isbn, String title, int edition, double price, 
+            ArrayList<Author> authors) {
+        this.isbn = isbn;
+        this.title = title;
+        this.edition = edition;
+        this.price = price;
+        this.author = authors;
+    }
+    
     /**
      * Return the ISBN number.
      * @return isbn The ISBN number of the book.
@@ -57,7 +83,9 @@ public class Book implements Comparable<Book>, Serializable {
      * @param isbn The new ISBN number of the book
      */
     public void setIsbn(String isbn) {
+        String old = this.isbn;
         this.isbn = isbn;
+        firePropertyChange("isbn", old, isbn);
     }
     
     /**
@@ -73,7 +101,9 @@ public class Book implements Comparable<Book>, Serializable {
      * @param title The new title of the book.
      */
     public void setTitle(String title) {
+        String old = this.title;
         this.title = title;
+        firePropertyChange("title", old, title);
     }
     
     /**
@@ -89,7 +119,9 @@ public class Book implements Comparable<Book>, Serializable {
      * @param edition The new edition number of the book.
      */
     public void setEdition(int edition) {
+        int old = this.edition;
         this.edition = edition;
+        firePropertyChange("edition", old, edition);
     }
     
     /**
@@ -105,23 +137,48 @@ public class Book implements Comparable<Book>, Serializable {
      * @param price The new price of the book.
      */
     public void setPrice(double price) {
+        double old = this.price;
         this.price = price;
+        firePropertyChange("price", old, price);
     }
     
     /**
      * Add authors with specified names to the author ArrayList.
+     * A collection holding the book replaces the author with the one it
+     * shares among its books.
      * @param name The name to be appended to the author list.
      */
     public void addAuthor(String name) {
-            author.add(new Author(name));
+        Author added = Author.valueOf(name);
+        author.add(added);
+        firePropertyChange("authors", null, added);
+    }
+    
+    /**
+     * Return a read only view of the author ArrayList, which is not copied
+     * and follows authors added later.
+     * @return The list of authors.
+     */
+    public List<Author> getAuthors() {
+        return Collections.unmodifiableList(author);
+    }
+    
+    /**
+     * Return the author ArrayList itself, for read only use in the package.
+     * @return The list of authors.
+     */
+    List<Author> authorList() {
+        return author;
     }
     
     /**
-     * Return a clone of the author ArrayList.
-     * @return A clone of the list of authors.
+     * Replace an author with the author object shared by a collection, 
+     * which has the same name. No change is reported.
+     * @param index The position of the author.
+     * @param shared The shared author.
      */
-    public ArrayList<Author> getAuthors() {
-        return (ArrayList<Author>) author.clone();
+    void shareAuthor(int index, Author shared) {
+        author.set(index, shared);
     }
     
     public String getAuthorNames() {
@@ -134,6 +191,40 @@ public class Book implements Comparable<Book>, Serializable {
         return authorList.toString();
     }
     
+    /**
+     * Add a listener that is notified when a property of the book changes.
+     * @param listener The listener to be added.
+     */
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        if(changes == null) {
+            changes = new PropertyChangeSupport(this);
+        }
+        changes.addPropertyChangeListener(listener);
+    }
+    
+    /**
+     * Remove a listener added by addPropertyChangeListener.
+     * @param listener The listener to be removed.
+     */
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        if(changes != null) {
+            changes.removePropertyChangeListener(listener);
+        }
+    }
+    
+    /**
+     * Notify the listeners that a property has changed.
+     * @param property The name of the property.
+     * @param oldValue The value before the change.
+     * @param newValue The value after the change.
+     */
+    private void firePropertyChange(String property, Object oldValue, 
+            Object newValue) {
+        if(changes != null) {
+            changes.firePropertyChange(property, oldValue, newValue);
+        }
+    }
+    
     /**
      * Override the comparable compareTo.
      * Sort the books by title in alphabetic order.
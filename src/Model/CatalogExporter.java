@@ -0,0 +1,198 @@
+package Model;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A CatalogExporter writes books as text, see ExportFormat for the formats.
+ * Every book is written to the writer as soon as it is formatted, so the
+ * memory used does not depend on the number of books. The books can be a
+ * snapshot of a library or the result of a search.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class CatalogExporter {
+
+    // Books written between two progress notifications
+    private static final int PROGRESS_INTERVAL = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ExportFormat format;
+
+    /**
+     * Constructor, creates an exporter.
+     * @param format The format the books are written in.
+     */
+    public CatalogExporter(ExportFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Write books to a file in UTF-8, replacing the file.
+     * @param books The books to be written.
+     * @param file The file.
+     * @param progress The listener notified about the books written, may
+     * be null.
+     * @throws IOException If the file cannot be written.
+     */
+    public void export(List<Book> books, File file, ProgressListener progress)
+            throws IOException {
+        try(Writer out = new BufferedWriter(Files.newBufferedWriter(
+                file.toPath(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            export(books, out, progress);
+        }
+    }
+
+    /**
+     * Write books to a writer, which is neither buffered nor closed.
+     * @param books The books to be written.
+     * @param out The writer.
+     * @param progress The listener notified about the books written, may
+     * be null.
+     * @throws IOException If the writer fails.
+     */
+    public void export(List<Book> books, Writer out, ProgressListener progress)
+            throws IOException {
+        int total = books.size();
+
+        if(format == ExportFormat.CSV) {
+            out.write("isbn,title,edition,price,authors\n");
+        }
+        for(int i = 0; i < total; i++) {
+            write(books.get(i), out);
+            if(progress != null && (i + 1) % PROGRESS_INTERVAL == 0) {
+                progress.progress(i + 1, total);
+            }
+        }
+        if(progress != null) {
+            progress.progress(total, total);
+        }
+    }
+
+    /**
+     * Write a book in the format of the exporter.
+     * @param book The book.
+     * @param out The writer.
+     * @throws IOException If the writer fails.
+     */
+    public void write(Book book, Writer out) throws IOException {
+        switch(format) {
+            case CSV:
+                writeCsv(book, out);
+                break;
+            case JSON_LINES:
+                writeJson(book, out);
+                break;
+            default:
+                out.write(book.toString());
+                break;
+        }
+    }
+
+    private static void writeCsv(Book book, Writer out) throws IOException {
+        csvValue(book.getIsbn(), out);
+        out.write(',');
+        csvValue(book.getTitle(), out);
+        out.write(',');
+        out.write(Integer.toString(book.getEdition()));
+        out.write(',');
+        out.write(Double.toString(book.getPrice()));
+        out.write(',');
+
+        List<Author> authors = book.authorList();
+        StringBuilder names = new StringBuilder();
+        for(int i = 0; i < authors.size(); i++) {
+            if(i > 0) {
+                names.append(';');
+            }
+            names.append(authors.get(i).getName());
+        }
+        csvValue(names.toString(), out);
+        out.write('\n');
+    }
+
+    /**
+     * Write a CSV value, quoted if it contains a separator, a quote or a
+     * line break.
+     */
+    private static void csvValue(String value, Writer out) throws IOException {
+        boolean quote = false;
+        for(int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static void writeJson(Book book, Writer out) throws IOException {
+        out.write("{\"isbn\":");
+        jsonString(book.getIsbn(), out);
+        out.write(",\"title\":");
+        jsonString(book.getTitle(), out);
+        out.write(",\"edition\":");
+        out.write(Integer.toString(book.getEdition()));
+        out.write(",\"price\":");
+        out.write(Double.toString(book.getPrice()));
+        out.write(",\"authors\":[");
+
+        List<Author> authors = book.authorList();
+        for(int i = 0; i < authors.size(); i++) {
+            if(i > 0) {
+                out.write(',');
+            }
+            jsonString(authors.get(i).getName(), out);
+        }
+        out.write("]}\n");
+    }
+
+    private static void jsonString(String value, Writer out) throws IOException {
+        out.write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        out.write(c);
+                    }
+                    break;
+            }
+        }
+        out.write('"');
+    }
+}
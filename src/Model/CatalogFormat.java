@@ -0,0 +1,50 @@
+package Model;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * A CatalogFormat is a format of the catalogue feeds read by a
+ * CatalogImporter.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public enum CatalogFormat {
+
+    /**
+     * Comma separated values with the columns isbn, title, edition, price
+     * and authors, the authors separated by semicolons. Values containing
+     * commas or line breaks are quoted with double quotes. A first line
+     * naming these columns is a header and skipped.
+     */
+    CSV,
+
+    /**
+     * MARC records in the text form used by MarcEdit (.mrk), one field per
+     * line such as "=245  10$aTitle" and an empty line after each record.
+     * The ISBN is read from 020 $a, the title from 245 $a and $b, the
+     * edition from 250 $a, the authors from 100 and 700 $a and the price
+     * from 365 $b or 020 $c. Records without edition are first editions,
+     * records without price cost nothing.
+     */
+    MARC;
+
+    /**
+     * Return the format of a file, by its extension.
+     * @param file The file.
+     * @return CSV for .csv files, MARC for .mrk files.
+     * @throws IllegalArgumentException If the extension is not known.
+     */
+    public static CatalogFormat forFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if(name.endsWith(".csv")) {
+            return CSV;
+        }
+        if(name.endsWith(".mrk")) {
+            return MARC;
+        }
+        throw new IllegalArgumentException("Unknown catalog format: " +
+                file.getName());
+    }
+}
@@ -0,0 +1,620 @@
+package Model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * A CatalogImporter adds the books of a catalogue feed to a library, see
+ * CatalogFormat for the formats that are read. The feed is read in chunks
+ * of records. The records of a chunk are parsed and checked by a pool of
+ * threads while the next chunks are read, with the rules of the Book
+ * constructor, and the valid books of a chunk are added to the library at
+ * once by addBooks, in the order of the feed, or passed to the adder given
+ * to the constructor. Records with the ISBN number of a book in the
+ * library or of an earlier record are skipped, books added to the library
+ * by others while importing included.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class CatalogImporter {
+
+    // Records parsed by one thread at a time
+    private static final int CHUNK_SIZE = 8192;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Characters removed from the end of MARC titles and names
+    private static final String PUNCTUATION = " /:;,.";
+    // The header of a CSV feed, see CatalogFormat.CSV
+    private static final String[] CSV_COLUMNS = 
+            {"isbn", "title", "edition", "price", "authors"};
+
+    private final CollectionOfBooks library;
+    private final int threads;
+    private final Consumer<List<Book>> adder;
+
+    /**
+     * Constructor, creates an importer using a thread per processor.
+     * @param library The library the books are added to.
+     */
+    public CatalogImporter(CollectionOfBooks library) {
+        this(library, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor, creates an importer.
+     * @param library The library the books are added to.
+     * @param threads The number of threads parsing the records.
+     */
+    public CatalogImporter(CollectionOfBooks library, int threads) {
+        this.library = library;
+        this.threads = Math.max(1, threads);
+        this.adder = library::addBooks;
+    }
+
+    /**
+     * Constructor, creates an importer using a thread per processor that
+     * passes the valid books of every chunk to an adder instead of adding
+     * them itself, for example to add them on the thread of a user
+     * interface showing the library.
+     * @param library The library the books are added to, the books in it
+     * are not imported again.
+     * @param adder Adds the books of a chunk to the library, called by the
+     * thread importing, one chunk after the other.
+     */
+    public CatalogImporter(CollectionOfBooks library,
+            Consumer<List<Book>> adder) {
+        this.library = library;
+        this.threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.adder = adder;
+    }
+
+    /**
+     * Import a catalogue file, in the format of its extension.
+     * @param file The file, a .csv or .mrk file.
+     * @param progress The listener notified about the bytes read, may be
+     * null.
+     * @return The report of the import.
+     * @throws IOException If the file cannot be read.
+     */
+    public ImportReport importFile(File file, ProgressListener progress)
+            throws IOException {
+        CatalogFormat format = CatalogFormat.forFile(file);
+
+        try(CountingInputStream in = new CountingInputStream(
+                new FileInputStream(file))) {
+            return importFeed(in, format, in, file.length(), progress);
+        }
+    }
+
+    /**
+     * Import a catalogue feed. The stream is not closed.
+     * @param in The stream the feed is read from, in UTF-8.
+     * @param format The format of the feed.
+     * @return The report of the import.
+     * @throws IOException If the stream cannot be read.
+     */
+    public ImportReport importFeed(InputStream in, CatalogFormat format)
+            throws IOException {
+        return importFeed(in, format, null, -1, null);
+    }
+
+    private ImportReport importFeed(InputStream in, CatalogFormat format,
+            CountingInputStream counter, long length,
+            ProgressListener progress) throws IOException {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport();
+        RecordReader records = new RecordReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8),
+                BUFFER_SIZE), format);
+        HashSet<String> isbns = new HashSet<>();
+        long version = addIsbns(isbns);
+        ExecutorService parsers = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("Catalog import"));
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+
+        try {
+            Chunk chunk;
+            while((chunk = records.next()) != null) {
+                if(Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Import canceled");
+                }
+                pending.add(parsers.submit(chunk));
+                // Reading stays a few chunks ahead of adding
+                if(pending.size() > 2 * threads) {
+                    version = add(pending.remove(), isbns, version, report);
+                }
+                if(progress != null) {
+                    progress.progress(counter.count, length);
+                }
+            }
+            while(!pending.isEmpty()) {
+                version = add(pending.remove(), isbns, version, report);
+            }
+        }
+        finally {
+            parsers.shutdownNow();
+        }
+        report.finished(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Add the canonical ISBN numbers of the books in the library to a set,
+     * and return the version of the library they were read from.
+     */
+    private long addIsbns(HashSet<String> isbns) {
+        long version = library.version();
+        for(Book book: library.snapshot()) {
+            isbns.add(Isbn.canonical(book.getIsbn()));
+        }
+        return version;
+    }
+
+    /**
+     * Add the valid books of a parsed chunk that are not duplicates, and
+     * return the version the library is expected to have after adding
+     * them. The ISBN numbers of the library are read again when it was
+     * changed by others since the previous chunk was added.
+     */
+    private long add(Future<Chunk> parsed, HashSet<String> isbns,
+            long version, ImportReport report) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = parsed.get();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import canceled");
+        }
+        catch(ExecutionException ex) {
+            throw new IOException("Import failed", ex.getCause());
+        }
+
+        long expected = version;
+        if(library.version() != expected) {
+            expected = addIsbns(isbns);
+        }
+        ArrayList<Book> valid = new ArrayList<>(chunk.size);
+        for(int i = 0; i < chunk.size; i++) {
+            if(chunk.books[i] == null) {
+                report.invalid(chunk.lines[i], chunk.errors[i]);
+            }
+            else if(!isbns.add(chunk.keys[i])) {
+                report.duplicate(chunk.lines[i], chunk.books[i].getIsbn());
+            }
+            else {
+                report.valid();
+                valid.add(chunk.books[i]);
+            }
+        }
+        if(Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Import canceled");
+        }
+        if(!valid.isEmpty()) {
+            adder.accept(valid);
+            // Adding the books is one change, any other change was made by
+            // others
+            expected++;
+        }
+        report.imported(valid.size());
+        return expected;
+    }
+
+    /**
+     * Create a book from a CSV record.
+     * @param record The record, without the line break at its end.
+     * @return The book.
+     * @throws IllegalArgumentException If the record is not a valid book.
+     */
+    static Book parseCsv(String record) {
+        ArrayList<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if(quoted) {
+                if(c != '"') {
+                    field.append(c);
+                }
+                else if(i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else {
+                    quoted = false;
+                }
+            }
+            else if(c == '"') {
+                quoted = true;
+            }
+            else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        if(fields.size() < 5) {
+            throw new IllegalArgumentException("Expected 5 fields, found " +
+                    fields.size());
+        }
+        ArrayList<String> authors = new ArrayList<>();
+        for(String name: fields.get(4).split(";")) {
+            authors.add(name);
+        }
+        return newBook(fields.get(0), fields.get(1),
+                parseEdition(fields.get(2)), parsePrice(fields.get(3)),
+                authors);
+    }
+
+    /**
+     * Create a book from a MARC record in text form.
+     * @param record The lines of the record.
+     * @return The book.
+     * @throws IllegalArgumentException If the record is not a valid book.
+     */
+    static Book parseMarc(String record) {
+        String isbn = null;
+        String title = null;
+        int edition = 1;
+        String listPrice = null;
+        String tradePrice = null;
+        ArrayList<String> authors = new ArrayList<>();
+
+        for(String line: record.split("\n")) {
+            if(line.length() < 4 || line.charAt(0) != '=') {
+                continue;
+            }
+            switch(line.substring(1, 4)) {
+                case "020":
+                    String number = subfield(line, 'a');
+                    if(isbn == null && number != null) {
+                        // Qualifiers such as "(pbk.)" follow the number
+                        isbn = number.trim().split(" ")[0];
+                    }
+                    if(listPrice == null) {
+                        listPrice = subfield(line, 'c');
+                    }
+                    break;
+                case "245":
+                    String main = subfield(line, 'a');
+                    String rest = subfield(line, 'b');
+                    if(main != null) {
+                        title = trimPunctuation(rest == null ? main :
+                                main + " " + rest);
+                    }
+                    break;
+                case "250":
+                    String statement = subfield(line, 'a');
+                    if(statement != null) {
+                        edition = leadingNumber(statement, 1);
+                    }
+                    break;
+                case "100":
+                case "110":
+                case "700":
+                case "710":
+                    String name = subfield(line, 'a');
+                    if(name != null) {
+                        authors.add(trimPunctuation(name));
+                    }
+                    break;
+                case "365":
+                    tradePrice = subfield(line, 'b');
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        String price = tradePrice != null ? tradePrice : listPrice;
+        return newBook(isbn, title, edition,
+                price == null ? 0 : parsePrice(price.replaceAll("[^0-9.]", "")),
+                authors);
+    }
+
+    /**
+     * Create a book with the rules of the Book constructor.
+     */
+    private static Book newBook(String isbn, String title, int edition,
+            double price, List<String> names) {
+        ArrayList<String> authors = new ArrayList<>(names.size());
+        for(String name: names) {
+            if(!name.trim().isEmpty()) {
+                authors.add(name);
+            }
+        }
+
+        Book book = new Book(isbn == null ? null : isbn.trim(),
+                title == null ? null : title.trim(), edition, price,
+                authors.isEmpty() ? null : Author.valueOf(authors.get(0)));
+        for(int i = 1; i < authors.size(); i++) {
+            book.addAuthor(authors.get(i));
+        }
+        return book;
+    }
+
+    private static int parseEdition(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid edition: " + text);
+        }
+    }
+
+    private static double parsePrice(String text) {
+        double price;
+        try {
+            price = Double.parseDouble(text.trim());
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid price: " + text);
+        }
+        if(Double.isNaN(price) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("Invalid price: " + text);
+        }
+        return price;
+    }
+
+    /**
+     * Return the value of a subfield of a MARC field in text form, or null
+     * if the field has no such subfield.
+     */
+    private static String subfield(String line, char code) {
+        int start = line.indexOf("$" + code);
+        if(start < 0) {
+            return null;
+        }
+        int end = line.indexOf('$', start + 2);
+        String value = line.substring(start + 2, end < 0 ? line.length() : end);
+        return value.replace("{dollar}", "$");
+    }
+
+    private static String trimPunctuation(String text) {
+        int end = text.length();
+        while(end > 0 && (PUNCTUATION.indexOf(text.charAt(end - 1)) >= 0 ||
+                Character.isWhitespace(text.charAt(end - 1)))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    /**
+     * Return the number a text starts with, such as 2 for "2nd ed."
+     */
+    private static int leadingNumber(String text, int otherwise) {
+        String trimmed = text.trim();
+        int end = 0;
+        while(end < trimmed.length() && end < 9 &&
+                Character.isDigit(trimmed.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? otherwise : Integer.parseInt(trimmed.substring(0, end));
+    }
+
+    /**
+     * A RecordReader splits a feed into the records of a format
+     */
+    private static class RecordReader {
+        private final BufferedReader in;
+        private final CatalogFormat format;
+        private long line;
+        private long recordLine;
+        private boolean first;
+
+        RecordReader(BufferedReader in, CatalogFormat format) {
+            this.in = in;
+            this.format = format;
+            this.first = true;
+        }
+
+        /**
+         * Return the next chunk of records, or null at the end of the feed.
+         */
+        Chunk next() throws IOException {
+            Chunk chunk = new Chunk(format);
+            String record;
+
+            while(chunk.size < CHUNK_SIZE && (record =
+                    format == CatalogFormat.CSV ? csvRecord() : marcRecord())
+                    != null) {
+                chunk.add(record, recordLine);
+            }
+            return chunk.size == 0 ? null : chunk;
+        }
+
+        private String readLine() throws IOException {
+            String text = in.readLine();
+            if(text != null) {
+                line++;
+                if(first) {
+                    first = false;
+                    // A byte order mark is not part of the first record
+                    if(text.startsWith("\uFEFF")) {
+                        text = text.substring(1);
+                    }
+                    if(format == CatalogFormat.CSV && isHeader(text)) {
+                        return readLine();
+                    }
+                }
+            }
+            return text;
+        }
+
+        private String csvRecord() throws IOException {
+            String text;
+            do {
+                text = readLine();
+            } while(text != null && text.isEmpty());
+            if(text == null) {
+                return null;
+            }
+            recordLine = line;
+
+            // A quoted value may continue on the next lines
+            boolean quoted = oddQuotes(text);
+            while(quoted) {
+                String more = readLine();
+                if(more == null) {
+                    break;
+                }
+                text = text + "\n" + more;
+                quoted ^= oddQuotes(more);
+            }
+            return text;
+        }
+
+        private String marcRecord() throws IOException {
+            StringBuilder record = null;
+            String text;
+
+            while((text = readLine()) != null) {
+                if(text.trim().isEmpty()) {
+                    if(record != null) {
+                        break;
+                    }
+                    continue;
+                }
+                if(record == null) {
+                    record = new StringBuilder();
+                    recordLine = line;
+                }
+                else {
+                    record.append('\n');
+                }
+                record.append(text);
+            }
+            return record == null ? null : record.toString();
+        }
+
+        /**
+         * Determine whether a line names the columns of a CSV feed, in any
+         * case and with spaces around the names.
+         */
+        private static boolean isHeader(String text) {
+            String[] names = text.split(",", -1);
+            if(names.length != CSV_COLUMNS.length) {
+                return false;
+            }
+            for(int i = 0; i < names.length; i++) {
+                if(!names[i].trim().equalsIgnoreCase(CSV_COLUMNS[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean oddQuotes(String text) {
+            boolean odd = false;
+            for(int i = 0; i < text.length(); i++) {
+                if(text.charAt(i) == '"') {
+                    odd = !odd;
+                }
+            }
+            return odd;
+        }
+    }
+
+    /**
+     * A Chunk holds records of a feed and, once parsed, their books or the
+     * reasons they are not valid
+     */
+    private static class Chunk implements Callable<Chunk> {
+        private final CatalogFormat format;
+        private final String[] records;
+        private final long[] lines;
+        private final Book[] books;
+        private final String[] keys;
+        private final String[] errors;
+        private int size;
+
+        Chunk(CatalogFormat format) {
+            this.format = format;
+            this.records = new String[CHUNK_SIZE];
+            this.lines = new long[CHUNK_SIZE];
+            this.books = new Book[CHUNK_SIZE];
+            this.keys = new String[CHUNK_SIZE];
+            this.errors = new String[CHUNK_SIZE];
+        }
+
+        void add(String record, long line) {
+            records[size] = record;
+            lines[size] = line;
+            size++;
+        }
+
+        @Override
+        public Chunk call() {
+            for(int i = 0; i < size; i++) {
+                try {
+                    books[i] = format == CatalogFormat.CSV ?
+                            parseCsv(records[i]) : parseMarc(records[i]);
+                    keys[i] = Isbn.canonical(books[i].getIsbn());
+                }
+                catch(IllegalArgumentException ex) {
+                    errors[i] = ex.getMessage();
+                }
+                records[i] = null;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A CountingInputStream counts the bytes read, to report the progress
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package Model;
+
+import java.util.EventListener;
+
+/**
+ * A CollectionListener is notified about the changes of a CollectionOfBooks.
+ * The methods are called after the change, on the thread that made it and
+ * while the collection holds its write lock, so they may read the
+ * collection but must not block.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public interface CollectionListener extends EventListener {
+
+    /**
+     * Called when a book was added.
+     * @param index The position of the added book.
+     */
+    void bookAdded(int index);
+
+    /**
+     * Called when a book was removed.
+     * @param index The position the book had.
+     * @param book The removed book.
+     */
+    void bookRemoved(int index, Book book);
+
+    /**
+     * Called when a property of a book was changed.
+     * @param index The position of the changed book.
+     */
+    void bookUpdated(int index);
+
+    /**
+     * Called when the books were sorted or replaced, any book may have
+     * moved and the number of books may have changed.
+     */
+    void booksReset();
+}
@@ -1,29 +1,155 @@
 package Model;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A CollectionOfBooks is an object that contains a list of books.
+ * A collection opened with mapFile is in read mode: the books stay in the
+ * memory mapped file and are decoded when they are used. The first change
+ * to a collection in read mode loads all books into memory.
+ * A collection can store its books in columns instead of objects, see
+ * setColumnar, which needs several times less memory for many books, and
+ * can keep the columns outside the Java heap, see setOffHeap.
+ * A collection with an open journal appends every change to the journal of
+ * its library file, see openJournal.
+ * The results of the latest title, author and ISBN searches are cached
+ * until the collection changes, see setQueryCacheSize. A query typed one
+ * character at a time is best searched with a SearchSession.
+ * The methods of a collection are thread safe, so it can be searched or
+ * saved by a background thread while it is edited. Methods that only read
+ * the collection share a read lock and run at the same time, methods that
+ * change it take the write lock and wait for the readers to finish.
+ * Lists returned by asList must not be iterated while the collection is
+ * changed. The changes of a collection can be observed with a
+ * CollectionListener. The times of the public operations are recorded,
+ * see Metrics.
  * @author 
  * @version 1.2
  * @since 0.3
  */
 public class CollectionOfBooks {
     
-    private ArrayList<Book> books;
+    private List<Book> books;
+    private MappedBookList mapped;
+    private boolean columnar;
+    private boolean offHeap;
+    private Journal journal;
+    // Whether a compaction of the journal is running, see compactIfLarge
+    private boolean compacting;
+    // The first position of each book, null until a change needs it and
+    // after books were removed or moved, see positionOf
+    private volatile IdentityHashMap<Book, Integer> positions;
+    private final IsbnIndex isbnIndex;
+    private final NGramIndex<Book> titleIndex;
+    private final AuthorIndex authorIndex;
+    private final EnumMap<SortKey, SortedIndex> sortedIndexes;
+    private final QueryCache queryCache;
+    // Counts the changes of the collection, see version()
+    private long version;
+    private final PropertyChangeListener bookListener;
+    private final PropertyChangeListener authorListener;
+    private final PropertyChangeListener mappedListener;
+    private final ArrayList<CollectionListener> listeners;
+    private final Lock readLock;
+    private final Lock writeLock;
+    // The wrapper of view(), replaced when the collection switches lists
+    private List<Book> readOnly;
+    
+    // A journal larger than this and than the library file is compacted
+    private static final long COMPACT_SIZE = 1 << 20;
+    // Compacts the journals in the background, so changes do not wait
+    private static final ExecutorService COMPACTOR = 
+            Executors.newSingleThreadExecutor(
+                    new DaemonThreadFactory("Journal compaction"));
+    // Searches cached by default, and books kept in all cached results
+    private static final int QUERY_CACHE_SIZE = 256;
+    private static final int QUERY_CACHE_BOOKS = 1 << 18;
+    // Books compared before the first books found are passed on, doubled
+    // after every chunk, see search with a sink
+    private static final int SCAN_CHUNK = 4096;
+    private static final int MAX_SCAN_CHUNK = 1 << 16;
+    // The times of the public operations, see Metrics
+    private static final Metric ADD_BOOK = 
+            Metrics.metric("CollectionOfBooks.addBook");
+    private static final Metric ADD_BOOKS = 
+            Metrics.metric("CollectionOfBooks.addBooks");
+    private static final Metric SEARCH_TITLE = 
+            Metrics.metric("CollectionOfBooks.getBooksByTitle");
+    private static final Metric SEARCH_AUTHOR = 
+            Metrics.metric("CollectionOfBooks.getBooksByAuthor");
+    private static final Metric SEARCH_ISBN = 
+            Metrics.metric("CollectionOfBooks.getBooksByIsbn");
+    private static final Metric SEARCH_EXACT_ISBN = 
+            Metrics.metric("CollectionOfBooks.getBooksByExactIsbn");
+    private static final Metric SEARCH_ISBN_PREFIX = 
+            Metrics.metric("CollectionOfBooks.getBooksByIsbnPrefix");
+    private static final Metric SEARCH_PRICE = 
+            Metrics.metric("CollectionOfBooks.getBooksByPrice");
+    private static final Metric SEARCH_EDITION = 
+            Metrics.metric("CollectionOfBooks.getBooksByEdition");
+    private static final Metric FIND_BOOKS = 
+            Metrics.metric("CollectionOfBooks.findBooks");
+    private static final Metric SEARCH = 
+            Metrics.metric("CollectionOfBooks.search");
+    private static final Metric REMOVE_BOOK = 
+            Metrics.metric("CollectionOfBooks.removeBook");
+    private static final Metric REMOVE_BOOK_BY_TITLE = 
+            Metrics.metric("CollectionOfBooks.removeBookByTitle");
+    private static final Metric SORT_BOOKS = 
+            Metrics.metric("CollectionOfBooks.sortBooks");
+    private static final Metric SERIALIZE = 
+            Metrics.metric("CollectionOfBooks.serializeToFile");
+    private static final Metric DESERIALIZE = 
+            Metrics.metric("CollectionOfBooks.deSerializeFromFile");
+    private static final Metric MAP_FILE = 
+            Metrics.metric("CollectionOfBooks.mapFile");
+    private static final Metric SAVE_BOOKS = 
+            Metrics.metric("CollectionOfBooks.saveBooks");
     
     /**
      * Constructor, initializes a new ArrayList that can contain book objects
      */
     public CollectionOfBooks() {
         this.books = new ArrayList<>();
+        this.authorListener = new AuthorChangeHandler();
+        this.isbnIndex = new IsbnIndex();
+        this.titleIndex = new NGramIndex<>();
+        this.authorIndex = new AuthorIndex(authorListener);
+        this.sortedIndexes = new EnumMap<>(SortKey.class);
+        this.queryCache = new QueryCache(QUERY_CACHE_SIZE, QUERY_CACHE_BOOKS);
+        this.bookListener = new BookChangeHandler();
+        this.mappedListener = new MappedChangeHandler();
+        this.listeners = new ArrayList<>();
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.readOnly = Collections.unmodifiableList(books);
     }
     
     /**
@@ -31,40 +157,309 @@ public class CollectionOfBooks {
      * @return books.size()
      */
     public int getSize() {
-        return books.size();
+        readLock.lock();
+        try {
+            return mapped != null ? mapped.size() : books.size();
+        }
+        finally {
+            readLock.unlock();
+        }
     }
     
     /**
-     * Get the books from the collection of books
+     * Get the books from the collection of books, as a read only list that
+     * is not copied. The list follows later changes of the collection, use
+     * snapshot for a copy that can be used while the collection is changed
+     * by another thread.
      * @return books
      */
-    public ArrayList getBooks() {
-        return (ArrayList<Book>) books.clone();
+    public List<Book> getBooks() {
+        return asList();
+    }
+    
+    /**
+     * Return the book at the specified position.
+     * @param index The position of the book.
+     * @return The book.
+     */
+    public Book getBook(int index) {
+        readLock.lock();
+        try {
+            return view().get(index);
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Return a read only list of the books that is not copied. In read mode
+     * the books are only decoded when the list is asked for them.
+     * The list follows later changes of the collection.
+     * @return The books in the collection.
+     */
+    public List<Book> asList() {
+        readLock.lock();
+        try {
+            return readOnly;
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Store the books in columns instead of objects, or as objects again.
+     * In columns, the editions and prices are kept in arrays and the other
+     * values are encoded in a byte array, and a Book object only exists
+     * while it is used. The books then need several times less memory and
+     * price and edition searches only read the arrays, but there are no
+     * ISBN, title or author indexes, so those searches compare every book.
+     * Books in use keep working, changes to them are stored in the columns.
+     * Library files are loaded into the columns instead of being mapped.
+     * @param columnar true to store the books in columns, false otherwise.
+     */
+    public void setColumnar(boolean columnar) {
+        writeLock.lock();
+        try {
+            setStorage(columnar, columnar && offHeap);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Determine whether the books are stored in columns.
+     * @return true if the books are stored in columns, false otherwise.
+     */
+    public boolean isColumnar() {
+        readLock.lock();
+        try {
+            return columnar;
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Store the books in columns outside the Java heap, or in columns on
+     * the heap. Outside the heap only the books in use and the authors
+     * are Java objects, so the heap and the garbage collection pauses do
+     * not grow with the number of books. The size of the columns is limited
+     * by the -XX:MaxDirectMemorySize option of the Java VM instead, and
+     * sorted views of the books (see getBooks(SortKey)) still keep all
+     * books of their order as objects while they are used.
+     * @param offHeap true to store the books outside the heap, false to
+     * store them in columns on the heap.
+     */
+    public void setOffHeap(boolean offHeap) {
+        writeLock.lock();
+        try {
+            setStorage(true, offHeap);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Determine whether the books are stored outside the Java heap.
+     * @return true if the books are stored outside the heap, false otherwise.
+     */
+    public boolean isOffHeap() {
+        readLock.lock();
+        try {
+            return offHeap;
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Move the books to another kind of storage.
+     * @param columnar true to store the books in columns.
+     * @param offHeap true to store the columns outside the heap.
+     */
+    private void setStorage(boolean columnar, boolean offHeap) {
+        if(columnar == this.columnar && offHeap == this.offHeap) {
+            return;
+        }
+        materialize();
+        ArrayList<Book> all = new ArrayList<>(books);
+        
+        this.columnar = columnar;
+        this.offHeap = offHeap;
+        replaceBooks(all);
+        if(columnar) {
+            // The objects are released as soon as they are no longer used
+            ((ColumnarBookList) books).adopt(all);
+        }
+        rebuildSortedIndexes();
+        fireReset();
+    }
+    
+    /**
+     * Determine whether the collection is in read mode.
+     * @return true if the books are read from a mapped file, false otherwise.
+     */
+    public boolean isMapped() {
+        readLock.lock();
+        try {
+            return mapped != null;
+        }
+        finally {
+            readLock.unlock();
+        }
     }
     
     /**
-     * Serialize books to the specified file.
+     * Save books to the specified file in the binary library format.
      * @param filename The appointed file name under the package directory.
      * @throws IOException The exception might occur.
      */
     public void serializeToFile(File filename) throws IOException {
-		
-	ObjectOutputStream out = null;
-		
+        long start = SERIALIZE.start();
+        writeLock.lock();
         try {
-            out = new ObjectOutputStream(
-            new FileOutputStream(filename));
-            out.writeObject(books);
+            // The mapped file must not be overwritten while it is read from
+            if(mapped != null && isMappedFile(mapped, filename)) {
+                materialize();
+            }
+            saveBooks(view(), filename, null);
         }
         finally {
-            try {
-		if(out != null)	out.close();
-            } catch(Exception e) {}
+            writeLock.unlock();
+            SERIALIZE.stop(start);
+        }
+    }
+    
+    /**
+     * Return a copy of the list of books that later changes of the 
+     * collection do not affect. The copy can be saved by saveBooks on 
+     * another thread while the collection is still in use. Books stored in
+     * columns are copied as columns and decoded when the copy is read, in
+     * read mode the copy is the mapped file.
+     * @return The books in the collection.
+     */
+    public List<Book> snapshot() {
+        readLock.lock();
+        try {
+            if(mapped != null) {
+                // The mapped list is read only and never changes, a change
+                // leaves read mode
+                return mapped;
+            }
+            if(books instanceof ColumnarBookList) {
+                return Collections.unmodifiableList(
+                        ((ColumnarBookList) books).snapshot());
+            }
+            return Collections.unmodifiableList(new ArrayList<>(books));
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Save books to the specified file in the binary library format.
+     * The books are written to a temporary file in the same directory that
+     * replaces the file when it is complete, so the previous file is kept
+     * if saving fails. The copy of a collection in read mode is not saved 
+     * to its own file again, the file holds the books already.
+     * @param books The books to be saved, see snapshot.
+     * @param filename The file to be saved to.
+     * @param progress The listener notified about the books written, 
+     * may be null.
+     * @throws IOException The exception might occur.
+     */
+    public static void saveBooks(List<Book> books, File filename, 
+            ProgressListener progress) throws IOException {
+        if(books instanceof MappedBookList && isMappedFile(
+                (MappedBookList) books, filename)) {
+            // The file holds these books, and cannot be replaced while it 
+            // is mapped where mapped files are locked
+            if(progress != null) {
+                progress.progress(books.size(), books.size());
+            }
+            return;
+        }
+        long start = SAVE_BOOKS.start();
+        File temp = writeTemp(books, filename, progress);
+        try {
+            replaceFile(temp, filename);
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+            SAVE_BOOKS.stop(start);
+        }
+    }
+    
+    /**
+     * Determine whether a file is the file still mapped by a list.
+     * @param list The mapped list.
+     * @param filename The file.
+     * @return true if the list maps the file, false otherwise.
+     * @throws IOException The exception might occur.
+     */
+    private static boolean isMappedFile(MappedBookList list, File filename)
+            throws IOException {
+        return list.isOpen() && filename.exists() && Files.isSameFile(
+                filename.toPath(), list.getFile().toPath());
+    }
+    
+    /**
+     * Write books to a temporary file in the directory of a file, to be
+     * moved over the file by replaceFile.
+     * @param books The books to be saved.
+     * @param filename The file to be saved to.
+     * @param progress The listener notified about the books written, 
+     * may be null.
+     * @return The temporary file.
+     * @throws IOException The exception might occur.
+     */
+    private static File writeTemp(List<Book> books, File filename, 
+            ProgressListener progress) throws IOException {
+        File dir = filename.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(filename.getName(), ".tmp", dir);
+        
+        try(FileChannel channel = FileChannel.open(temp.toPath(), 
+                StandardOpenOption.WRITE, 
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new LibraryWriter(channel).write(books, progress);
+            channel.force(true);
+            return temp;
+        }
+        catch(IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp.toPath());
+            throw ex;
+        }
+    }
+    
+    /**
+     * Replace a file by a temporary file written by writeTemp.
+     * @param temp The temporary file.
+     * @param filename The file to be replaced.
+     * @throws IOException The exception might occur.
+     */
+    private static void replaceFile(File temp, File filename) 
+            throws IOException {
+        try {
+            Files.move(temp.toPath(), filename.toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), filename.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     /**
-     * Deserialize the books from the specified file.
+     * Load the books from the specified file. Both the binary library format
+     * and files saved with Java serialization by earlier versions are read.
      * @param filename The appointed file name under the package directory.
      * @throws IOException The exceptions might occur.
      * @throws ClassNotFoundException The exception might occur.
@@ -72,20 +467,87 @@ public class CollectionOfBooks {
     @SuppressWarnings("unchecked")
     public void deSerializeFromFile(File filename) throws IOException,
             ClassNotFoundException {
+        long start = DESERIALIZE.start();
+        writeLock.lock();
+        try {
         
-        ObjectInputStream in = null;
+            InputStream in = null;
+            closeJournal();
 		
+            try {
+                in = new BufferedInputStream(new FileInputStream(filename));
+                System.out.println("Found file: " + filename);
+                List<Book> loaded;
+            
+                in.mark(2);
+                int magic = (in.read() << 8) | in.read();
+                in.reset();
+                if(magic == LibraryFormat.SERIALIZATION_MAGIC) {
+                    // readObject returns a reference of type Object, 
+                    // hence the down-cast
+                    loaded = (ArrayList<Book>) new ObjectInputStream(in).readObject();
+                }
+                else if(columnar) {
+                    // The books are stored as they are read, without keeping them
+                    ColumnarBookList columns = new ColumnarBookList(
+                            Collections.<Book>emptyList(), bookListener, 
+                            authorListener, offHeap);
+                    new LibraryReader(in).read(columns::load);
+                    loaded = columns;
+                }
+                else {
+                    loaded = new LibraryReader(in).read();
+                }
+                replaceBooks(loaded);
+                rebuildSortedIndexes();
+                fireReset();
+            }
+            finally {
+                try {
+                    if(in != null) 	in.close();
+                } catch(Exception e) {}			
+            }
+        }
+        finally {
+            writeLock.unlock();
+            DESERIALIZE.stop(start);
+        }
+    }
+    
+    /**
+     * Open the specified file in read mode. The file is memory mapped and
+     * the books are decoded when they are used, so opening does not depend
+     * on the size of the file. Files that cannot be mapped (files saved by
+     * earlier versions or larger than 2 GB) are loaded as by 
+     * deSerializeFromFile.
+     * @param filename The library file.
+     * @throws IOException The exceptions might occur.
+     * @throws ClassNotFoundException The exception might occur.
+     */
+    public void mapFile(File filename) throws IOException, 
+            ClassNotFoundException {
+        long start = MAP_FILE.start();
+        writeLock.lock();
         try {
-            in = new ObjectInputStream(new FileInputStream(filename));
-            System.out.println("Found file: " + filename);
-            // readObject returns a reference of type Object, 
-            // hence the down-cast
-            books = (ArrayList<Book>) in.readObject(); 
+            closeJournal();
+            // Books stored in columns are loaded into the columns instead
+            MappedBookList list = columnar ? null : 
+                    MappedBookList.open(filename, mappedListener);
+        
+            if(list == null) {
+                deSerializeFromFile(filename);
+            }
+            else {
+                replaceBooks(new ArrayList<Book>());
+                mapped = list;
+                readOnly = Collections.unmodifiableList(mapped);
+                rebuildSortedIndexes();
+                fireReset();
+            }
         }
         finally {
-            try {
-                if(in != null) 	in.close();
-            } catch(Exception e) {}			
+            writeLock.unlock();
+            MAP_FILE.stop(start);
         }
     }
    
@@ -94,7 +556,82 @@ public class CollectionOfBooks {
     * @param book The object of a new book.
     */ 
     public void addBook(Book book) {
-        this.books.add(book);
+        long start = ADD_BOOK.start();
+        writeLock.lock();
+        try {
+            materialize();
+            changed();
+            this.books.add(book);
+            if(!columnar) {
+                link(book);
+            }
+            if(positions != null) {
+                positions.putIfAbsent(book, books.size() - 1);
+            }
+            for(SortedIndex index: sortedIndexes.values()) {
+                index.add(book);
+            }
+            for(CollectionListener listener: listeners) {
+                listener.bookAdded(books.size() - 1);
+            }
+            if(journal != null) {
+                try {
+                    journal.add(book);
+                    compactIfLarge();
+                }
+                catch(IOException ex) {
+                    journalFailed(ex);
+                }
+            }
+        }
+        finally {
+            writeLock.unlock();
+            ADD_BOOK.stop(start);
+        }
+    }
+    
+    /**
+     * Add many books at once. The indexes are updated in one pass and the
+     * listeners are only told once that the books were reset, instead of
+     * once for every book.
+     * @param added The books to be added, in order.
+     */
+    public void addBooks(List<Book> added) {
+        if(added.isEmpty()) {
+            return;
+        }
+        long start = ADD_BOOKS.start();
+        writeLock.lock();
+        try {
+            materialize();
+            changed();
+            for(Book book: added) {
+                books.add(book);
+                if(!columnar) {
+                    link(book);
+                }
+                if(positions != null) {
+                    positions.putIfAbsent(book, books.size() - 1);
+                }
+            }
+            for(SortedIndex index: sortedIndexes.values()) {
+                index.addAll(added);
+            }
+            fireReset();
+            if(journal != null) {
+                try {
+                    journal.addAll(added);
+                    compactIfLarge();
+                }
+                catch(IOException ex) {
+                    journalFailed(ex);
+                }
+            }
+        }
+        finally {
+            writeLock.unlock();
+            ADD_BOOKS.stop(start);
+        }
     }
     
     /**
@@ -103,14 +640,43 @@ public class CollectionOfBooks {
      * @param title The title of the book to be searched.
      * @return titles The the book of the specified title founded.
      */
-    public ArrayList getBooksByTitle(String title) {
-        ArrayList<Book> titles = new ArrayList<>();
-        for(Book temp: books) {
-            if(temp.getTitle().contains(title)) {
-                titles.add(temp);
-            }
+    public ArrayList<Book> getBooksByTitle(String title) {
+        readLock.lock();
+        try {
+            return getBooksByTitle(title, false);
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Return the books whose title contains the specified text.
+     * The title index narrows down the books to be compared when the text
+     * is at least three characters long.
+     * @param title The text to be searched in the titles.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    public ArrayList<Book> getBooksByTitle(String title, boolean ignoreCase) {
+        long start = SEARCH_TITLE.start();
+        readLock.lock();
+        try {
+            return cached(QueryCache.TITLE, title, ignoreCase, () -> {
+                List<Book> candidates = isIndexed() ? 
+                        titleIndex.candidates(title) : null;
+                
+                Predicate<Book> matches = 
+                        QueryEngine.titleContains(title, ignoreCase);
+                return candidates != null ? 
+                        inOrder(QueryEngine.filter(candidates, matches)) : 
+                        scan(matches);
+            });
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_TITLE.stop(start);
         }
-        return titles;
     }
     
     /**
@@ -119,81 +685,1327 @@ public class CollectionOfBooks {
      * @param author The name of the author to be searched.
      * @return authors The books of the specified author founded.
      */
-    public ArrayList getBooksByAuthor(String author) {
-        ArrayList<Book> authors = new ArrayList<>();
-        
-        for(Book temp: books) {
-            ArrayList<Author> auth = temp.getAuthors();
-            for(Author a: auth){
-                if(a.getName().contains(author)){
-                    authors.add(temp);
+    public ArrayList<Book> getBooksByAuthor(String author) {
+        readLock.lock();
+        try {
+            return getBooksByAuthor(author, false);
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Return the books having an author whose name contains the specified 
+     * text. The author index is used, so only the books of matching authors
+     * are visited. A book is returned once even if several authors match,
+     * and the books are returned in the order of the collection.
+     * @param author The text to be searched in the author names.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    public ArrayList<Book> getBooksByAuthor(String author, boolean ignoreCase) {
+        long start = SEARCH_AUTHOR.start();
+        readLock.lock();
+        try {
+            return cached(QueryCache.AUTHOR, author, ignoreCase, () -> {
+                if(isIndexed()) {
+                    return inOrder(authorIndex.search(author, ignoreCase));
                 }
-            }
+                
+                return scan(QueryEngine.authorContains(author, ignoreCase));
+            });
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_AUTHOR.stop(start);
         }
-        return authors;
     }
     
     /**
-     * Return a ArrayList of the books with the specified ISBN number. 
-     * A search method
+     * Return a ArrayList of the books whose ISBN number contains the 
+     * specified text, hyphens and spaces are ignored. A search method
      * @param isbn The ISBN number to be searched.
      * @return isbns The books with the specified ISBN number found.
      */
-    public ArrayList getBooksByIsbn(String isbn) {
-        ArrayList<Book> isbns = new ArrayList<>();
-        for(Book temp: books) {
-            if(temp.getIsbn().contains(isbn)) {
-                isbns.add(temp);
+    public ArrayList<Book> getBooksByIsbn(String isbn) {
+        long start = SEARCH_ISBN.start();
+        readLock.lock();
+        try {
+            return cached(QueryCache.ISBN, isbn, false, () -> 
+                    scan(QueryEngine.isbnContains(isbn)));
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_ISBN.stop(start);
+        }
+    }
+    
+    /**
+     * Return the books with exactly the specified ISBN number, looked up
+     * in the ISBN index. ISBN-10 and ISBN-13 forms of a number match each 
+     * other, hyphens and spaces are ignored.
+     * @param isbn The ISBN number to be searched.
+     * @return The books with the specified ISBN number found.
+     */
+    public ArrayList<Book> getBooksByExactIsbn(String isbn) {
+        long start = SEARCH_EXACT_ISBN.start();
+        readLock.lock();
+        try {
+            if(isIndexed()) {
+                return isbnIndex.get(isbn);
             }
+        
+            return scan(QueryEngine.isbnEquals(isbn));
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_EXACT_ISBN.stop(start);
         }
-        return isbns;
     }
     
     /**
-     * Remove a specified book object from the ArrayList
-     * Determine whether the book is deleted successfully or not.
-     * @param deleteBook The book is to be deleted.
-     * @return true if the book is removed, false otherwise.
+     * Return the books whose ISBN number starts with the specified prefix, 
+     * looked up in the ISBN index. Hyphens and spaces are ignored.
+     * @param prefix The beginning of the ISBN number to be searched.
+     * @return The books found, ordered by ISBN number unless in read mode
+     * or stored in columns.
      */
-    public boolean removeBook(Book deleteBook) {
-        return books.remove(deleteBook);
+    public ArrayList<Book> getBooksByIsbnPrefix(String prefix) {
+        long start = SEARCH_ISBN_PREFIX.start();
+        readLock.lock();
+        try {
+            if(isIndexed()) {
+                return isbnIndex.getByPrefix(prefix);
+            }
+        
+            return scan(QueryEngine.isbnStartsWith(prefix));
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_ISBN_PREFIX.stop(start);
+        }
     }
     
     /**
-     * Remove a book object specified by title from the ArrayList.
-     * Determine whether the book is deleted or not.
-     * @param title The title of the book to be removed.
-     * @return true if the book is removed, false otherwise.
+     * Return the books with a price in the specified range.
+     * @param min The lowest price, inclusive.
+     * @param max The highest price, inclusive.
+     * @return The books found.
      */
-    public boolean removeBookByTitle(String title) {
-        for(Book temp: books) {
-            if(temp.getTitle().equalsIgnoreCase(title)) {
-                books.remove(temp);
-                return true;
+    public ArrayList<Book> getBooksByPrice(double min, double max) {
+        long start = SEARCH_PRICE.start();
+        readLock.lock();
+        try {
+            if(mapped == null && columnar) {
+                return ((ColumnarBookList) books).findByPrice(min, max);
             }
+            return scan(QueryEngine.priceBetween(min, max));
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_PRICE.stop(start);
         }
-        return false;
     }
     
     /**
-     * Sort the ArrayList books by a sort method from the Collections class.
+     * Return the books with an edition in the specified range.
+     * @param min The lowest edition, inclusive.
+     * @param max The highest edition, inclusive.
+     * @return The books found.
      */
-    public void sortBooks() {
-        Collections.sort(books);
+    public ArrayList<Book> getBooksByEdition(int min, int max) {
+        long start = SEARCH_EDITION.start();
+        readLock.lock();
+        try {
+            if(mapped == null && columnar) {
+                return ((ColumnarBookList) books).findByEdition(min, max);
+            }
+            return scan(QueryEngine.editionBetween(min, max));
+        }
+        finally {
+            readLock.unlock();
+            SEARCH_EDITION.stop(start);
+        }
     }
     
     /**
-     * Print all of the books information.
-     * @return The information of books.
+     * Return the books matching a condition, in the order of the collection.
+     * Large collections are compared in parallel, so the condition may be
+     * tested from several threads at once and must not change the books.
+     * Books stored in columns are tested as copies, so the condition must
+     * compare their values, not their identity.
+     * @param condition The condition the books found fulfil.
+     * @return The books found.
      */
-    @Override
-    public String toString() {
-        StringBuilder bookList = new StringBuilder();
-        
-        for (Book book : books) {
-            bookList.append(book);
+    public ArrayList<Book> findBooks(Predicate<? super Book> condition) {
+        long start = FIND_BOOKS.start();
+        readLock.lock();
+        try {
+            return scan(condition);
+        }
+        finally {
+            readLock.unlock();
+            FIND_BOOKS.stop(start);
+        }
+    }
+    
+    /**
+     * Return the books matching a search, looked up in the indexes where
+     * possible. A complete ISBN number is matched exactly, other ISBN text
+     * matches any part of the numbers, see getBooksByIsbn.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    public ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase) {
+        long start = SEARCH.start();
+        readLock.lock();
+        try {
+            switch(field) {
+                case ISBN:
+                    if(Isbn.isComplete(query)) {
+                        return getBooksByExactIsbn(query);
+                    }
+                    return getBooksByIsbn(query);
+                case TITLE:
+                    return getBooksByTitle(query, ignoreCase);
+                default:
+                    return getBooksByAuthor(query, ignoreCase);
+            }
+        }
+        finally {
+            readLock.unlock();
+            SEARCH.stop(start);
+        }
+    }
+    
+    /**
+     * Return the books matching a search as search does, passing the books
+     * found to a sink while the other books are still compared. Books
+     * found in an index are passed at once. The search stops when the 
+     * thread is interrupted.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @param sink The consumer of the books found, in chunks in the order 
+     * of the result, called by the searching thread.
+     * @return All books found.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    public ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase, Consumer<List<Book>> sink) 
+            throws InterruptedException {
+        return search(field, query, ignoreCase, Integer.MAX_VALUE, sink);
+    }
+    
+    /**
+     * Return the first books matching a search as search does, at most a
+     * number of books. Comparing all books stops once enough books are
+     * found, so a query matching most books of a large collection does not
+     * compare them all. The search stops when the thread is interrupted.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @param limit The largest number of books returned.
+     * @return The books found, in the order of the result.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    public ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase, int limit) throws InterruptedException {
+        return search(field, query, ignoreCase, limit, books -> { });
+    }
+    
+    private ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase, int limit, Consumer<List<Book>> sink) 
+            throws InterruptedException {
+        long start = SEARCH.start();
+        readLock.lock();
+        try {
+            ArrayList<Book> found;
+            switch(field) {
+                case ISBN:
+                    if(Isbn.isComplete(query)) {
+                        found = isIndexed() ? isbnIndex.get(query) : 
+                                scan(null, QueryEngine.isbnEquals(query), sink,
+                                        limit);
+                        break;
+                    }
+                    return scan(QueryCache.ISBN, query, false, null,
+                            QueryEngine.isbnContains(query), sink, limit);
+                case TITLE:
+                    return scan(QueryCache.TITLE, query, ignoreCase, 
+                            isIndexed() ? titleIndex.candidates(query) : null,
+                            QueryEngine.titleContains(query, ignoreCase), sink,
+                            limit);
+                default:
+                    // The index visits all authors for a short query, a scan
+                    // can stop at the limit
+                    if(!isIndexed() || authorIndex.candidateBooks(query) < 0) {
+                        return scan(QueryCache.AUTHOR, query, ignoreCase, null,
+                                QueryEngine.authorContains(query, ignoreCase), 
+                                sink, limit);
+                    }
+                    found = getBooksByAuthor(query, ignoreCase);
+                    break;
+            }
+            // The books of an index are passed on, scans passed theirs
+            if(isIndexed()) {
+                found = first(found, limit);
+                if(!found.isEmpty()) {
+                    sink.accept(found);
+                }
+            }
+            return found;
+        }
+        finally {
+            readLock.unlock();
+            SEARCH.stop(start);
+        }
+    }
+    
+    /**
+     * Change the number of searches whose results are cached. A cached 
+     * result is returned, as a new list, while the collection and the
+     * names of the authors found are not changed. The least recently used
+     * results are dropped first, and results of more than 262144 books are
+     * not cached. By default 256 results are cached.
+     * @param size The number of results cached, 0 to disable the cache.
+     */
+    public void setQueryCacheSize(int size) {
+        queryCache.setMaxResults(size);
+    }
+    
+    /**
+     * Return the number of searches whose results are cached.
+     * @return The size of the cache.
+     */
+    public int getQueryCacheSize() {
+        return queryCache.getMaxResults();
+    }
+    
+    /**
+     * Return the number of searches answered from the cache.
+     * @return The number of cache hits.
+     */
+    public long getQueryCacheHits() {
+        return queryCache.getHits();
+    }
+    
+    /**
+     * Return the number of searches not found in the cache.
+     * @return The number of cache misses.
+     */
+    public long getQueryCacheMisses() {
+        return queryCache.getMisses();
+    }
+    
+    /**
+     * Remove a specified book object from the ArrayList
+     * Determine whether the book is deleted successfully or not.
+     * @param deleteBook The book is to be deleted.
+     * @return true if the book is removed, false otherwise.
+     */
+    public boolean removeBook(Book deleteBook) {
+        long start = REMOVE_BOOK.start();
+        writeLock.lock();
+        try {
+            materialize();
+            int index = books.indexOf(deleteBook);
+            if(index >= 0) {
+                removeBook(index);
+                return true;
+            }
+            return false;
+        }
+        finally {
+            writeLock.unlock();
+            REMOVE_BOOK.stop(start);
+        }
+    }
+    
+    /**
+     * Remove a book object specified by title from the ArrayList.
+     * Determine whether the book is deleted or not.
+     * @param title The title of the book to be removed.
+     * @return true if the book is removed, false otherwise.
+     */
+    public boolean removeBookByTitle(String title) {
+        long start = REMOVE_BOOK_BY_TITLE.start();
+        writeLock.lock();
+        try {
+            materialize();
+            for(int i = 0; i < books.size(); i++) {
+                if(books.get(i).getTitle().equalsIgnoreCase(title)) {
+                    removeBook(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally {
+            writeLock.unlock();
+            REMOVE_BOOK_BY_TITLE.stop(start);
+        }
+    }
+    
+    /**
+     * Sort the ArrayList books by a sort method from the Collections class.
+     */
+    public void sortBooks() {
+        long start = SORT_BOOKS.start();
+        writeLock.lock();
+        try {
+            materialize();
+            Collections.sort(books);
+            positions = null;
+            changed();
+            fireReset();
+            if(journal != null) {
+                try {
+                    journal.sort();
+                }
+                catch(IOException ex) {
+                    journalFailed(ex);
+                }
+            }
+        }
+        finally {
+            writeLock.unlock();
+            SORT_BOOKS.stop(start);
+        }
+    }
+    
+    /**
+     * Add a listener to be notified about the changes of the collection.
+     * @param listener The listener to be added.
+     */
+    public void addCollectionListener(CollectionListener listener) {
+        writeLock.lock();
+        try {
+            listeners.add(listener);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Remove a listener added by addCollectionListener.
+     * @param listener The listener to be removed.
+     */
+    public void removeCollectionListener(CollectionListener listener) {
+        writeLock.lock();
+        try {
+            listeners.remove(listener);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Return a read only list of the books ordered by a key. The order is
+     * kept in an index that is created the first time a key is used and
+     * then kept up to date, so the list follows later changes of the
+     * collection without being sorted again. In read mode the index holds
+     * all books of the file in memory. Books with the same key are in the
+     * order they were added.
+     * @param key The order of the books.
+     * @return The books in the order of the key.
+     */
+    public List<Book> getBooks(SortKey key) {
+        writeLock.lock();
+        try {
+            return sortedIndex(key).asList();
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Add a listener to be notified about the changes of the books ordered
+     * by a key, at their positions in getBooks(key).
+     * @param key The order of the books.
+     * @param listener The listener to be added.
+     */
+    public void addCollectionListener(SortKey key, 
+            CollectionListener listener) {
+        writeLock.lock();
+        try {
+            sortedIndex(key).addListener(listener);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Remove a listener added by addCollectionListener(key, listener).
+     * @param key The order of the books.
+     * @param listener The listener to be removed.
+     */
+    public void removeCollectionListener(SortKey key, 
+            CollectionListener listener) {
+        writeLock.lock();
+        try {
+            sortedIndex(key).removeListener(listener);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Recover the unsaved changes of a library file and record all further
+     * changes in its journal. The collection must hold the books loaded
+     * from the file, they are replaced by the compacted copy of the journal
+     * if there is one. Changes in a journal that belongs to another version 
+     * of the file are discarded.
+     * @param filename The library file the collection was loaded from.
+     * @return The number of changes recovered from the journal.
+     * @throws IOException The exception might occur.
+     */
+    public int openJournal(File filename) throws IOException {
+        writeLock.lock();
+        try {
+            closeJournal();
+            Journal opened = Journal.open(filename);
+            try {
+                if(opened.getBase() != null) {
+                    loadBase(opened.getBase());
+                }
+                int recovered = opened.replay(this);
+                journal = opened;
+                return recovered;
+            }
+            catch(IOException | RuntimeException ex) {
+                opened.delete();
+                throw ex;
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Load the compacted copy of the collection a journal applies to.
+     * @param base The copy, in the binary library format.
+     * @throws IOException The exception might occur.
+     */
+    private void loadBase(File base) throws IOException {
+        try {
+            deSerializeFromFile(base);
+        }
+        catch(ClassNotFoundException ex) {
+            throw new IOException("Not a library file: " + base, ex);
+        }
+    }
+    
+    /**
+     * Save the collection to the file of its journal and empty the journal.
+     * Nothing is done if the journal holds no changes.
+     * @throws IOException The exception might occur.
+     */
+    public void compact() throws IOException {
+        writeLock.lock();
+        try {
+            if(journal != null && !journal.isEmpty()) {
+                long mark = journal.mark();
+                serializeToFile(journal.getSnapshot());
+                journal.rebase(mark);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Return the state of the journal, to be passed to journalSaved when the
+     * snapshot taken at the same time has been saved.
+     * @return The mark of the journal, or -1 if there is no journal.
+     */
+    public long journalMark() {
+        readLock.lock();
+        try {
+            return journal == null ? -1 : journal.mark();
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Remove the changes from the journal that are in a saved snapshot.
+     * Nothing is done if the snapshot was saved to another file.
+     * @param filename The file the snapshot was saved to.
+     * @param mark The mark of the journal when the snapshot was taken.
+     * @throws IOException The exception might occur.
+     */
+    public void journalSaved(File filename, long mark) throws IOException {
+        writeLock.lock();
+        try {
+            if(journal != null && mark >= 0 && filename.exists() &&
+                    Files.isSameFile(filename.toPath(), 
+                            journal.getSnapshot().toPath())) {
+                journal.rebase(mark);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Stop recording changes and close the journal. A journal holding 
+     * changes that have not been saved is kept, so they are recovered when
+     * the library file is opened again, an empty journal is deleted.
+     * @throws IOException The exception might occur.
+     */
+    public void closeJournal() throws IOException {
+        writeLock.lock();
+        try {
+            if(journal != null) {
+                Journal closed = journal;
+                journal = null;
+                if(closed.isEmpty()) {
+                    closed.delete();
+                }
+                else {
+                    closed.close();
+                }
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Stop recording changes and delete the journal, when the user 
+     * discards the changes that have not been saved.
+     * @throws IOException The exception might occur.
+     */
+    public void discardJournal() throws IOException {
+        writeLock.lock();
+        try {
+            if(journal != null) {
+                Journal discarded = journal;
+                journal = null;
+                discarded.delete();
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Remove the book at a position from the list and the indexes.
+     * @param index The position of the book.
+     */
+    private void removeBook(int index) {
+        Book removed = books.remove(index);
+        positions = null;
+        changed();
+        if(!columnar) {
+            unlink(removed);
+        }
+        for(SortedIndex sorted: sortedIndexes.values()) {
+            sorted.remove(removed);
+        }
+        for(CollectionListener listener: listeners) {
+            listener.bookRemoved(index, removed);
+        }
+        if(journal != null) {
+            try {
+                journal.remove(index);
+            }
+            catch(IOException ex) {
+                journalFailed(ex);
+            }
+        }
+    }
+    
+    /**
+     * Record a change of a book in the journal and notify the listeners.
+     * @param event The change of the book.
+     */
+    private void bookChanged(PropertyChangeEvent event) {
+        changed();
+        for(SortedIndex sorted: sortedIndexes.values()) {
+            sorted.changed((Book) event.getSource(), event.getPropertyName(),
+                    event.getOldValue());
+        }
+        if(journal == null && listeners.isEmpty()) {
+            return;
+        }
+        int index = positionOf((Book) event.getSource());
+        if(journal != null) {
+            recordChange(event, index);
+        }
+        for(CollectionListener listener: listeners) {
+            listener.bookUpdated(index);
+        }
+    }
+    
+    /**
+     * Index the books of a renamed author again, record the rename in the
+     * journal and notify the listeners. A collection in read mode is
+     * loaded into memory first, as when one of its books is changed.
+     * @param author The renamed author.
+     * @param oldName The name before it was changed.
+     */
+    private void authorRenamed(Author author, String oldName) {
+        if(mapped != null) {
+            // The books are decoded with the new name
+            materialize();
+        }
+        else if(columnar) {
+            ((ColumnarBookList) books).renamed(author, oldName);
+        }
+        else {
+            authorIndex.renamed(author, oldName);
+        }
+        changed();
+        for(SortedIndex sorted: sortedIndexes.values()) {
+            sorted.renamed(author);
+        }
+        if(journal != null) {
+            recordRename(author);
+        }
+        fireReset();
+    }
+    
+    /**
+     * Record the rename of an author in the journal, referring to the
+     * first book of the author.
+     * @param author The renamed author.
+     */
+    private void recordRename(Author author) {
+        for(Book book: columnar ? books : authorIndex.booksOf(author)) {
+            int slot = book.authorList().indexOf(author);
+            if(slot >= 0) {
+                try {
+                    journal.rename(positionOf(book), slot, author.getName());
+                    compactIfLarge();
+                }
+                catch(IOException ex) {
+                    journalFailed(ex);
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Return the position of a changed or found book. The positions of the
+     * books in memory are mapped when they are first needed, so later books
+     * are found at once until books are removed or moved. Books stored in
+     * columns are found among the few books in use.
+     * @param book The book.
+     * @return The first position of the book, -1 if it is not in the
+     * collection.
+     */
+    private int positionOf(Book book) {
+        if(columnar) {
+            return books.indexOf(book);
+        }
+        IdentityHashMap<Book, Integer> map = positions;
+        if(map == null) {
+            // Readers may map the positions at the same time, each map is
+            // complete before it is published
+            map = new IdentityHashMap<>(books.size());
+            for(int i = 0; i < books.size(); i++) {
+                map.putIfAbsent(books.get(i), i);
+            }
+            positions = map;
+        }
+        Integer position = map.get(book);
+        return position == null ? -1 : position;
+    }
+    
+    /**
+     * Sort the books found in an index in the order of the collection, as
+     * a search comparing all books returns them. Only called for indexed
+     * collections, with the read lock held.
+     * @param found The books found.
+     * @return The books found, sorted.
+     */
+    private ArrayList<Book> inOrder(ArrayList<Book> found) {
+        if(found.size() > 1) {
+            found.sort(Comparator.comparingInt(this::positionOf));
+        }
+        return found;
+    }
+    
+    /**
+     * Return the index of the books in an order, created when it is first
+     * used.
+     * @param key The order of the index.
+     * @return The index.
+     */
+    private SortedIndex sortedIndex(SortKey key) {
+        SortedIndex index = sortedIndexes.get(key);
+        if(index == null) {
+            index = new SortedIndex(key, view());
+            sortedIndexes.put(key, index);
+        }
+        return index;
+    }
+    
+    /**
+     * Sort the existing indexes again after all books were replaced.
+     */
+    private void rebuildSortedIndexes() {
+        for(SortedIndex index: sortedIndexes.values()) {
+            index.rebuild(view());
+        }
+    }
+    
+    /**
+     * Notify the listeners that any book may have changed.
+     */
+    private void fireReset() {
+        for(CollectionListener listener: listeners) {
+            listener.booksReset();
+        }
+    }
+    
+    /**
+     * Record a change of a book in the journal.
+     * @param event The change of the book.
+     * @param index The position of the book.
+     */
+    private void recordChange(PropertyChangeEvent event, int index) {
+        Object value = event.getNewValue();
+        byte type;
+        switch(event.getPropertyName()) {
+            case "isbn":
+                type = Journal.ISBN;
+                break;
+            case "title":
+                type = Journal.TITLE;
+                break;
+            case "edition":
+                type = Journal.EDITION;
+                break;
+            case "price":
+                type = Journal.PRICE;
+                break;
+            case "authors":
+                type = Journal.AUTHOR;
+                value = ((Author) value).getName();
+                break;
+            default:
+                return;
+        }
+        try {
+            journal.set(index, type, value);
+            compactIfLarge();
+        }
+        catch(IOException ex) {
+            journalFailed(ex);
+        }
+    }
+    
+    /**
+     * Compact the journal in the background when replaying it would cost
+     * more than loading the library file, see Compaction. The caller holds
+     * the write lock.
+     * @throws IOException The exception might occur.
+     */
+    private void compactIfLarge() throws IOException {
+        if(!compacting && journal.size() > Math.max(COMPACT_SIZE, 
+                journal.getSnapshot().length())) {
+            compacting = true;
+            COMPACTOR.execute(new Compaction(journal));
+        }
+    }
+    
+    /**
+     * Stop recording changes after the journal could not be written.
+     * The journal is kept, the changes written so far can be recovered.
+     * @param ex The exception that occurred.
+     */
+    private void journalFailed(IOException ex) {
+        System.err.println("Journal disabled: " + ex.getMessage());
+        try {
+            journal.close();
+        }
+        catch(IOException closeFailed) {
+            ex.addSuppressed(closeFailed);
+        }
+        journal = null;
+    }
+    
+    /**
+     * Determine whether the ISBN, title and author indexes are kept. There
+     * are no indexes in read mode and for books stored in columns, since 
+     * they would hold every book as an object.
+     * @return true if the indexes can be used.
+     */
+    private boolean isIndexed() {
+        return mapped == null && !columnar;
+    }
+    
+    /**
+     * Return the number of changes of the collection so far, so that the
+     * results of a search can be reused while it stays the same.
+     * @return The version of the collection.
+     */
+    long version() {
+        readLock.lock();
+        try {
+            return version;
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Return about how many books a search compares, so that a 
+     * SearchSession can tell whether comparing the books it found before
+     * costs less. Complete ISBN numbers are looked up in the index, which
+     * costs nothing in comparison, other ISBN text compares all books.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @return The number of books compared.
+     */
+    int searchCost(SearchField field, String query) {
+        readLock.lock();
+        try {
+            if(!isIndexed()) {
+                return view().size();
+            }
+            switch(field) {
+                case ISBN:
+                    return Isbn.isComplete(query) ? 0 : books.size();
+                case TITLE:
+                    List<Book> candidates = titleIndex.candidates(query);
+                    return candidates != null ? candidates.size() : books.size();
+                default:
+                    int count = authorIndex.candidateBooks(query);
+                    return count >= 0 ? count : books.size();
+            }
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * Count a change of the collection and drop the cached search results.
+     * Must be called with the write lock held.
+     */
+    private void changed() {
+        version++;
+        queryCache.clear();
+    }
+    
+    /**
+     * Return the cached result of a search, or search and cache the result.
+     * Must be called with the read lock held, so that the collection does
+     * not change between the search and caching its result.
+     * @param kind The kind of search, see QueryCache.
+     * @param query The text searched for.
+     * @param ignoreCase Whether case and accents are ignored.
+     * @param search The search, run if the result is not cached.
+     * @return The books found.
+     */
+    private ArrayList<Book> cached(int kind, String query, boolean ignoreCase,
+            Supplier<ArrayList<Book>> search) {
+        ArrayList<Book> found = queryCache.get(kind, query, ignoreCase);
+        if(found == null) {
+            found = search.get();
+            queryCache.put(kind, query, ignoreCase, found);
+        }
+        return found;
+    }
+    
+    /**
+     * Return the list holding the books, the mapped file in read mode.
+     * @return The books in the collection.
+     */
+    private List<Book> view() {
+        return mapped != null ? mapped : books;
+    }
+    
+    /**
+     * Return the books matching a condition, in the order of the 
+     * collection.
+     * @param condition The condition the books found fulfil.
+     * @return The books found.
+     */
+    private ArrayList<Book> scan(Predicate<? super Book> condition) {
+        return filter(condition, 0, view().size());
+    }
+    
+    /**
+     * Return the books at a range of positions matching a condition, in 
+     * order. Books in a mapped file or stored in columns are compared 
+     * without handing out the books that do not match, see 
+     * MappedBookList.filter and ColumnarBookList.filter.
+     * @param condition The condition the books found fulfil.
+     * @param from The first position compared.
+     * @param to The position after the last position compared.
+     * @return The books found.
+     */
+    private ArrayList<Book> filter(Predicate<? super Book> condition, 
+            int from, int to) {
+        if(mapped != null) {
+            return mapped.filter(condition, from, to);
+        }
+        if(columnar) {
+            return ((ColumnarBookList) books).filter(condition, from, to);
+        }
+        return QueryEngine.filter(books.subList(from, to), condition);
+    }
+    
+    /**
+     * Return the cached result of a search, passed to a sink at once, or 
+     * compare the books and cache the books found.
+     * @param kind The kind of search, see QueryCache.
+     * @param query The text searched.
+     * @param ignoreCase Whether case and accents are ignored.
+     * @param candidates The books to be compared, null for all books.
+     * @param condition The condition the books found fulfil.
+     * @param sink The consumer of the books found.
+     * @param limit The largest number of books found.
+     * @return The books found.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    private ArrayList<Book> scan(int kind, String query, boolean ignoreCase,
+            List<Book> candidates, Predicate<? super Book> condition,
+            Consumer<List<Book>> sink, int limit) throws InterruptedException {
+        ArrayList<Book> found = queryCache.get(kind, query, ignoreCase);
+        if(found != null) {
+            found = first(found, limit);
+            if(!found.isEmpty()) {
+                sink.accept(found);
+            }
+            return found;
+        }
+        found = scan(candidates, condition, sink, limit);
+        // A search stopped at the limit may have missed books
+        if(found.size() < limit) {
+            queryCache.put(kind, query, ignoreCase, found);
+        }
+        return found;
+    }
+    
+    /**
+     * Return the first books of a result, the result itself if it is not
+     * longer than the limit.
+     * @param found The books found.
+     * @param limit The largest number of books.
+     * @return The first books.
+     */
+    private static ArrayList<Book> first(ArrayList<Book> found, int limit) {
+        return found.size() <= limit ? found : 
+                new ArrayList<>(found.subList(0, limit));
+    }
+    
+    /**
+     * Return the books matching a condition, comparing the books in chunks
+     * and passing the books found in a chunk to a sink before the next
+     * chunk is compared. Candidates from an index are not in the order of
+     * the collection, the books found among them are sorted and passed at
+     * the end. Comparing all books stops once the limit is reached.
+     * @param candidates The books to be compared, null for all books.
+     * @param condition The condition the books found fulfil.
+     * @param sink The consumer of the books found.
+     * @param limit The largest number of books found.
+     * @return The books found.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    private ArrayList<Book> scan(List<Book> candidates, 
+            Predicate<? super Book> condition, Consumer<List<Book>> sink,
+            int limit) throws InterruptedException {
+        List<Book> compared = candidates != null ? candidates : view();
+        ArrayList<Book> found = new ArrayList<>();
+        int chunk = SCAN_CHUNK;
+        
+        for(int i = 0; i < compared.size() && 
+                (candidates != null || found.size() < limit); ) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException("Search canceled");
+            }
+            int end = (int) Math.min(compared.size(), (long) i + chunk);
+            ArrayList<Book> part = candidates == null ? 
+                    filter(condition, i, end) : 
+                    QueryEngine.filter(compared.subList(i, end), condition);
+            if(candidates == null) {
+                part = first(part, limit - found.size());
+            }
+            found.addAll(part);
+            if(candidates == null && !part.isEmpty()) {
+                sink.accept(part);
+            }
+            chunk = Math.min(chunk * 2, MAX_SCAN_CHUNK);
+            i = end;
+        }
+        if(candidates != null) {
+            found = first(inOrder(found), limit);
+            if(!found.isEmpty()) {
+                sink.accept(found);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Leave read mode by loading all books of the mapped file into memory.
+     * Books already decoded are kept, so references to them stay valid.
+     * The file is unmapped, so that it can be replaced afterwards.
+     */
+    private void materialize() {
+        if(mapped == null) {
+            return;
+        }
+        MappedBookList list = mapped;
+        ArrayList<Book> loaded = new ArrayList<>(list);
+        replaceBooks(loaded);
+        list.close(loaded);
+    }
+    
+    /**
+     * Replace all books of the collection and rebuild the indexes.
+     * @param loaded The new books.
+     */
+    private void replaceBooks(List<Book> loaded) {
+        if(mapped != null) {
+            mapped.dispose();
+        }
+        if(books instanceof ColumnarBookList) {
+            ((ColumnarBookList) books).dispose();
+        }
+        else {
+            for(Book book: books) {
+                book.removePropertyChangeListener(bookListener);
+            }
+        }
+        mapped = null;
+        positions = null;
+        changed();
+        isbnIndex.clear();
+        titleIndex.clear();
+        authorIndex.clear();
+        if(loaded instanceof ColumnarBookList) {
+            books = loaded;
+        }
+        else if(columnar) {
+            books = new ColumnarBookList(loaded, bookListener, authorListener, 
+                    offHeap);
+        }
+        else {
+            books = loaded;
+            for(Book book: books) {
+                link(book);
+            }
+        }
+        readOnly = Collections.unmodifiableList(books);
+    }
+    
+    /**
+     * Add a book to the indexes and listen to changes of it.
+     * @param book The book added to the collection.
+     */
+    private void link(Book book) {
+        isbnIndex.add(book);
+        titleIndex.add(book, book.getTitle());
+        authorIndex.add(book);
+        book.addPropertyChangeListener(bookListener);
+    }
+    
+    /**
+     * Remove a book from the indexes and stop listening to changes of it.
+     * @param book The book removed from the collection.
+     */
+    private void unlink(Book book) {
+        book.removePropertyChangeListener(bookListener);
+        isbnIndex.remove(book);
+        titleIndex.remove(book, book.getTitle());
+        authorIndex.remove(book);
+    }
+    
+    /**
+     * Print all of the books information.
+     * @return The information of books.
+     */
+    @Override
+    public String toString() {
+        readLock.lock();
+        try {
+            StringBuilder bookList = new StringBuilder();
+        
+            for (Book book : view()) {
+                bookList.append(book);
+            }
+        
+            return bookList.toString();
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
+    
+    /**
+     * A Compaction object copies the collection next to its journal and
+     * removes the copied changes from the journal. The library file is not
+     * changed, so the changes can still be discarded. The books are written
+     * to a temporary file without holding the lock, which is only used if
+     * the journal is still open and the library file was not saved since.
+     */
+    private class Compaction implements Runnable {
+        private final Journal target;
+        
+        Compaction(Journal target) {
+            this.target = target;
+        }
+        
+        @Override
+        public void run() {
+            File file = target.getSnapshot();
+            File temp = null;
+            try {
+                long mark;
+                List<Book> saved;
+                readLock.lock();
+                try {
+                    if(journal != target) {
+                        return;
+                    }
+                    mark = target.mark();
+                    saved = snapshot();
+                }
+                finally {
+                    readLock.unlock();
+                }
+                
+                temp = writeTemp(saved, file, null);
+                writeLock.lock();
+                try {
+                    if(journal == target) {
+                        try {
+                            target.compact(mark, temp);
+                        }
+                        catch(IOException ex) {
+                            journalFailed(ex);
+                        }
+                    }
+                }
+                finally {
+                    writeLock.unlock();
+                }
+            }
+            catch(IOException ex) {
+                System.err.println("Journal not compacted: " + ex.getMessage());
+            }
+            finally {
+                writeLock.lock();
+                try {
+                    compacting = false;
+                    if(temp != null) {
+                        temp.delete();
+                    }
+                }
+                finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+    }
+    
+    /**
+     * A BookChangeHandler object keeps the indexes up to date when a book
+     * in the collection is changed
+     */
+    private class BookChangeHandler implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            Book book = (Book) event.getSource();
+            
+            writeLock.lock();
+            try {
+                if(columnar) {
+                    // Books stored in columns are not indexed
+                }
+                else if("isbn".equals(event.getPropertyName())) {
+                    isbnIndex.remove(book, (String) event.getOldValue());
+                    isbnIndex.add(book);
+                }
+                else if("title".equals(event.getPropertyName())) {
+                    titleIndex.remove(book, (String) event.getOldValue());
+                    titleIndex.add(book, book.getTitle());
+                }
+                else if("authors".equals(event.getPropertyName())) {
+                    List<Author> authors = book.authorList();
+                    Author added = authorIndex.share(
+                            (Author) event.getNewValue());
+                    book.shareAuthor(authors.size() - 1, added);
+                    // A book listed twice under the same author is indexed once
+                    if(authors.indexOf(added) == authors.lastIndexOf(added)) {
+                        authorIndex.add(book, added);
+                    }
+                }
+                bookChanged(event);
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * An AuthorChangeHandler object indexes the books of an author again
+     * when the author is renamed
+     */
+    private class AuthorChangeHandler implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            writeLock.lock();
+            try {
+                authorRenamed((Author) event.getSource(), 
+                        (String) event.getOldValue());
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * A MappedChangeHandler object loads the collection into memory when a
+     * book decoded from the mapped file is changed or one of its authors
+     * is renamed
+     */
+    private class MappedChangeHandler implements PropertyChangeListener {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            writeLock.lock();
+            try {
+                if(event.getSource() instanceof Author) {
+                    authorRenamed((Author) event.getSource(), 
+                            (String) event.getOldValue());
+                }
+                else {
+                    materialize();
+                    bookChanged(event);
+                }
+            }
+            finally {
+                writeLock.unlock();
+            }
         }
-        
-        return bookList.toString();
     }
 }
@@ -0,0 +1,744 @@
+package Model;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * A ColumnarBookList stores books in columns instead of objects. Editions
+ * and prices are kept in a table of fixed size rows, so they can be scanned
+ * without touching the other data. The ISBN number, the title and the authors of a
+ * book are encoded as one record in a shared byte array, as in the library
+ * file format, with the authors referring to a table of authors. The books
+ * share one author object per name, names differing only in case included.
+ * <p>
+ * A Book object is only created when a book is asked for. It is cached as
+ * long as it is referenced elsewhere, and changes made to it are written
+ * back to the columns. A changed record is appended to the byte array, the
+ * array is compacted when more than half of it is no longer used.
+ * <p>
+ * The columns can be kept in direct buffers outside the Java heap, then
+ * only the books in use and the table of authors are on the heap, and the
+ * garbage collector never has to look at the other books. Direct memory is
+ * limited by -XX:MaxDirectMemorySize, which defaults to the heap limit.
+ * <p>
+ * The columns are guarded by a read-write lock and the books handed out
+ * by the monitor of the list. Books are decoded and the columns scanned
+ * under the read lock only, so several threads can search at once.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class ColumnarBookList extends AbstractList<Book> implements RandomAccess {
+
+    // Unused bytes are only reclaimed once there are more than this
+    private static final int COMPACT_SIZE = 1 << 16;
+    // A row holds the start of the record, the edition and the price
+    private static final int ROW_SIZE = 16;
+    private static final int EDITION = 4;
+    private static final int PRICE = 8;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final boolean direct;
+    private final ReadWriteLock columns;
+    private volatile int size;
+    private ByteBuffer rows;
+    private ByteBuffer text;
+    private long garbage;
+
+    private final ArrayList<Author> authors;
+    // The positions of the authors by normalized name
+    private final HashMap<String, Integer> authorIds;
+    private final PropertyChangeListener listener;
+    private final PropertyChangeListener authorListener;
+    private final HashMap<Integer, BookReference> decoded;
+    private final ReferenceQueue<Book> released;
+
+    /**
+     * Constructor, stores books in columns.
+     * @param books The books to be stored.
+     * @param listener The listener added to every book handed out.
+     * @param authorListener The listener added to every author in the
+     * table, which calls renamed when the author is renamed.
+     * @param direct true to keep the columns outside the Java heap.
+     */
+    ColumnarBookList(Collection<Book> books, PropertyChangeListener listener,
+            PropertyChangeListener authorListener, boolean direct) {
+        this.direct = direct;
+        this.columns = new ReentrantReadWriteLock();
+        this.rows = allocate(Math.max(16, books.size()) * ROW_SIZE);
+        this.text = allocate(Math.max(1 << 12, books.size() * 48));
+        this.authors = new ArrayList<>();
+        this.authorIds = new HashMap<>();
+        this.listener = listener;
+        this.authorListener = authorListener;
+        this.decoded = new HashMap<>();
+        this.released = new ReferenceQueue<>();
+        for(Book book: books) {
+            append(book);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the book at the specified position, creating it from the
+     * columns if it is not in use already. Books are decoded outside the
+     * monitor, as by MappedBookList.
+     * @param index The position of the book.
+     * @return The book.
+     */
+    @Override
+    public Book get(int index) {
+        checkIndex(index);
+        Book book = cached(index);
+        if(book != null) {
+            return book;
+        }
+
+        Book decodedBook = copy(index);
+        synchronized(this) {
+            // Another thread may have handed out the same book meanwhile
+            book = cached(index);
+            if(book == null) {
+                book = decodedBook;
+                watch(book, index);
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Add a book at the end. The book object itself is handed out for the
+     * position while it is referenced.
+     * @param book The book to be added.
+     * @return true
+     */
+    @Override
+    public synchronized boolean add(Book book) {
+        purge();
+        columns.writeLock().lock();
+        try {
+            append(book);
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+        watch(book, size - 1);
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Replace the book at a position.
+     * @param index The position of the book.
+     * @param book The new book.
+     * @return The book that was replaced.
+     */
+    @Override
+    public synchronized Book set(int index, Book book) {
+        Book old = get(index);
+        forget(index);
+        columns.writeLock().lock();
+        try {
+            store(index, book, true);
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+        watch(book, index);
+        return old;
+    }
+
+    /**
+     * Remove the book at a position, the books after it move up.
+     * @param index The position of the book.
+     * @return The removed book.
+     */
+    @Override
+    public synchronized Book remove(int index) {
+        Book removed = get(index);
+        forget(index);
+        columns.writeLock().lock();
+        try {
+            garbage += recordLength(text, record(index));
+
+            // The rows after the removed row are copied one row up
+            ByteBuffer moved = rows.duplicate();
+            moved.limit(size * ROW_SIZE);
+            moved.position((index + 1) * ROW_SIZE);
+            ByteBuffer target = rows.duplicate();
+            target.position(index * ROW_SIZE);
+            target.put(moved);
+            size--;
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+
+        // The books after the removed book are cached under new positions
+        HashMap<Integer, BookReference> shifted = new HashMap<>();
+        for(BookReference ref: decoded.values()) {
+            if(ref.index > index) {
+                ref.index--;
+            }
+            shifted.put(ref.index, ref);
+        }
+        decoded.clear();
+        decoded.putAll(shifted);
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Return the position of a book handed out by the list. Only books in
+     * use can be in the list, so only the cached books are searched.
+     * @param o The book to be found.
+     * @return The position, or -1 if the book is not in the list.
+     */
+    @Override
+    public synchronized int indexOf(Object o) {
+        int index = -1;
+        for(BookReference ref: decoded.values()) {
+            if(ref.get() == o && (index < 0 || ref.index < index)) {
+                index = ref.index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sort the books. All books are created once to be compared, and the
+     * columns are rebuilt in the new order without unused bytes.
+     * @param order The order, or null for the natural order of the books.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized void sort(Comparator<? super Book> order) {
+        Book[] all = new Book[size];
+        for(int i = 0; i < size; i++) {
+            all[i] = get(i);
+        }
+        Arrays.sort(all, (Comparator<Object>) order);
+
+        dispose();
+        columns.writeLock().lock();
+        try {
+            text = allocate(text.capacity());
+            garbage = 0;
+            size = 0;
+            for(Book book: all) {
+                append(book);
+            }
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+        for(int i = 0; i < all.length; i++) {
+            watch(all[i], i);
+        }
+        modCount++;
+    }
+
+    /**
+     * Return the books with a price in a range, comparing the prices
+     * without creating the other books.
+     * @param min The lowest price, inclusive.
+     * @param max The highest price, inclusive.
+     * @return The books found.
+     */
+    ArrayList<Book> findByPrice(double min, double max) {
+        int[] positions = new int[16];
+        int count = 0;
+        columns.readLock().lock();
+        try {
+            for(int i = 0; i < size; i++) {
+                double price = rows.getDouble(i * ROW_SIZE + PRICE);
+                if(price >= min && price <= max) {
+                    if(count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    positions[count++] = i;
+                }
+            }
+        }
+        finally {
+            columns.readLock().unlock();
+        }
+        return books(positions, count);
+    }
+
+    /**
+     * Return the books with an edition in a range, comparing the editions
+     * without creating the other books.
+     * @param min The lowest edition, inclusive.
+     * @param max The highest edition, inclusive.
+     * @return The books found.
+     */
+    ArrayList<Book> findByEdition(int min, int max) {
+        int[] positions = new int[16];
+        int count = 0;
+        columns.readLock().lock();
+        try {
+            for(int i = 0; i < size; i++) {
+                int edition = rows.getInt(i * ROW_SIZE + EDITION);
+                if(edition >= min && edition <= max) {
+                    if(count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    positions[count++] = i;
+                }
+            }
+        }
+        finally {
+            columns.readLock().unlock();
+        }
+        return books(positions, count);
+    }
+
+    /**
+     * Return the books at a range of positions matching a condition, in
+     * order. The condition is tested on copies of the books decoded from
+     * the columns, which are not handed out, so the books are compared by
+     * several threads at once and only the books found are handed out. The
+     * list must not be changed while it is searched, the copies do not
+     * follow the changes.
+     * @param condition The condition the books found fulfil.
+     * @param from The first position compared.
+     * @param to The position after the last position compared.
+     * @return The books found.
+     */
+    ArrayList<Book> filter(Predicate<? super Book> condition, int from, 
+            int to) {
+        ArrayList<Integer> found = QueryEngine.filter(
+                QueryEngine.positions(from, to), new CopyMatches(condition));
+        ArrayList<Book> books = new ArrayList<>(found.size());
+        for(int index: found) {
+            books.add(get(index));
+        }
+        return books;
+    }
+
+    /**
+     * Return a copy of the list that later changes do not affect. Only the
+     * columns are copied, into the same kind of buffers, and a book is
+     * decoded every time it is asked for and not kept, so saving or
+     * exporting the copy does not fill the heap with books.
+     * @return The copy.
+     */
+    List<Book> snapshot() {
+        columns.readLock().lock();
+        try {
+            return new Snapshot(copyOf(rows, size * ROW_SIZE), 
+                    copyOf(text, text.position()), 
+                    new ArrayList<>(authors), size);
+        }
+        finally {
+            columns.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hand out the book objects the list was created from, so that books
+     * already in use stay the books of the list.
+     * @param books The books the list was created from, in the same order.
+     */
+    synchronized void adopt(List<Book> books) {
+        for(int i = 0; i < size; i++) {
+            watch(books.get(i), i);
+        }
+    }
+
+    /**
+     * Append a book without handing it out, while the books are loaded.
+     * @param book The book to be stored.
+     */
+    synchronized void load(Book book) {
+        columns.writeLock().lock();
+        try {
+            append(book);
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+        modCount++;
+    }
+
+    /**
+     * Look up an author of the table under its new name. If another author
+     * already has the new name, both stay in use by their books.
+     * @param author The renamed author.
+     * @param oldName The name before it was changed.
+     */
+    void renamed(Author author, String oldName) {
+        columns.writeLock().lock();
+        try {
+            Integer id = authorIds.get(Author.key(oldName));
+            if(id != null && authors.get(id) == author) {
+                authorIds.remove(Author.key(oldName));
+                authorIds.putIfAbsent(author.getKey(), id);
+            }
+        }
+        finally {
+            columns.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop writing changes of the books handed out back to the list and
+     * listening to the authors, when the list is no longer used.
+     */
+    synchronized void dispose() {
+        for(BookReference ref: decoded.values()) {
+            Book book = ref.get();
+            if(book != null) {
+                book.removePropertyChangeListener(ref);
+                book.removePropertyChangeListener(listener);
+            }
+        }
+        decoded.clear();
+        for(Author author: authors) {
+            author.removePropertyChangeListener(authorListener);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index +
+                    ", Size: " + size);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) :
+                ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Copy the first bytes of a buffer to a new, larger buffer.
+     */
+    private ByteBuffer grow(ByteBuffer buffer, int length) {
+        if(buffer.capacity() == MAX_CAPACITY) {
+            throw new IllegalStateException("The books do not fit in 2 GB");
+        }
+        ByteBuffer used = buffer.duplicate();
+        used.position(0);
+        used.limit(length);
+        ByteBuffer larger = allocate((int) Math.min(MAX_CAPACITY, 
+                (long) buffer.capacity() * 2));
+        larger.put(used);
+        return larger;
+    }
+
+    /**
+     * Copy the first bytes of a buffer to a new buffer of their size.
+     */
+    private ByteBuffer copyOf(ByteBuffer buffer, int length) {
+        ByteBuffer used = buffer.duplicate();
+        used.position(0);
+        used.limit(length);
+        ByteBuffer copy = allocate(Math.max(1, length));
+        copy.put(used);
+        return copy;
+    }
+
+    private int record(int index) {
+        return rows.getInt(index * ROW_SIZE);
+    }
+
+    private void append(Book book) {
+        if((size + 1) * ROW_SIZE > rows.capacity()) {
+            rows = grow(rows, size * ROW_SIZE);
+        }
+        size++;
+        store(size - 1, book, false);
+    }
+
+    /**
+     * Write the values of a book to the columns at a position.
+     * @param index The position of the book.
+     * @param book The book.
+     * @param replace true if the position already holds a record, which
+     * is no longer used then.
+     */
+    private void store(int index, Book book, boolean replace) {
+        if(replace) {
+            garbage += recordLength(text, record(index));
+        }
+        rows.putInt(index * ROW_SIZE + EDITION, book.getEdition());
+        rows.putDouble(index * ROW_SIZE + PRICE, book.getPrice());
+
+        while(true) {
+            int start = text.position();
+            try {
+                LibraryFormat.putString(text, book.getIsbn());
+                LibraryFormat.putString(text, book.getTitle());
+                List<Author> bookAuthors = book.authorList();
+                LibraryFormat.putVarInt(text, bookAuthors.size());
+                for(int i = 0; i < bookAuthors.size(); i++) {
+                    int id = authorId(bookAuthors.get(i));
+                    book.shareAuthor(i, authors.get(id));
+                    LibraryFormat.putVarInt(text, id);
+                }
+                rows.putInt(index * ROW_SIZE, start);
+                break;
+            }
+            catch(BufferOverflowException ex) {
+                text = grow(text, start);
+            }
+        }
+        if(garbage > COMPACT_SIZE && garbage > text.position() / 2) {
+            compact();
+        }
+    }
+
+    private int authorId(Author author) {
+        Integer id = authorIds.get(author.getKey());
+        if(id == null) {
+            id = authors.size();
+            authors.add(author);
+            authorIds.put(author.getKey(), id);
+            author.addPropertyChangeListener(authorListener);
+        }
+        return id;
+    }
+
+    /**
+     * Return the books at positions, handing them out.
+     */
+    private ArrayList<Book> books(int[] positions, int count) {
+        ArrayList<Book> found = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            found.add(get(positions[i]));
+        }
+        return found;
+    }
+
+    /**
+     * Return the book handed out for a position, if it is still in use.
+     */
+    private synchronized Book cached(int index) {
+        purge();
+        BookReference ref = decoded.get(index);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Decode a book from the columns under the read lock, the book is not
+     * handed out.
+     */
+    private Book copy(int index) {
+        columns.readLock().lock();
+        try {
+            checkIndex(index);
+            return decode(index);
+        }
+        finally {
+            columns.readLock().unlock();
+        }
+    }
+
+    private Book decode(int index) {
+        return decode(rows, text, authors, index);
+    }
+
+    /**
+     * Decode the book at a position of columns.
+     */
+    private static Book decode(ByteBuffer rows, ByteBuffer text, 
+            List<Author> authors, int index) {
+        ByteBuffer in = text.duplicate();
+        in.position(rows.getInt(index * ROW_SIZE));
+        try {
+            String isbn = LibraryFormat.getString(in);
+            String title = LibraryFormat.getString(in);
+            int count = LibraryFormat.getVarInt(in);
+            ArrayList<Author> bookAuthors = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                bookAuthors.add(authors.get(LibraryFormat.getVarInt(in)));
+            }
+            return new Book(isbn, title, rows.getInt(index * ROW_SIZE + EDITION),
+                    rows.getDouble(index * ROW_SIZE + PRICE), bookAuthors);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Copy the records in use to a new buffer.
+     */
+    private void compact() {
+        ByteBuffer old = text;
+        text = allocate((int) Math.min(MAX_CAPACITY, Math.max(1 << 12,
+                (old.position() - garbage) * 2)));
+        for(int i = 0; i < size; i++) {
+            int start = record(i);
+            ByteBuffer record = old.duplicate();
+            record.position(start);
+            record.limit(start + recordLength(old, start));
+            rows.putInt(i * ROW_SIZE, text.position());
+            text.put(record);
+        }
+        garbage = 0;
+    }
+
+    /**
+     * Return the length of the record at a position of a byte array.
+     */
+    private static int recordLength(ByteBuffer buffer, int start) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(start);
+        try {
+            for(int i = 0; i < 2; i++) {
+                int length = LibraryFormat.getVarInt(in);
+                in.position(in.position() + length);
+            }
+            int count = LibraryFormat.getVarInt(in);
+            for(int i = 0; i < count; i++) {
+                LibraryFormat.getVarInt(in);
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return in.position() - start;
+    }
+
+    /**
+     * Hand out a book for a position and write its changes back.
+     */
+    private void watch(Book book, int index) {
+        BookReference ref = new BookReference(book, index, released);
+        decoded.put(index, ref);
+        book.addPropertyChangeListener(ref);
+        book.addPropertyChangeListener(listener);
+    }
+
+    /**
+     * Stop handing out the book cached for a position.
+     */
+    private void forget(int index) {
+        BookReference ref = decoded.remove(index);
+        Book book = ref == null ? null : ref.get();
+        if(book != null) {
+            book.removePropertyChangeListener(ref);
+            book.removePropertyChangeListener(listener);
+        }
+    }
+
+    /**
+     * Forget the books that are no longer referenced.
+     */
+    private void purge() {
+        Reference<? extends Book> ref;
+
+        while((ref = released.poll()) != null) {
+            BookReference book = (BookReference) ref;
+            if(decoded.get(book.index) == book) {
+                decoded.remove(book.index);
+            }
+        }
+    }
+
+    /**
+     * A BookReference remembers the position of a book handed out by the
+     * list and writes the changes of the book back to the columns
+     */
+    private class BookReference extends WeakReference<Book>
+            implements PropertyChangeListener {
+
+        private int index;
+
+        BookReference(Book book, int index, ReferenceQueue<Book> queue) {
+            super(book, queue);
+            this.index = index;
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+            synchronized(ColumnarBookList.this) {
+                if(decoded.get(index) == this) {
+                    columns.writeLock().lock();
+                    try {
+                        store(index, (Book) event.getSource(), true);
+                    }
+                    finally {
+                        columns.writeLock().unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A Snapshot object is a copy of the columns of the list, its books
+     * are decoded when they are asked for
+     */
+    private static class Snapshot extends AbstractList<Book> 
+            implements RandomAccess {
+        private final ByteBuffer rows;
+        private final ByteBuffer text;
+        private final List<Author> authors;
+        private final int size;
+
+        Snapshot(ByteBuffer rows, ByteBuffer text, List<Author> authors, 
+                int size) {
+            this.rows = rows;
+            this.text = text;
+            this.authors = authors;
+            this.size = size;
+        }
+
+        @Override
+        public Book get(int index) {
+            if(index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index +
+                        ", Size: " + size);
+            }
+            return decode(rows, text, authors, index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A CopyMatches object tests a condition on a copy of the book at a
+     * position
+     */
+    private class CopyMatches implements Predicate<Integer> {
+        private final Predicate<? super Book> condition;
+
+        CopyMatches(Predicate<? super Book> condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean test(Integer index) {
+            return condition.test(copy(index));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package Model;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DaemonThreadFactory creates numbered background threads with a name,
+ * for example "Library search 1", that do not keep the program running.
+ * It is used for the executors of the model, the JavaFX controller, the
+ * command line shell and the catalogue service.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count;
+
+    /**
+     * Constructor.
+     * @param name The name of the threads, followed by their number.
+     */
+    public DaemonThreadFactory(String name) {
+        this.name = name;
+        this.count = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,49 @@
+package Model;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * An ExportFormat is a text format books are written in by a
+ * CatalogExporter.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public enum ExportFormat {
+
+    /**
+     * Comma separated values with a header line and the columns isbn,
+     * title, edition, price and authors, the authors separated by
+     * semicolons, as read by CatalogImporter.
+     */
+    CSV,
+
+    /**
+     * JSON Lines, one JSON object per book with the fields isbn, title,
+     * edition, price and authors.
+     */
+    JSON_LINES,
+
+    /**
+     * Plain text, one line per book as written by Book.toString.
+     */
+    TEXT;
+
+    /**
+     * Return the format of a file, by its extension.
+     * @param file The file.
+     * @return CSV for .csv files, JSON_LINES for .jsonl files and TEXT for
+     * other files.
+     */
+    public static ExportFormat forFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if(name.endsWith(".csv")) {
+            return CSV;
+        }
+        if(name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSON_LINES;
+        }
+        return TEXT;
+    }
+}
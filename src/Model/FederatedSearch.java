@@ -0,0 +1,153 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * A FederatedSearch searches several collections at once. Every collection
+ * is searched by a task of its own, so a search takes about as long as the
+ * slowest collection. The books found are merged as the collections finish:
+ * books with the same ISBN number (see Isbn.canonical) are returned once,
+ * tagged with all libraries holding them.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class FederatedSearch {
+
+    private final ArrayList<CollectionOfBooks> libraries;
+    private final ArrayList<String> names;
+    private final Executor executor;
+
+    /**
+     * Constructor, the lists are copied so they may change while searching.
+     * @param libraries The collections to be searched.
+     * @param names The names of the collections, in the same order.
+     * @param executor The executor running the search of each collection.
+     */
+    public FederatedSearch(List<CollectionOfBooks> libraries, 
+            List<String> names, Executor executor) {
+        if(libraries.size() != names.size()) {
+            throw new IllegalArgumentException("One name per library needed");
+        }
+        this.libraries = new ArrayList<>(libraries);
+        this.names = new ArrayList<>(names);
+        this.executor = executor;
+    }
+
+    /**
+     * Search all collections, see CollectionOfBooks.search. The new hits
+     * are passed to the sink after each collection, on the calling thread,
+     * so they can be shown before the slower collections are searched.
+     * A hit already passed to the sink may still get more libraries.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @param sink The consumer of the new hits, may be null.
+     * @return All hits, in the order they were passed to the sink.
+     * @throws InterruptedException If the thread is interrupted, the
+     * searches still running are cancelled and stop comparing books.
+     */
+    public ArrayList<SearchHit> search(SearchField field, String query,
+            boolean ignoreCase, Consumer<List<SearchHit>> sink) 
+            throws InterruptedException {
+        CompletionService<Found> searches = 
+                new ExecutorCompletionService<>(executor);
+        ArrayList<Future<Found>> running = new ArrayList<>();
+        HashMap<String, SearchHit> byIsbn = new HashMap<>();
+        ArrayList<SearchHit> hits = new ArrayList<>();
+
+        try {
+            for(int i = 0; i < libraries.size(); i++) {
+                running.add(searches.submit(new LibrarySearch(i, field, query, 
+                        ignoreCase)));
+            }
+            for(int i = 0; i < libraries.size(); i++) {
+                Found found = searches.take().get();
+                String name = names.get(found.library);
+                ArrayList<SearchHit> added = new ArrayList<>();
+                // A library holding two copies of a book is only named once
+                HashSet<SearchHit> tagged = new HashSet<>();
+                
+                for(Book book: found.books) {
+                    String isbn = Isbn.canonical(book.getIsbn());
+                    SearchHit hit = byIsbn.get(isbn);
+                    if(hit == null) {
+                        hit = new SearchHit(book, name);
+                        byIsbn.put(isbn, hit);
+                        added.add(hit);
+                        tagged.add(hit);
+                    }
+                    else if(tagged.add(hit)) {
+                        hit.addLibrary(name);
+                    }
+                }
+                hits.addAll(added);
+                if(sink != null) {
+                    sink.accept(added);
+                }
+            }
+            return hits;
+        }
+        catch(ExecutionException ex) {
+            // The executor was shut down while a collection was searched
+            if(ex.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) ex.getCause();
+            }
+            throw new IllegalStateException("Search failed: " + 
+                    ex.getCause().getMessage(), ex.getCause());
+        }
+        finally {
+            for(Future<Found> search: running) {
+                search.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A LibrarySearch object searches one of the collections, it stops
+     * when its thread is interrupted
+     */
+    private class LibrarySearch implements Callable<Found> {
+        private final int library;
+        private final SearchField field;
+        private final String query;
+        private final boolean ignoreCase;
+
+        LibrarySearch(int library, SearchField field, String query, 
+                boolean ignoreCase) {
+            this.library = library;
+            this.field = field;
+            this.query = query;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public Found call() throws InterruptedException {
+            return new Found(library, libraries.get(library).search(field, 
+                    query, ignoreCase, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * A Found object holds the books found in one of the collections
+     */
+    private static class Found {
+        private final int library;
+        private final ArrayList<Book> books;
+
+        Found(int library, ArrayList<Book> books) {
+            this.library = library;
+            this.books = books;
+        }
+    }
+}
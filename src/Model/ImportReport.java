@@ -0,0 +1,117 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An ImportReport tells how many records of a catalogue feed were imported
+ * by a CatalogImporter and why the others were not.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class ImportReport {
+
+    // Only the first errors are kept, the others are only counted
+    private static final int MAX_ERRORS = 1000;
+
+    private long records;
+    private long imported;
+    private long duplicates;
+    private long invalid;
+    private long nanos;
+    private final ArrayList<String> errors;
+
+    ImportReport() {
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Return the number of records read.
+     * @return The number of records.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Return the number of books added to the library.
+     * @return The number of books.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Return the number of records skipped because a book with the same
+     * ISBN number was in the library or earlier in the feed.
+     * @return The number of duplicates.
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Return the number of records that are not valid books.
+     * @return The number of invalid records.
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Return the reasons the first records were skipped, with the line
+     * numbers of the records.
+     * @return The errors, at most 1000.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Return the time the import took.
+     * @return The time in seconds.
+     */
+    public double getSeconds() {
+        return nanos / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Imported %d of %d records " +
+                "(%d duplicates, %d invalid) in %.1f s", imported, records,
+                duplicates, invalid, getSeconds());
+    }
+
+    void imported(int count) {
+        imported += count;
+    }
+
+    void duplicate(long line, String isbn) {
+        records++;
+        duplicates++;
+        error(line, "Duplicate ISBN " + isbn);
+    }
+
+    void invalid(long line, String message) {
+        records++;
+        invalid++;
+        error(line, message);
+    }
+
+    void valid() {
+        records++;
+    }
+
+    void finished(long nanos) {
+        this.nanos = nanos;
+    }
+
+    private void error(long line, String message) {
+        if(errors.size() < MAX_ERRORS) {
+            errors.add("Line " + line + ": " + message);
+        }
+    }
+}
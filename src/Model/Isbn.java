@@ -0,0 +1,118 @@
+package Model;
+
+/**
+ * Isbn contains helper methods to normalize ISBN numbers, so that the same
+ * book can be found regardless of hyphens, spaces or ISBN-10/ISBN-13 form.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Isbn {
+
+    private Isbn() {
+    }
+
+    /**
+     * Remove hyphens and spaces from an ISBN number and upper case the
+     * check digit X. A number without separators is returned as it is,
+     * so searches comparing every number do not copy them.
+     * @param isbn The ISBN number to be normalized.
+     * @return The ISBN number with separators removed.
+     */
+    public static String normalize(String isbn) {
+        int start = 0;
+        while(start < isbn.length() && isNormalized(isbn.charAt(start))) {
+            start++;
+        }
+        if(start == isbn.length()) {
+            return isbn;
+        }
+        StringBuilder normalized = new StringBuilder(isbn.length());
+        normalized.append(isbn, 0, start);
+
+        for(int i = start; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if(c == '-' || Character.isWhitespace(c)) {
+                continue;
+            }
+            normalized.append(c == 'x' ? 'X' : c);
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isNormalized(char c) {
+        return c != '-' && c != 'x' && !Character.isWhitespace(c);
+    }
+
+    /**
+     * Return the canonical form of an ISBN number. A valid ISBN-10 is
+     * converted to its ISBN-13 form, so both forms give the same key.
+     * Other strings are only normalized.
+     * @param isbn The ISBN number.
+     * @return The canonical form of the ISBN number.
+     */
+    public static String canonical(String isbn) {
+        String normalized = normalize(isbn);
+
+        if(isValidIsbn10(normalized)) {
+            return toIsbn13(normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Determine whether the string is a complete ISBN-10 or ISBN-13 number.
+     * @param isbn The string to be checked.
+     * @return true if the string is a complete ISBN number, false otherwise.
+     */
+    public static boolean isComplete(String isbn) {
+        String normalized = normalize(isbn);
+        return isValidIsbn10(normalized) || isIsbn13(normalized);
+    }
+
+    private static boolean isValidIsbn10(String isbn) {
+        if(isbn.length() != 10) {
+            return false;
+        }
+        int sum = 0;
+        for(int i = 0; i < 10; i++) {
+            char c = isbn.charAt(i);
+            int digit;
+            if(c >= '0' && c <= '9') {
+                digit = c - '0';
+            }
+            else if(c == 'X' && i == 9) {
+                digit = 10;
+            }
+            else {
+                return false;
+            }
+            sum += (10 - i) * digit;
+        }
+        return sum % 11 == 0;
+    }
+
+    private static boolean isIsbn13(String isbn) {
+        if(isbn.length() != 13) {
+            return false;
+        }
+        for(int i = 0; i < 13; i++) {
+            char c = isbn.charAt(i);
+            if(c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toIsbn13(String isbn10) {
+        String body = "978" + isbn10.substring(0, 9);
+        int sum = 0;
+
+        for(int i = 0; i < 12; i++) {
+            int digit = body.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : 3 * digit;
+        }
+        return body + ((10 - sum % 10) % 10);
+    }
+}
@@ -0,0 +1,135 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An IsbnIndex maps ISBN numbers to the books of a collection.
+ * Exact lookups use a hash map keyed by the canonical ISBN, prefix lookups
+ * use a sorted map keyed by the normalized ISBN.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class IsbnIndex {
+
+    private final HashMap<String, ArrayList<Book>> exact;
+    private final TreeMap<String, ArrayList<Book>> sorted;
+
+    /**
+     * Constructor, creates an empty index.
+     */
+    IsbnIndex() {
+        this.exact = new HashMap<>();
+        this.sorted = new TreeMap<>();
+    }
+
+    /**
+     * Add a book to the index under its current ISBN number.
+     * @param book The book to be indexed.
+     */
+    void add(Book book) {
+        add(book, book.getIsbn());
+    }
+
+    /**
+     * Add a book to the index under the specified ISBN number.
+     * @param book The book to be indexed.
+     * @param isbn The ISBN number of the book.
+     */
+    void add(Book book, String isbn) {
+        put(exact, Isbn.canonical(isbn), book);
+        put(sorted, Isbn.normalize(isbn), book);
+    }
+
+    /**
+     * Remove a book from the index under its current ISBN number.
+     * @param book The book to be removed.
+     */
+    void remove(Book book) {
+        remove(book, book.getIsbn());
+    }
+
+    /**
+     * Remove a book that was indexed under the specified ISBN number.
+     * @param book The book to be removed.
+     * @param isbn The ISBN number the book was indexed under.
+     */
+    void remove(Book book, String isbn) {
+        take(exact, Isbn.canonical(isbn), book);
+        take(sorted, Isbn.normalize(isbn), book);
+    }
+
+    /**
+     * Remove all books from the index.
+     */
+    void clear() {
+        exact.clear();
+        sorted.clear();
+    }
+
+    /**
+     * Return the books with exactly the specified ISBN number, in either
+     * ISBN-10 or ISBN-13 form.
+     * @param isbn The ISBN number to look up.
+     * @return The books found.
+     */
+    ArrayList<Book> get(String isbn) {
+        ArrayList<Book> found = exact.get(Isbn.canonical(isbn));
+        return found == null ? new ArrayList<Book>() : new ArrayList<>(found);
+    }
+
+    /**
+     * Return the books whose normalized ISBN number starts with the
+     * normalized prefix.
+     * @param prefix The beginning of the ISBN number.
+     * @return The books found, ordered by ISBN number.
+     */
+    ArrayList<Book> getByPrefix(String prefix) {
+        String from = Isbn.normalize(prefix);
+        ArrayList<Book> found = new ArrayList<>();
+        Collection<ArrayList<Book>> matches;
+
+        if(from.isEmpty()) {
+            matches = sorted.values();
+        }
+        else {
+            matches = sorted.subMap(from, true, from + Character.MAX_VALUE,
+                    false).values();
+        }
+        for(ArrayList<Book> books: matches) {
+            found.addAll(books);
+        }
+        return found;
+    }
+
+    private static void put(Map<String, ArrayList<Book>> map, String key,
+            Book book) {
+        ArrayList<Book> books = map.get(key);
+        if(books == null) {
+            books = new ArrayList<>(1);
+            map.put(key, books);
+        }
+        books.add(book);
+    }
+
+    private static void take(Map<String, ArrayList<Book>> map, String key,
+            Book book) {
+        ArrayList<Book> books = map.get(key);
+        if(books == null) {
+            return;
+        }
+        for(int i = 0; i < books.size(); i++) {
+            if(books.get(i) == book) {
+                books.remove(i);
+                break;
+            }
+        }
+        if(books.isEmpty()) {
+            map.remove(key);
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package Model;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * A Journal is an append only log of the changes made to a collection
+ * since it was last saved to its library file. The log is kept next to
+ * the library file, with ".journal" appended to the name, and is replayed
+ * when the file is opened again after the program was not closed normally.
+ * <p>
+ * The journal starts with a header: the magic bytes "BJNL", the version
+ * (2 bytes), the length and modification time of the library file it
+ * belongs to and the generation of its base (8 bytes each). A journal
+ * written for another version of the library file is ignored. The changes
+ * apply to the library file when the generation is 0. A large journal is
+ * compacted into a copy of the collection kept next to the journal, with
+ * the generation appended to the name, and the changes then apply to that
+ * copy, so the library file is only written when the user saves it. Every
+ * change is written as the length of its
+ * content (4 bytes), the content (a type byte followed by the values) and
+ * a CRC32 of the content (4 bytes), so a change that was only partly
+ * written is detected and dropped. Books are referred to by position.
+ * Changes are written when they are made and forced to the disk by a
+ * background thread, once for all changes written while the previous
+ * force was running, so a change does not wait for the disk. A force that
+ * fails is reported by the next change, and closing the journal forces it.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class Journal {
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte ISBN = 3;
+    static final byte TITLE = 4;
+    static final byte EDITION = 5;
+    static final byte PRICE = 6;
+    static final byte AUTHOR = 7;
+    static final byte SORT = 8;
+    static final byte RENAME = 9;
+
+    private static final byte[] MAGIC = {'B', 'J', 'N', 'L'};
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 30;
+    // Forces the journals to the disk, see force
+    private static final ExecutorService FORCER =
+            Executors.newSingleThreadExecutor(
+                    new DaemonThreadFactory("Journal force"));
+
+    private final File snapshot;
+    private final File file;
+    private volatile FileChannel channel;
+    // Whether a force of the journal is waiting to run
+    private final AtomicBoolean forcing;
+    // The failure of the latest force, thrown by the next change
+    private volatile IOException failure;
+    private ByteBuffer buffer;
+    private long records;
+    // The compacted copy the changes apply to, 0 for the library file
+    private long generation;
+    // The changes removed from the journal by rebase since it was opened
+    private long rebased;
+
+    private Journal(File snapshot) {
+        this.snapshot = snapshot;
+        this.file = new File(snapshot.getPath() + ".journal");
+        this.buffer = ByteBuffer.allocate(1 << 12);
+        this.forcing = new AtomicBoolean();
+    }
+
+    /**
+     * Open the journal of a library file. A journal belonging to another
+     * version of the file is discarded.
+     * @param snapshot The library file.
+     * @return The journal.
+     * @throws IOException The exception might occur.
+     */
+    static Journal open(File snapshot) throws IOException {
+        Journal journal = new Journal(snapshot);
+
+        journal.channel = FileChannel.open(journal.file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if(!journal.hasValidHeader()) {
+            journal.channel.truncate(0);
+            journal.channel.write(journal.header(0), 0);
+        }
+        journal.channel.position(HEADER_SIZE);
+        return journal;
+    }
+
+    /**
+     * Return the library file of the journal.
+     * @return The library file.
+     */
+    File getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Return the compacted copy of the collection the changes apply to.
+     * @return The copy, or null if the changes apply to the library file.
+     */
+    File getBase() {
+        return generation == 0 ? null : base(generation);
+    }
+
+    /**
+     * Apply the changes in the journal to a collection holding the books
+     * of the library file, and drop a partly written last change.
+     * @param books The collection to be changed, must not be journaled.
+     * @return The number of changes applied.
+     * @throws IOException The exception might occur.
+     */
+    int replay(CollectionOfBooks books) throws IOException {
+        long position = HEADER_SIZE;
+        ByteBuffer content;
+        int applied = 0;
+
+        while((content = readRecord(position)) != null) {
+            apply(books, content);
+            position += content.capacity() + 8;
+            applied++;
+        }
+        channel.truncate(position);
+        channel.position(position);
+        records = applied;
+        return applied;
+    }
+
+    /**
+     * Return the number of changes recorded since the journal was opened,
+     * used to mark the state of a collection that is saved. The mark stays
+     * valid when the journal is rebased by another save in the meantime.
+     * @return The number of changes.
+     */
+    long mark() {
+        return rebased + records;
+    }
+
+    /**
+     * Determine whether the journal holds changes that are not saved.
+     * @return true if the journal holds no changes and the changes
+     * compacted into its base, if any, are saved.
+     */
+    boolean isEmpty() {
+        return records == 0 && generation == 0;
+    }
+
+    /**
+     * Return the size of the journal.
+     * @return The size in bytes.
+     * @throws IOException The exception might occur.
+     */
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Record that a book was added at the end of the collection.
+     * @param book The book added.
+     * @throws IOException The exception might occur.
+     */
+    void add(Book book) throws IOException {
+        write(encode(book));
+        force();
+    }
+
+    /**
+     * Record that books were added at the end of the collection.
+     * @param added The books added, in order.
+     * @throws IOException The exception might occur.
+     */
+    void addAll(List<Book> added) throws IOException {
+        for(Book book: added) {
+            write(encode(book));
+        }
+        force();
+    }
+
+    /**
+     * Record that the book at a position was removed.
+     * @param index The position of the book.
+     * @throws IOException The exception might occur.
+     */
+    void remove(int index) throws IOException {
+        int start = begin(REMOVE);
+        LibraryFormat.putVarInt(buffer, index);
+        write(start);
+        force();
+    }
+
+    /**
+     * Record that a property of the book at a position was changed.
+     * @param index The position of the book.
+     * @param type The property, one of ISBN, TITLE, EDITION, PRICE, AUTHOR.
+     * @param value The new value, for AUTHOR the name of the added author.
+     * @throws IOException The exception might occur.
+     */
+    void set(int index, byte type, Object value) throws IOException {
+        int start = begin(type);
+        while(true) {
+            try {
+                LibraryFormat.putVarInt(buffer, index);
+                if(type == EDITION) {
+                    LibraryFormat.putSignedVarInt(buffer, (Integer) value);
+                }
+                else if(type == PRICE) {
+                    buffer.putDouble((Double) value);
+                }
+                else {
+                    LibraryFormat.putString(buffer, (String) value);
+                }
+                break;
+            }
+            catch(BufferOverflowException ex) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                start = begin(type);
+            }
+        }
+        write(start);
+        force();
+    }
+
+    /**
+     * Record that an author was renamed. The author is referred to by a
+     * book of the author, all books sharing the author are renamed when
+     * the change is replayed.
+     * @param index The position of a book of the author.
+     * @param author The position of the author in the authors of the book.
+     * @param name The new name of the author.
+     * @throws IOException The exception might occur.
+     */
+    void rename(int index, int author, String name) throws IOException {
+        int start = begin(RENAME);
+        while(true) {
+            try {
+                LibraryFormat.putVarInt(buffer, index);
+                LibraryFormat.putVarInt(buffer, author);
+                LibraryFormat.putString(buffer, name);
+                break;
+            }
+            catch(BufferOverflowException ex) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                start = begin(RENAME);
+            }
+        }
+        write(start);
+        force();
+    }
+
+    /**
+     * Record that the collection was sorted.
+     * @throws IOException The exception might occur.
+     */
+    void sort() throws IOException {
+        write(begin(SORT));
+        force();
+    }
+
+    /**
+     * Start a new version of the journal after the library file has been
+     * saved. The changes made after the mark are kept, since they are not
+     * in the saved file. If the journal was compacted after the mark, its
+     * changes still apply to the compacted copy.
+     * @param saved The mark of the journal when the saved books were copied.
+     * @throws IOException The exception might occur.
+     */
+    void rebase(long saved) throws IOException {
+        if(saved >= rebased) {
+            rebase(saved, 0);
+        }
+        else {
+            rebase(rebased, generation);
+        }
+    }
+
+    /**
+     * Start a new version of the journal based on a compacted copy of the
+     * collection, the changes made after the mark are kept. The library
+     * file is not changed. Nothing is done if the library file was saved
+     * after the copy was taken.
+     * @param saved The mark of the journal when the books were copied.
+     * @param copy The file holding the books, moved next to the journal.
+     * @return true if the journal is based on the copy, false otherwise.
+     * @throws IOException The exception might occur.
+     */
+    boolean compact(long saved, File copy) throws IOException {
+        if(saved < rebased) {
+            return false;
+        }
+        move(copy, base(generation + 1));
+        rebase(saved, generation + 1);
+        return true;
+    }
+
+    /**
+     * Write the changes after a mark to a new journal, replace the journal
+     * and delete the base it no longer uses.
+     * @param saved The mark of the journal, not before the start of it.
+     * @param base The generation of the new journal.
+     * @throws IOException The exception might occur.
+     */
+    private void rebase(long saved, long base) throws IOException {
+        long dropped = Math.min(saved - rebased, records);
+        long position = HEADER_SIZE;
+        for(long i = 0; i < dropped; i++) {
+            ByteBuffer content = readRecord(position);
+            if(content == null) {
+                break;
+            }
+            position += content.capacity() + 8;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try(FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(header(base));
+            copy(position, out);
+            out.force(true);
+        }
+        channel.close();
+        move(temp, file);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        records -= dropped;
+        rebased += dropped;
+        if(base != generation) {
+            File unused = getBase();
+            generation = base;
+            if(unused != null) {
+                Files.deleteIfExists(unused.toPath());
+            }
+        }
+    }
+
+    /**
+     * Force the journal to the disk, close it and keep it, so its changes
+     * are recovered when the library file is opened again.
+     * @throws IOException The exception might occur.
+     */
+    void close() throws IOException {
+        try {
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Close the journal and delete it with its base, when its changes have
+     * been saved or discarded.
+     * @throws IOException The exception might occur.
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file.toPath());
+        if(generation != 0) {
+            Files.deleteIfExists(base(generation).toPath());
+        }
+    }
+
+    private File base(long generation) {
+        return new File(file.getPath() + "." + generation);
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException ex) {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private int begin(byte type) {
+        buffer.clear();
+        buffer.putInt(0);
+        buffer.put(type);
+        return 4;
+    }
+
+    /**
+     * Encode a book added at the end of the collection into the buffer.
+     * @param book The book added.
+     * @return The start of the content in the buffer.
+     */
+    private int encode(Book book) {
+        int start = begin(ADD);
+        while(true) {
+            try {
+                LibraryFormat.putString(buffer, book.getIsbn());
+                LibraryFormat.putString(buffer, book.getTitle());
+                LibraryFormat.putSignedVarInt(buffer, book.getEdition());
+                buffer.putDouble(book.getPrice());
+                LibraryFormat.putVarInt(buffer, book.authorList().size());
+                for(Author author: book.authorList()) {
+                    LibraryFormat.putString(buffer, author.getName());
+                }
+                return start;
+            }
+            catch(BufferOverflowException ex) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                start = begin(ADD);
+            }
+        }
+    }
+
+    private void write(int start) throws IOException {
+        if(buffer.remaining() < 4) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int length = buffer.position() - start;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start, length);
+        buffer.putInt((int) crc.getValue());
+        buffer.putInt(0, length);
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        records++;
+    }
+
+    /**
+     * Have the changes written forced to the disk, so they are not lost
+     * when the system stops before the library is saved. A force is only
+     * scheduled if none is waiting, the waiting one forces these changes.
+     * @throws IOException If the previous force failed.
+     */
+    private void force() throws IOException {
+        if(failure != null) {
+            throw failure;
+        }
+        if(forcing.compareAndSet(false, true)) {
+            FORCER.execute(new Force());
+        }
+    }
+
+    /**
+     * Copy the journal from a position to its end, transferTo may copy
+     * fewer bytes than asked.
+     * @param position The position of the first byte copied.
+     * @param out The channel written to.
+     * @throws IOException If the journal ends before its size was copied.
+     */
+    private void copy(long position, FileChannel out) throws IOException {
+        long end = channel.size();
+        while(position < end) {
+            long copied = channel.transferTo(position, end - position, out);
+            if(copied <= 0) {
+                throw new EOFException("Journal truncated while it was rebased");
+            }
+            position += copied;
+        }
+    }
+
+    /**
+     * Read the content of the record at a position.
+     * @param position The position of the record.
+     * @return The content, or null at the end of the journal or at a record
+     * that was not completely written.
+     * @throws IOException The exception might occur.
+     */
+    private ByteBuffer readRecord(long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        if(!readFully(length, position) || length.getInt(0) <= 0 ||
+                position + 8 + length.getInt(0) > channel.size()) {
+            return null;
+        }
+        ByteBuffer content = ByteBuffer.allocate(length.getInt(0));
+        ByteBuffer checksum = ByteBuffer.allocate(4);
+        if(!readFully(content, position + 4) ||
+                !readFully(checksum, position + 4 + content.capacity())) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content.array());
+        if((int) crc.getValue() != checksum.getInt(0)) {
+            return null;
+        }
+        content.flip();
+        return content;
+    }
+
+    private boolean readFully(ByteBuffer target, long position)
+            throws IOException {
+        while(target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if(read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void apply(CollectionOfBooks books, ByteBuffer content)
+            throws IOException {
+        try {
+            byte type = content.get();
+            if(type == ADD) {
+                String isbn = LibraryFormat.getString(content);
+                String title = LibraryFormat.getString(content);
+                int edition = LibraryFormat.getSignedVarInt(content);
+                double price = content.getDouble();
+                int count = LibraryFormat.getVarInt(content);
+                ArrayList<Author> authors = new ArrayList<>(count);
+                for(int i = 0; i < count; i++) {
+                    authors.add(Author.valueOf(LibraryFormat.getString(content)));
+                }
+                books.addBook(new Book(isbn, title, edition, price, authors));
+            }
+            else if(type == SORT) {
+                books.sortBooks();
+            }
+            else {
+                int index = LibraryFormat.getVarInt(content);
+                if(index >= books.getSize()) {
+                    throw new IOException("Journal refers to missing book " +
+                            index);
+                }
+                Book book = books.getBook(index);
+                switch(type) {
+                    case REMOVE:
+                        books.removeBook(book);
+                        break;
+                    case ISBN:
+                        book.setIsbn(LibraryFormat.getString(content));
+                        break;
+                    case TITLE:
+                        book.setTitle(LibraryFormat.getString(content));
+                        break;
+                    case EDITION:
+                        book.setEdition(LibraryFormat.getSignedVarInt(content));
+                        break;
+                    case PRICE:
+                        book.setPrice(content.getDouble());
+                        break;
+                    case AUTHOR:
+                        book.addAuthor(LibraryFormat.getString(content));
+                        break;
+                    case RENAME:
+                        int author = LibraryFormat.getVarInt(content);
+                        if(author >= book.authorList().size()) {
+                            throw new IOException(
+                                    "Journal refers to missing author " + author);
+                        }
+                        book.authorList().get(author).changeName(
+                                LibraryFormat.getString(content));
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type);
+                }
+            }
+        }
+        catch(BufferUnderflowException ex) {
+            throw new EOFException("Malformed journal record");
+        }
+    }
+
+    /**
+     * Determine whether the journal belongs to this version of the library
+     * file, and read the generation of its base if it does.
+     */
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(!readFully(header, 0)) {
+            return false;
+        }
+        long base = header.getLong(HEADER_SIZE - 8);
+        header.flip();
+        if(base < 0 || !header.equals(header(base))) {
+            return false;
+        }
+        generation = base;
+        return true;
+    }
+
+    private ByteBuffer header(long base) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putShort((short) VERSION);
+        header.putLong(snapshot.length());
+        header.putLong(snapshot.lastModified());
+        header.putLong(base);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * A Force object forces the changes written to the journal to the disk.
+     * A journal that was closed or rebased in the meantime needs no force,
+     * since closing and rebasing force it.
+     */
+    private class Force implements Runnable {
+
+        @Override
+        public void run() {
+            forcing.set(false);
+            try {
+                channel.force(false);
+            }
+            catch(ClosedChannelException ex) {
+                // Forced when it was closed
+            }
+            catch(IOException ex) {
+                failure = ex;
+            }
+        }
+    }
+}
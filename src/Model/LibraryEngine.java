@@ -0,0 +1,289 @@
+package Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A LibraryEngine holds the open libraries and performs the operations on
+ * them that do not depend on a user interface: creating, loading, saving
+ * and closing libraries, adding, removing, searching and sorting books,
+ * importing and exporting. It is used by the JavaFX controller and by the
+ * command line shell, and does not load any JavaFX class. Libraries are
+ * identified by their index, in the order they were created. The list of
+ * libraries is meant to be changed by one thread, the libraries themselves
+ * are thread safe.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class LibraryEngine {
+
+    private final ArrayList<CollectionOfBooks> libraries;
+    private final ArrayList<String> names;
+    private boolean offHeap;
+
+    /**
+     * Constructor, creates an engine without libraries.
+     */
+    public LibraryEngine() {
+        this.libraries = new ArrayList<>();
+        this.names = new ArrayList<>();
+    }
+
+    /**
+     * Return the number of open libraries.
+     * @return The number of libraries.
+     */
+    public int getSize() {
+        return libraries.size();
+    }
+
+    /**
+     * Return an open library.
+     * @param lib The index of the library.
+     * @return The library.
+     */
+    public CollectionOfBooks getLibrary(int lib) {
+        return libraries.get(lib);
+    }
+
+    /**
+     * Return the open libraries.
+     * @return An unmodifiable view of the libraries, by index.
+     */
+    public List<CollectionOfBooks> getLibraries() {
+        return Collections.unmodifiableList(libraries);
+    }
+
+    /**
+     * Return the name of an open library.
+     * @param lib The index of the library.
+     * @return The name given when the library was created.
+     */
+    public String getName(int lib) {
+        return names.get(lib);
+    }
+
+    /**
+     * Return the index of the first library with a name.
+     * @param name The name of the library.
+     * @return The index of the library, -1 if no library has the name.
+     */
+    public int indexOf(String name) {
+        return names.indexOf(name);
+    }
+
+    /**
+     * Choose whether new libraries store their books outside the Java heap,
+     * see CollectionOfBooks.setOffHeap.
+     * @param offHeap true to store the books of new libraries off-heap.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Create an empty library.
+     * @param name The name of the library.
+     * @return The index of the library.
+     */
+    public int createLibrary(String name) {
+        CollectionOfBooks lib = new CollectionOfBooks();
+        if(offHeap) {
+            lib.setOffHeap(true);
+        }
+        libraries.add(lib);
+        names.add(name);
+        return libraries.size() - 1;
+    }
+
+    /**
+     * Load a library file into an empty library, the books are read from
+     * the file as needed, see CollectionOfBooks.mapFile. The changes not
+     * saved when the file was last used are recovered from its journal.
+     * @param lib The index of the library.
+     * @param file The library file.
+     * @return The number of unsaved changes recovered.
+     * @throws IOException If the file cannot be read.
+     * @throws ClassNotFoundException If the file is not a library file.
+     */
+    public int loadFile(int lib, File file) throws IOException,
+            ClassNotFoundException {
+        CollectionOfBooks library = libraries.get(lib);
+        library.mapFile(file);
+        return library.openJournal(file);
+    }
+
+    /**
+     * Save a library to a file, the saved changes are removed from the
+     * journal of the library.
+     * @param lib The index of the library.
+     * @param file The file.
+     * @param progress The listener notified about the books written, may
+     * be null.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveFile(int lib, File file, ProgressListener progress)
+            throws IOException {
+        CollectionOfBooks library = libraries.get(lib);
+        long mark = library.journalMark();
+        CollectionOfBooks.saveBooks(library.snapshot(), file, progress);
+        library.journalSaved(file, mark);
+    }
+
+    /**
+     * Close a library and its journal, the library is removed even if its
+     * journal cannot be closed. The changes not saved stay in the journal
+     * and are recovered when the library file is loaded again.
+     * @param lib The index of the library, the libraries after it move
+     * down one index.
+     * @throws IOException If the journal cannot be closed.
+     */
+    public void closeLibrary(int lib) throws IOException {
+        CollectionOfBooks library = libraries.remove(lib);
+        names.remove(lib);
+        library.closeJournal();
+    }
+
+    /**
+     * Delete the journal of a library, when the user discards the changes
+     * not saved. Later changes of the library are not recorded.
+     * @param lib The index of the library.
+     * @throws IOException If the journal cannot be deleted.
+     */
+    public void discardJournal(int lib) throws IOException {
+        libraries.get(lib).discardJournal();
+    }
+
+    /**
+     * Close the journals of all libraries, when the program exits. The
+     * changes not saved stay in the journals.
+     * @throws IOException If a journal cannot be closed, the others are
+     * closed anyway.
+     */
+    public void closeJournals() throws IOException {
+        closeJournals(false);
+    }
+
+    /**
+     * Delete the journals of all libraries, when the program exits and the
+     * user discards the changes not saved.
+     * @throws IOException If a journal cannot be deleted, the others are
+     * deleted anyway.
+     */
+    public void discardJournals() throws IOException {
+        closeJournals(true);
+    }
+
+    private void closeJournals(boolean discard) throws IOException {
+        IOException failure = null;
+        for(CollectionOfBooks lib: libraries) {
+            try {
+                if(discard) {
+                    lib.discardJournal();
+                }
+                else {
+                    lib.closeJournal();
+                }
+            }
+            catch(IOException ex) {
+                if(failure == null) {
+                    failure = ex;
+                }
+                else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Add a book to a library.
+     * @param lib The index of the library.
+     * @param book The book.
+     */
+    public void addBook(int lib, Book book) {
+        libraries.get(lib).addBook(book);
+    }
+
+    /**
+     * Remove a book from a library.
+     * @param lib The index of the library.
+     * @param book The book.
+     * @return true if the book was removed, false if it was not found.
+     */
+    public boolean removeBook(int lib, Book book) {
+        return libraries.get(lib).removeBook(book);
+    }
+
+    /**
+     * Sort the books of a library.
+     * @param lib The index of the library.
+     */
+    public void sortBooks(int lib) {
+        libraries.get(lib).sortBooks();
+    }
+
+    /**
+     * Search the books of a library, see CollectionOfBooks.search.
+     * @param lib The index of the library.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    public ArrayList<Book> search(int lib, SearchField field, String query,
+            boolean ignoreCase) {
+        return libraries.get(lib).search(field, query, ignoreCase);
+    }
+
+    /**
+     * Return a search of all libraries open now, see FederatedSearch.
+     * @param executor The executor running the search of each library.
+     * @return The search.
+     */
+    public FederatedSearch federatedSearch(Executor executor) {
+        return new FederatedSearch(libraries, names, executor);
+    }
+
+    /**
+     * Import a catalogue feed into a library, see CatalogImporter.
+     * @param lib The index of the library.
+     * @param file The .csv or .mrk file.
+     * @param progress The listener notified about the bytes read, may be
+     * null.
+     * @return The report of the import.
+     * @throws IOException If the file cannot be read.
+     */
+    public ImportReport importCatalog(int lib, File file,
+            ProgressListener progress) throws IOException {
+        return new CatalogImporter(libraries.get(lib)).importFile(file,
+                progress);
+    }
+
+    /**
+     * Export books to a text file, see CatalogExporter. The format is
+     * chosen by the extension of the file, see ExportFormat.forFile.
+     * @param books The books, not changed while exporting.
+     * @param file The file.
+     * @param progress The listener notified about the books written, may
+     * be null.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void export(List<Book> books, File file,
+            ProgressListener progress) throws IOException {
+        new CatalogExporter(ExportFormat.forFile(file)).export(books, file,
+                progress);
+    }
+}
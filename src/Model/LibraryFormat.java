@@ -0,0 +1,165 @@
+package Model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LibraryFormat contains the constants and the primitive encodings of the
+ * binary library file format.
+ * <p>
+ * A library file starts with a header: the magic bytes "BLIB", the format
+ * version (2 bytes), flags (2 bytes) and the number of books (8 bytes).
+ * The header is followed by the author table (a varint count and the author
+ * names) and the books. A book is written as its ISBN and title, the
+ * edition as a signed varint, the price as an 8 byte double and the number
+ * of authors followed by their varint positions in the author table.
+ * Strings are written as a varint byte length followed by UTF-8 bytes.
+ * All multi byte numbers are big endian.
+ * <p>
+ * If the OFFSET_TABLE flag is set, the books are followed by a table with
+ * the file position of every book (8 bytes each) and the file ends with
+ * the position of that table (8 bytes), so that a book can be decoded
+ * without reading the books before it.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+final class LibraryFormat {
+
+    static final byte[] MAGIC = {'B', 'L', 'I', 'B'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int FLAGS_POSITION = 6;
+    static final int OFFSET_TABLE = 1;
+
+    // The first bytes written by an ObjectOutputStream
+    static final int SERIALIZATION_MAGIC = 0xACED;
+
+    private LibraryFormat() {
+    }
+
+    /**
+     * Write an unsigned variable length integer, 7 bits per byte.
+     * @param out The buffer to write to.
+     * @param value The value to be written, must not be negative.
+     */
+    static void putVarInt(ByteBuffer out, int value) {
+        while((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Read an unsigned variable length integer.
+     * @param in The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the varint is malformed.
+     */
+    static int getVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in library file");
+    }
+
+    /**
+     * Write a signed integer as a zigzag encoded varint, so small negative
+     * values stay short.
+     * @param out The buffer to write to.
+     * @param value The value to be written.
+     */
+    static void putSignedVarInt(ByteBuffer out, int value) {
+        putVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Read a zigzag encoded signed varint.
+     * @param in The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the varint is malformed.
+     */
+    static int getSignedVarInt(ByteBuffer in) throws IOException {
+        int value = getVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write a string as a varint length and UTF-8 bytes.
+     * @param out The buffer to write to.
+     * @param value The string to be written.
+     */
+    static void putString(ByteBuffer out, String value) {
+        int length = value.length();
+        boolean ascii = true;
+
+        for(int i = 0; i < length && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+        if(ascii) {
+            putVarInt(out, length);
+            for(int i = 0; i < length; i++) {
+                out.put((byte) value.charAt(i));
+            }
+        }
+        else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(out, bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by putString.
+     * @param in The buffer to read from.
+     * @return The string read.
+     * @throws IOException If the string is malformed.
+     * @throws BufferUnderflowException If the buffer ends within the string.
+     */
+    static String getString(ByteBuffer in) throws IOException {
+        int length = getVarInt(in);
+        if(length < 0) {
+            throw new IOException("Malformed string in library file");
+        }
+        if(length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if(in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(),
+                    length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Skip a string written by putString without decoding it.
+     * @param in The buffer to read from.
+     * @throws IOException If the string is malformed.
+     */
+    static void skipString(ByteBuffer in) throws IOException {
+        int length = getVarInt(in);
+        if(length < 0) {
+            throw new IOException("Malformed string in library file");
+        }
+        if(length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + length);
+    }
+}
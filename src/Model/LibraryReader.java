@@ -0,0 +1,210 @@
+package Model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A LibraryReader reads books written by a LibraryWriter. The stream is
+ * read into a buffer in large blocks and the records are decoded from it.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class LibraryReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel in;
+    private ByteBuffer buffer;
+    private Author[] authors;
+
+    /**
+     * Constructor, creates a reader on top of the specified stream.
+     * @param in The stream to read from.
+     */
+    LibraryReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Constructor, creates a reader on top of the specified channel.
+     * @param in The channel to read from.
+     */
+    LibraryReader(ReadableByteChannel in) {
+        this.in = in;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Read the header, the author table and all books.
+     * @return The books read.
+     * @throws IOException If the stream is not a supported library file.
+     */
+    ArrayList<Book> read() throws IOException {
+        long count = readStart();
+        ArrayList<Book> books = new ArrayList<>((int) count);
+        readBooks(count, books::add);
+        return books;
+    }
+
+    /**
+     * Read the header, the author table and all books, passing every book
+     * on as soon as it is decoded instead of keeping the books.
+     * @param sink The consumer of the books read.
+     * @throws IOException If the stream is not a supported library file.
+     */
+    void read(Consumer<Book> sink) throws IOException {
+        readBooks(readStart(), sink);
+    }
+
+    /**
+     * Read the header and the author table.
+     * @return The number of books in the file.
+     */
+    private long readStart() throws IOException {
+        while(buffer.remaining() < LibraryFormat.HEADER_SIZE) {
+            refill();
+        }
+        long count = readHeader(buffer);
+
+        authors = new Author[readVarInt()];
+        for(int i = 0; i < authors.length; i++) {
+            authors[i] = Author.valueOf(readString());
+        }
+        return count;
+    }
+
+    private void readBooks(long count, Consumer<Book> sink) throws IOException {
+        for(long i = 0; i < count; i++) {
+            int start = buffer.position();
+            Book book;
+            while(true) {
+                try {
+                    book = getBook(buffer, authors);
+                    break;
+                }
+                catch(BufferUnderflowException ex) {
+                    buffer.position(start);
+                    refill();
+                    start = buffer.position();
+                }
+            }
+            sink.accept(book);
+        }
+    }
+
+    /**
+     * Close the underlying stream.
+     * @throws IOException The exception might occur.
+     */
+    void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Check the header of a library file.
+     * @param in The buffer positioned at the start of the header.
+     * @return The number of books in the file.
+     * @throws IOException If the header is not a supported library header.
+     */
+    static long readHeader(ByteBuffer in) throws IOException {
+        for(byte b: LibraryFormat.MAGIC) {
+            if(in.get() != b) {
+                throw new IOException("Not a library file");
+            }
+        }
+        int version = in.getShort() & 0xFFFF;
+        if(version > LibraryFormat.VERSION) {
+            throw new IOException("Unsupported library file version " +
+                    version);
+        }
+        in.getShort();
+        long count = in.getLong();
+        if(count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Invalid number of books " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Decode one book record.
+     * @param in The buffer positioned at the start of the record.
+     * @param authors The author table of the file.
+     * @return The book decoded.
+     * @throws IOException If the record is malformed.
+     */
+    static Book getBook(ByteBuffer in, Author[] authors) throws IOException {
+        String isbn = LibraryFormat.getString(in);
+        String title = LibraryFormat.getString(in);
+        int edition = LibraryFormat.getSignedVarInt(in);
+        double price = in.getDouble();
+        int authorCount = LibraryFormat.getVarInt(in);
+        ArrayList<Author> bookAuthors = new ArrayList<>(authorCount);
+
+        for(int i = 0; i < authorCount; i++) {
+            int id = LibraryFormat.getVarInt(in);
+            if(id < 0 || id >= authors.length) {
+                throw new IOException("Invalid author in library file");
+            }
+            bookAuthors.add(authors[id]);
+        }
+        return new Book(isbn, title, edition, price, bookAuthors);
+    }
+
+    private int readVarInt() throws IOException {
+        int start = buffer.position();
+        while(true) {
+            try {
+                return LibraryFormat.getVarInt(buffer);
+            }
+            catch(BufferUnderflowException ex) {
+                buffer.position(start);
+                refill();
+                start = buffer.position();
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        int start = buffer.position();
+        while(true) {
+            try {
+                return LibraryFormat.getString(buffer);
+            }
+            catch(BufferUnderflowException ex) {
+                buffer.position(start);
+                refill();
+                start = buffer.position();
+            }
+        }
+    }
+
+    /**
+     * Keep the unread bytes and read more after them. The buffer is grown
+     * if a single record does not fit in it.
+     * @throws IOException If the stream ends.
+     */
+    private void refill() throws IOException {
+        if(buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer);
+            buffer = larger;
+        }
+        else {
+            buffer.compact();
+        }
+        int read = in.read(buffer);
+        buffer.flip();
+        if(read < 0) {
+            throw new EOFException("Unexpected end of library file");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package Model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A LibraryWriter writes books to an output stream in the binary library
+ * format described in LibraryFormat. Records are encoded into a buffer
+ * that is written to the stream whenever it is full.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class LibraryWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_STEP = 1 << 12;
+
+    private final WritableByteChannel out;
+    private ByteBuffer buffer;
+    private long written;
+
+    /**
+     * Constructor, creates a writer on top of the specified stream.
+     * @param out The stream to write to.
+     */
+    LibraryWriter(OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    /**
+     * Constructor, creates a writer on top of the specified channel.
+     * @param out The channel to write to.
+     */
+    LibraryWriter(WritableByteChannel out) {
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Write the header, the author table, all books and the offset table.
+     * @param books The books to be written.
+     * @throws IOException The exception might occur.
+     */
+    void write(List<Book> books) throws IOException {
+        write(books, null);
+    }
+
+    /**
+     * Write the header, the author table, all books and the offset table,
+     * reporting the number of books written.
+     * @param books The books to be written.
+     * @param progress The listener to be notified, may be null.
+     * @throws IOException The exception might occur.
+     */
+    void write(List<Book> books, ProgressListener progress) 
+            throws IOException {
+        HashMap<String, Integer> authorIds = new HashMap<>();
+        ArrayList<String> authorNames = new ArrayList<>();
+
+        for(Book book: books) {
+            for(Author author: book.authorList()) {
+                if(!authorIds.containsKey(author.getName())) {
+                    authorIds.put(author.getName(), authorNames.size());
+                    authorNames.add(author.getName());
+                }
+            }
+        }
+
+        buffer.put(LibraryFormat.MAGIC);
+        buffer.putShort((short) LibraryFormat.VERSION);
+        buffer.putShort((short) LibraryFormat.OFFSET_TABLE);
+        buffer.putLong(books.size());
+        LibraryFormat.putVarInt(buffer, authorNames.size());
+
+        for(String name: authorNames) {
+            int start = buffer.position();
+            while(true) {
+                try {
+                    LibraryFormat.putString(buffer, name);
+                    break;
+                }
+                catch(BufferOverflowException ex) {
+                    buffer.position(start);
+                    start = makeRoom();
+                }
+            }
+        }
+
+        long[] offsets = new long[books.size()];
+        int index = 0;
+        for(Book book: books) {
+            int start = buffer.position();
+            while(true) {
+                try {
+                    putBook(book, authorIds);
+                    break;
+                }
+                catch(BufferOverflowException ex) {
+                    buffer.position(start);
+                    start = makeRoom();
+                }
+            }
+            offsets[index++] = written + start;
+            if(progress != null && index % PROGRESS_STEP == 0) {
+                progress.progress(index, offsets.length);
+            }
+        }
+
+        long table = written + buffer.position();
+        for(long offset: offsets) {
+            if(buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(offset);
+        }
+        if(buffer.remaining() < 8) {
+            flush();
+        }
+        buffer.putLong(table);
+        flush();
+        if(progress != null) {
+            progress.progress(offsets.length, offsets.length);
+        }
+    }
+
+    /**
+     * Write the buffered bytes and close the underlying stream.
+     * @throws IOException The exception might occur.
+     */
+    void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void putBook(Book book, HashMap<String, Integer> authorIds) {
+        List<Author> authors = book.authorList();
+
+        LibraryFormat.putString(buffer, book.getIsbn());
+        LibraryFormat.putString(buffer, book.getTitle());
+        LibraryFormat.putSignedVarInt(buffer, book.getEdition());
+        buffer.putDouble(book.getPrice());
+        LibraryFormat.putVarInt(buffer, authors.size());
+        for(Author author: authors) {
+            LibraryFormat.putVarInt(buffer, authorIds.get(author.getName()));
+        }
+    }
+
+    /**
+     * Write out the buffer, or grow it if a single record does not fit.
+     * @return The position at which the record is to be encoded again.
+     * @throws IOException The exception might occur.
+     */
+    private int makeRoom() throws IOException {
+        if(buffer.position() == 0) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+        else {
+            flush();
+        }
+        return buffer.position();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            written += out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,427 @@
+package Model;
+
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * A MappedBookList is a read only list of the books in a library file.
+ * The file is memory mapped and a book is only decoded when it is asked
+ * for, so opening a file does not depend on the number of books in it.
+ * Decoded books are cached as long as they are referenced elsewhere, which
+ * keeps a book the same object while it is shown or held by a search result.
+ * Searches compare the texts in the file and only decode the books found.
+ * The file stays mapped until the list is closed, which unmaps it so that
+ * the file can be replaced.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class MappedBookList extends AbstractList<Book> implements RandomAccess {
+
+    private final File file;
+    private final ByteBuffer data;
+    private final int size;
+    private final int offsetTable;
+    private final Author[] authors;
+    private final PropertyChangeListener listener;
+    private final HashMap<Integer, BookReference> decoded;
+    private final ReferenceQueue<Book> released;
+    // Held while the mapped data is read, so that it is not unmapped then
+    private final ReadWriteLock access;
+    // The books of the file once it is closed, null while it is mapped
+    private List<Book> loaded;
+
+    private MappedBookList(File file, ByteBuffer data, int size,
+            int offsetTable, Author[] authors, PropertyChangeListener listener) {
+        this.file = file;
+        this.data = data;
+        this.size = size;
+        this.offsetTable = offsetTable;
+        this.authors = authors;
+        this.listener = listener;
+        this.decoded = new HashMap<>();
+        this.released = new ReferenceQueue<>();
+        this.access = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Map a library file. Files without an offset table, files in another
+     * format and files too large to be mapped at once are not mapped.
+     * @param file The library file.
+     * @param listener The listener added to every decoded book and to the
+     * authors in the file.
+     * @return The list of books in the file, or null if it cannot be mapped.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    static MappedBookList open(File file, PropertyChangeListener listener)
+            throws IOException {
+        MappedByteBuffer data;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            if(length < LibraryFormat.HEADER_SIZE + 8 ||
+                    length > Integer.MAX_VALUE) {
+                return null;
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+
+        ByteBuffer in = data.duplicate();
+        for(byte b: LibraryFormat.MAGIC) {
+            if(in.get() != b) {
+                return null;
+            }
+        }
+        int flags = data.getShort(LibraryFormat.FLAGS_POSITION);
+        if((flags & LibraryFormat.OFFSET_TABLE) == 0) {
+            return null;
+        }
+        in.position(0);
+        long count = LibraryReader.readHeader(in);
+        long table = data.getLong(data.limit() - 8);
+        if(table < LibraryFormat.HEADER_SIZE ||
+                table + 8 * count + 8 != data.limit()) {
+            throw new IOException("Malformed offset table in library file");
+        }
+
+        Author[] authors = new Author[LibraryFormat.getVarInt(in)];
+        for(int i = 0; i < authors.length; i++) {
+            authors[i] = Author.valueOf(LibraryFormat.getString(in));
+            authors[i].addPropertyChangeListener(listener);
+        }
+        return new MappedBookList(file, data, (int) count, (int) table,
+                authors, listener);
+    }
+
+    /**
+     * Return the mapped file.
+     * @return The library file.
+     */
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the book at the specified position, decoding it if it is not
+     * in use already. Books are decoded outside the lock, so the list can
+     * be scanned by several threads at once.
+     * @param index The position of the book.
+     * @return The book.
+     */
+    @Override
+    public Book get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index +
+                    ", Size: " + size);
+        }
+        access.readLock().lock();
+        try {
+            return loaded != null ? loaded.get(index) : book(index);
+        }
+        finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the books at a range of positions matching a condition, in
+     * order. A condition on a text of the books is compared with the texts
+     * in the file, other conditions with books decoded for the comparison
+     * only, so only the books found are decoded and kept.
+     * @param condition The condition the books found fulfil.
+     * @param from The first position compared.
+     * @param to The position after the last position compared.
+     * @return The books found.
+     */
+    ArrayList<Book> filter(Predicate<? super Book> condition, int from,
+            int to) {
+        access.readLock().lock();
+        try {
+            if(loaded != null) {
+                return QueryEngine.filter(loaded.subList(from, to), condition);
+            }
+            Predicate<Integer> matches = 
+                    condition instanceof QueryEngine.TextMatch ?
+                    new RecordMatches((QueryEngine.TextMatch) condition) :
+                    new CopyMatches(condition);
+            ArrayList<Integer> found = QueryEngine.filter(
+                    QueryEngine.positions(from, to), matches);
+            ArrayList<Book> books = new ArrayList<>(found.size());
+            for(int index: found) {
+                books.add(book(index));
+            }
+            return books;
+        }
+        finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the book at a position, decoding and keeping it if it is not
+     * in use already. Called while the data is read locked.
+     * @param index The position of the book.
+     * @return The book.
+     */
+    private Book book(int index) {
+        Book book = cached(index);
+        if(book != null) {
+            return book;
+        }
+
+        Book decodedBook = decode(index);
+        synchronized(this) {
+            // Another thread may have decoded the same book meanwhile
+            book = cached(index);
+            if(book == null) {
+                book = decodedBook;
+                book.addPropertyChangeListener(listener);
+                decoded.put(index, new BookReference(book, index, released));
+            }
+        }
+        return book;
+    }
+
+    private synchronized Book cached(int index) {
+        purge();
+        BookReference ref = decoded.get(index);
+        return ref == null ? null : ref.get();
+    }
+
+    private Book decode(int index) {
+        ByteBuffer in = record(index);
+        try {
+            return LibraryReader.getBook(in, authors);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Return a buffer positioned at the record of a book.
+     * @param index The position of the book.
+     * @return The buffer.
+     */
+    private ByteBuffer record(int index) {
+        ByteBuffer in = data.duplicate();
+        in.position((int) data.getLong(offsetTable + 8 * index));
+        return in;
+    }
+
+    /**
+     * Unmap the file, the books loaded from it are returned from then on.
+     * Copies of the list still in use keep working, and the file can be
+     * replaced even where mapped files are locked. Waits until the data
+     * is no longer read.
+     * @param books The books of the file, in the same order.
+     */
+    void close(List<Book> books) {
+        access.writeLock().lock();
+        try {
+            if(loaded == null) {
+                loaded = books;
+                unmap(data);
+            }
+        }
+        finally {
+            access.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Determine whether the file is still mapped.
+     * @return true if the list reads the file, false once it is closed.
+     */
+    boolean isOpen() {
+        access.readLock().lock();
+        try {
+            return loaded == null;
+        }
+        finally {
+            access.readLock().unlock();
+        }
+    }
+
+    /**
+     * Release the memory mapping of a buffer instead of waiting for the
+     * garbage collector, by the cleaner of the buffer. The cleaner is only
+     * reachable by reflection, if it is not the mapping is released when
+     * the buffer is collected.
+     * @param buffer The mapped buffer, not used afterwards.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        }
+        catch(NoSuchMethodException ex) {
+            // Java 8 has no invokeCleaner, the buffer has its own cleaner
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+            catch(ReflectiveOperationException | RuntimeException e) {
+                // Released by the garbage collector
+            }
+        }
+        catch(ReflectiveOperationException | RuntimeException ex) {
+            // Released by the garbage collector
+        }
+    }
+
+    /**
+     * Stop listening to the decoded books and the authors, called when the
+     * collection no longer uses the list.
+     */
+    synchronized void dispose() {
+        for(BookReference ref: decoded.values()) {
+            Book book = ref.get();
+            if(book != null) {
+                book.removePropertyChangeListener(listener);
+            }
+        }
+        decoded.clear();
+        for(Author author: authors) {
+            author.removePropertyChangeListener(listener);
+        }
+    }
+
+    /**
+     * Forget the books that are no longer referenced.
+     */
+    private void purge() {
+        Reference<? extends Book> ref;
+
+        while((ref = released.poll()) != null) {
+            BookReference book = (BookReference) ref;
+            if(decoded.get(book.index) == book) {
+                decoded.remove(book.index);
+            }
+        }
+    }
+
+    /**
+     * A CopyMatches object tests a condition on a copy of the book at a
+     * position, the book in use if there is one
+     */
+    private class CopyMatches implements Predicate<Integer> {
+        private final Predicate<? super Book> condition;
+
+        CopyMatches(Predicate<? super Book> condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean test(Integer index) {
+            Book book = cached(index);
+            return condition.test(book != null ? book : decode(index));
+        }
+    }
+
+    /**
+     * A RecordMatches object tests a condition on a text of a book on the
+     * record of the book in the file. The names of the authors are compared
+     * once, a record only by the numbers of its authors.
+     */
+    private class RecordMatches implements Predicate<Integer> {
+        private final QueryEngine.TextMatch condition;
+        private final boolean[] authorMatches;
+
+        RecordMatches(QueryEngine.TextMatch condition) {
+            this.condition = condition;
+            if(condition.getField() == SearchField.AUTHOR) {
+                authorMatches = new boolean[authors.length];
+                for(int i = 0; i < authors.length; i++) {
+                    authorMatches[i] = condition.matches(authors[i].getName());
+                }
+            }
+            else {
+                authorMatches = null;
+            }
+        }
+
+        @Override
+        public boolean test(Integer index) {
+            ByteBuffer in = record(index);
+            try {
+                switch(condition.getField()) {
+                    case ISBN:
+                        return condition.matches(LibraryFormat.getString(in));
+                    case TITLE:
+                        LibraryFormat.skipString(in);
+                        return condition.matches(LibraryFormat.getString(in));
+                    default:
+                        return hasAuthor(in);
+                }
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private boolean hasAuthor(ByteBuffer in) throws IOException {
+            LibraryFormat.skipString(in);
+            LibraryFormat.skipString(in);
+            LibraryFormat.getSignedVarInt(in);
+            in.position(in.position() + 8);
+            int authorCount = LibraryFormat.getVarInt(in);
+            for(int i = 0; i < authorCount; i++) {
+                int id = LibraryFormat.getVarInt(in);
+                if(id < 0 || id >= authors.length) {
+                    throw new IOException("Invalid author in library file");
+                }
+                if(authorMatches[id]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A BookReference remembers the position of a decoded book
+     */
+    private static class BookReference extends WeakReference<Book> {
+
+        private final int index;
+
+        BookReference(Book book, int index, ReferenceQueue<Book> queue) {
+            super(book, queue);
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package Model;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Metric counts the calls of an operation and keeps a histogram of their
+ * times. The histogram has 16 buckets per power of two, so a percentile is
+ * accurate to about 3 percent at any time from nanoseconds to hours, with
+ * a fixed amount of memory. Recording a time only updates counters without
+ * locks, and costs nothing but a volatile read while metrics are disabled,
+ * see Metrics.setEnabled. Metrics are created by Metrics.metric.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Metric implements MetricMXBean {
+
+    // Returned by start while disabled, nanoTime can be any other value
+    private static final long OFF = Long.MIN_VALUE;
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    Metric(String name) {
+        this.name = name;
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Start timing an operation.
+     * @return The start time, to be passed to stop.
+     */
+    public long start() {
+        return Metrics.enabled ? System.nanoTime() : OFF;
+    }
+
+    /**
+     * Stop timing an operation and record its time.
+     * @param start The time returned by start.
+     */
+    public void stop(long start) {
+        if(start != OFF) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record the time of an operation.
+     * @param nanos The time in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.getAndIncrement(bucket(value));
+        total.add(value);
+        // The maximum rarely changes, so it is only written when exceeded
+        long highest = max.get();
+        while(value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        long n = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            n += buckets.get(i);
+        }
+        return n;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = getCount();
+        return n == 0 ? 0 : total.sum() / 1e3 / n;
+    }
+
+    @Override
+    public double getMedianMicros() {
+        return getPercentileMicros(50);
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getPercentileMicros(99);
+    }
+
+    @Override
+    public double getP999Micros() {
+        return getPercentileMicros(99.9);
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return max.get() / 1e3;
+    }
+
+    /**
+     * Return the time that a percentage of the operations did not exceed,
+     * the middle of the bucket holding it.
+     * @param percent The percentage, from 0 to 100.
+     * @return The time in microseconds, 0 if nothing was recorded.
+     */
+    public double getPercentileMicros(double percent) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if(n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= rank) {
+                double middle = (lowest(i) + (double) lowest(i + 1) - 1) / 2;
+                return Math.min(middle, max.get()) / 1e3;
+            }
+        }
+        return getMaxMicros();
+    }
+
+    @Override
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, 
+                "%-40s %10d %12.1f %12.1f %12.1f %12.1f %12.1f", name, 
+                getCount(), getMeanMicros(), getMedianMicros(), getP99Micros(),
+                getP999Micros(), getMaxMicros());
+    }
+
+    /**
+     * Return the bucket of a time. Times below 16 have a bucket each, above
+     * that every power of two is split into 16 buckets.
+     */
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + 
+                (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Return the lowest time of a bucket.
+     */
+    private static long lowest(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return shift >= 63 - SUB_BITS ? Long.MAX_VALUE : sub << shift;
+    }
+}
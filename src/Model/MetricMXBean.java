@@ -0,0 +1,58 @@
+package Model;
+
+/**
+ * The management interface of a Metric, registered over JMX by
+ * Metrics.registerMBeans under the name Model:type=Metric,name=the name.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public interface MetricMXBean {
+
+    /**
+     * Return the name of the timed operation.
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Return the number of operations timed.
+     * @return The count.
+     */
+    long getCount();
+
+    /**
+     * Return the average time of the operations.
+     * @return The time in microseconds.
+     */
+    double getMeanMicros();
+
+    /**
+     * Return the median time of the operations.
+     * @return The time in microseconds.
+     */
+    double getMedianMicros();
+
+    /**
+     * Return the time that 99 percent of the operations did not exceed.
+     * @return The time in microseconds.
+     */
+    double getP99Micros();
+
+    /**
+     * Return the time that 99.9 percent of the operations did not exceed.
+     * @return The time in microseconds.
+     */
+    double getP999Micros();
+
+    /**
+     * Return the longest time of the operations.
+     * @return The time in microseconds.
+     */
+    double getMaxMicros();
+
+    /**
+     * Forget the operations timed so far.
+     */
+    void reset();
+}
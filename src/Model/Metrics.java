@@ -0,0 +1,188 @@
+package Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics keeps the Metric of every timed operation, by name. The model
+ * times the operations of CollectionOfBooks and the view those of
+ * LibraryController. Metrics are enabled unless the system property
+ * library.metrics is false, and can be switched on and off at any time.
+ * The metrics can be read over JMX after registerMBeans, shown as a report
+ * or dumped to a file.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public final class Metrics {
+
+    // Read by every Metric.start, so it must be cheap to read
+    static volatile boolean enabled = 
+            !"false".equals(System.getProperty("library.metrics"));
+
+    private static final Map<String, Metric> METRICS = 
+            new ConcurrentSkipListMap<>();
+    private static final String HEADER = String.format("%-40s %10s %12s " +
+            "%12s %12s %12s %12s", "Operation (times in us)", "Count", "Mean",
+            "Median", "99%", "99.9%", "Max");
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * Return the metric of an operation, created when it is first asked for.
+     * @param name The name of the operation, such as Class.method.
+     * @return The metric.
+     */
+    public static Metric metric(String name) {
+        Metric metric = METRICS.get(name);
+        if(metric == null) {
+            synchronized(Metrics.class) {
+                metric = METRICS.get(name);
+                if(metric == null) {
+                    metric = new Metric(name);
+                    METRICS.put(name, metric);
+                    if(registered) {
+                        register(metric);
+                    }
+                }
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * Return all metrics, ordered by name.
+     * @return The metrics.
+     */
+    public static List<Metric> getMetrics() {
+        return new ArrayList<>(METRICS.values());
+    }
+
+    /**
+     * Determine whether operations are timed.
+     * @return true if operations are timed, false otherwise.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start or stop timing operations. The times recorded so far are kept.
+     * @param enabled true to time operations, false otherwise.
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Forget the operations timed so far by all metrics.
+     */
+    public static void reset() {
+        for(Metric metric: METRICS.values()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * Return all metrics that timed an operation as text, one line each.
+     * @return The report.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder(HEADER).append('\n');
+        for(Metric metric: METRICS.values()) {
+            if(metric.getCount() > 0) {
+                report.append(metric).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Write the report to a file, replacing the file.
+     * @param file The file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void dump(File file) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+                file.toPath(), StandardCharsets.UTF_8))) {
+            out.print(report());
+        }
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, so that they can
+     * be read by JMX clients such as JConsole. Metrics created later are
+     * registered as well. Nothing is done if already registered.
+     */
+    public static synchronized void registerMBeans() {
+        if(registered) {
+            return;
+        }
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new Control(), new ObjectName("Model:type=Metrics"));
+        }
+        catch(JMException ex) {
+            System.err.println("Metrics not registered: " + ex.getMessage());
+        }
+        for(Metric metric: METRICS.values()) {
+            register(metric);
+        }
+    }
+
+    private static void register(Metric metric) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(metric, new ObjectName(
+                    "Model:type=Metric,name=" + ObjectName.quote(metric.getName())));
+        }
+        catch(JMException ex) {
+            System.err.println("Metric not registered: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * A Control object manages all metrics over JMX
+     */
+    private static class Control implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public String getReport() {
+            return report();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        @Override
+        public void dump(String filename) throws IOException {
+            Metrics.dump(new File(filename));
+        }
+    }
+}
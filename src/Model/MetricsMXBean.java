@@ -0,0 +1,43 @@
+package Model;
+
+import java.io.IOException;
+
+/**
+ * The management interface of all metrics, registered over JMX by
+ * Metrics.registerMBeans under the name Model:type=Metrics.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public interface MetricsMXBean {
+
+    /**
+     * Determine whether operations are timed.
+     * @return true if operations are timed, false otherwise.
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop timing operations.
+     * @param enabled true to time operations, false otherwise.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Return all metrics as text, one line per operation.
+     * @return The report.
+     */
+    String getReport();
+
+    /**
+     * Forget the operations timed so far by all metrics.
+     */
+    void reset();
+
+    /**
+     * Write the report to a file.
+     * @param filename The name of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    void dump(String filename) throws IOException;
+}
@@ -0,0 +1,139 @@
+package Model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * An NGramIndex is an inverted index from the trigrams of a text to the
+ * items having that text. It is used to narrow down the candidates of a
+ * substring search before the match is verified.
+ * The texts are folded (lower case, accents removed) before indexing, so
+ * the same index serves case sensitive and case insensitive searches.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ * @param <T> The type of the indexed items.
+ */
+class NGramIndex<T> {
+
+    private static final int GRAM = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final HashMap<String, ArrayList<T>> postings;
+
+    /**
+     * Constructor, creates an empty index.
+     */
+    NGramIndex() {
+        this.postings = new HashMap<>();
+    }
+
+    /**
+     * Add an item to the index. An item added twice is listed twice for
+     * each gram, and stays indexed until it is removed twice.
+     * @param item The item to be indexed.
+     * @param text The text of the item.
+     */
+    void add(T item, String text) {
+        for(String gram: grams(fold(text))) {
+            ArrayList<T> items = postings.get(gram);
+            if(items == null) {
+                items = new ArrayList<>(2);
+                postings.put(gram, items);
+            }
+            items.add(item);
+        }
+    }
+
+    /**
+     * Remove an item that was indexed with the specified text.
+     * @param item The item to be removed.
+     * @param text The text the item was indexed with.
+     */
+    void remove(T item, String text) {
+        for(String gram: grams(fold(text))) {
+            ArrayList<T> items = postings.get(gram);
+            if(items == null) {
+                continue;
+            }
+            // Recently added items are the most likely ones to be removed
+            for(int i = items.size() - 1; i >= 0; i--) {
+                if(items.get(i) == item) {
+                    items.remove(i);
+                    break;
+                }
+            }
+            if(items.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Remove all items from the index.
+     */
+    void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Return the items that may contain the query. Every item whose folded
+     * text contains the folded query is among the candidates, the match
+     * must still be verified by the caller.
+     * @param query The text to be searched.
+     * @return The candidates in the order they were added, not in the order
+     * of the collection, or null if the query is too short to be looked up
+     * in the index.
+     */
+    List<T> candidates(String query) {
+        HashSet<String> grams = grams(fold(query));
+
+        if(grams.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<T> rarest = null;
+        for(String gram: grams) {
+            ArrayList<T> items = postings.get(gram);
+            if(items == null) {
+                return new ArrayList<>();
+            }
+            if(rarest == null || items.size() < rarest.size()) {
+                rarest = items;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Fold a text for case and accent insensitive comparison.
+     * @param text The text to be folded.
+     * @return The text in lower case without accents.
+     */
+    static String fold(String text) {
+        boolean ascii = true;
+
+        for(int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if(!ascii) {
+            text = MARKS.matcher(Normalizer.normalize(text,
+                    Normalizer.Form.NFD)).replaceAll("");
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static HashSet<String> grams(String folded) {
+        HashSet<String> grams = new HashSet<>();
+
+        for(int i = 0; i + GRAM <= folded.length(); i++) {
+            grams.add(folded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
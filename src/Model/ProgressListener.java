@@ -0,0 +1,18 @@
+package Model;
+
+/**
+ * A ProgressListener is notified about the progress of a long operation,
+ * such as saving a library.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public interface ProgressListener {
+
+    /**
+     * Called when more work has been done. May be called from any thread.
+     * @param done The amount of work done.
+     * @param total The total amount of work.
+     */
+    void progress(long done, long total);
+}
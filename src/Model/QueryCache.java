@@ -0,0 +1,175 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A QueryCache keeps the results of the latest searches of a collection,
+ * so that a repeated search does not compare the books again. The least
+ * recently used results are evicted when there are more than the maximum
+ * number of results or books. The collection empties the cache whenever
+ * it changes, renaming an author included. The methods are thread safe.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class QueryCache {
+
+    // The kinds of search that are cached
+    static final int TITLE = 0;
+    static final int AUTHOR = 1;
+    static final int ISBN = 2;
+
+    private final LinkedHashMap<Key, Result> results;
+    private int maxResults;
+    private final int maxBooks;
+    private long books;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor, creates an empty cache.
+     * @param maxResults The number of results kept, 0 disables the cache.
+     * @param maxBooks The number of books kept in all results. Larger
+     * results are not cached.
+     */
+    QueryCache(int maxResults, int maxBooks) {
+        // Iterated in access order, the eldest result is the least recently used
+        this.results = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxResults = maxResults;
+        this.maxBooks = maxBooks;
+    }
+
+    /**
+     * Return the cached result of a search.
+     * @param kind The kind of search, TITLE, AUTHOR or ISBN.
+     * @param query The text searched for.
+     * @param ignoreCase Whether case and accents were ignored.
+     * @return A copy of the books found, null if the search is not cached.
+     */
+    synchronized ArrayList<Book> get(int kind, String query,
+            boolean ignoreCase) {
+        Key key = new Key(kind, query, ignoreCase);
+        Result result = results.get(key);
+
+        if(result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(result.books);
+    }
+
+    /**
+     * Cache the result of a search.
+     * @param kind The kind of search, TITLE, AUTHOR or ISBN.
+     * @param query The text searched for.
+     * @param ignoreCase Whether case and accents were ignored.
+     * @param found The books found, copied by the cache.
+     */
+    synchronized void put(int kind, String query, boolean ignoreCase,
+            ArrayList<Book> found) {
+        if(maxResults == 0 || found.size() > maxBooks) {
+            return;
+        }
+        Key key = new Key(kind, query, ignoreCase);
+        remove(key);
+        results.put(key, new Result(new ArrayList<>(found)));
+        books += found.size();
+        evict();
+    }
+
+    /**
+     * Remove all results, called when the collection changes.
+     */
+    synchronized void clear() {
+        if(!results.isEmpty()) {
+            results.clear();
+            books = 0;
+        }
+    }
+
+    /**
+     * Change the number of results kept.
+     * @param maxResults The number of results, 0 disables the cache.
+     */
+    synchronized void setMaxResults(int maxResults) {
+        if(maxResults < 0) {
+            throw new IllegalArgumentException("Negative cache size: " +
+                    maxResults);
+        }
+        this.maxResults = maxResults;
+        evict();
+    }
+
+    synchronized int getMaxResults() {
+        return maxResults;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private void remove(Key key) {
+        Result removed = results.remove(key);
+        if(removed != null) {
+            books -= removed.books.size();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Result>> eldest = results.entrySet().iterator();
+        while(eldest.hasNext() &&
+                (results.size() > maxResults || books > maxBooks)) {
+            books -= eldest.next().getValue().books.size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A Key identifies a search by its kind, text and options
+     */
+    private static final class Key {
+        private final int kind;
+        private final String query;
+        private final boolean ignoreCase;
+
+        Key(int kind, String query, boolean ignoreCase) {
+            this.kind = kind;
+            this.query = query;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && ignoreCase == key.ignoreCase &&
+                    query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return (query.hashCode() * 31 + kind) * 2 + (ignoreCase ? 1 : 0);
+        }
+    }
+
+    /**
+     * A Result holds the books found by a search
+     */
+    private static final class Result {
+        private final ArrayList<Book> books;
+
+        Result(ArrayList<Book> books) {
+            this.books = books;
+        }
+    }
+}
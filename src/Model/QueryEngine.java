@@ -0,0 +1,336 @@
+package Model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The QueryEngine evaluates queries that no index can answer by comparing
+ * every book. Large lists are split into chunks that are compared in
+ * parallel by the common fork/join pool, small lists are compared on the
+ * calling thread since splitting them costs more than it saves. The books
+ * found are returned in the order of the list in both cases.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+final class QueryEngine {
+
+    // Lists shorter than this are scanned sequentially
+    static final int PARALLEL_THRESHOLD = 10000;
+
+    private QueryEngine() {
+    }
+
+    /**
+     * Return the items of a list matching a predicate, in the order of the
+     * list. The predicate may be called from several threads at once.
+     * @param items The items to be compared, should be a RandomAccess list.
+     * @param predicate The condition the items found fulfil.
+     * @return The items found.
+     */
+    static <T> ArrayList<T> filter(List<T> items,
+            Predicate<? super T> predicate) {
+        if(items.size() < PARALLEL_THRESHOLD || !(items instanceof RandomAccess)) {
+            ArrayList<T> found = new ArrayList<>();
+            for(T item: items) {
+                if(predicate.test(item)) {
+                    found.add(item);
+                }
+            }
+            return found;
+        }
+        // Splitting by position divides the list evenly, also for lists
+        // without a spliterator of their own
+        return IntStream.range(0, items.size()).parallel()
+                .mapToObj(new Element<>(items))
+                .filter(predicate)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Return a predicate for the books whose title contains a text.
+     * @param title The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The predicate.
+     */
+    static Predicate<Book> titleContains(String title, boolean ignoreCase) {
+        return new TitleContains(title, ignoreCase);
+    }
+
+    /**
+     * Return a predicate for the books having an author whose name contains
+     * a text.
+     * @param author The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The predicate.
+     */
+    static Predicate<Book> authorContains(String author, boolean ignoreCase) {
+        return new AuthorContains(author, ignoreCase);
+    }
+
+    /**
+     * Return a predicate for the books whose ISBN number contains a text,
+     * hyphens and spaces are ignored.
+     * @param isbn The text to be searched.
+     * @return The predicate.
+     */
+    static Predicate<Book> isbnContains(String isbn) {
+        return new IsbnMatches(Isbn.normalize(isbn), IsbnMatches.CONTAINS);
+    }
+
+    /**
+     * Return a predicate for the books with an ISBN number, ISBN-10 and
+     * ISBN-13 forms of a number match each other.
+     * @param isbn The ISBN number to be searched.
+     * @return The predicate.
+     */
+    static Predicate<Book> isbnEquals(String isbn) {
+        return new IsbnMatches(Isbn.canonical(isbn), IsbnMatches.EQUALS);
+    }
+
+    /**
+     * Return a predicate for the books whose ISBN number starts with a
+     * prefix, hyphens and spaces are ignored.
+     * @param prefix The beginning of the ISBN number.
+     * @return The predicate.
+     */
+    static Predicate<Book> isbnStartsWith(String prefix) {
+        return new IsbnMatches(Isbn.normalize(prefix), IsbnMatches.STARTS_WITH);
+    }
+
+    /**
+     * Return the positions from one position up to another, as a list to
+     * be filtered.
+     * @param from The first position.
+     * @param to The position after the last one.
+     * @return The positions.
+     */
+    static List<Integer> positions(int from, int to) {
+        return new Positions(from, to);
+    }
+
+    /**
+     * Return a predicate for the books with a price in a range.
+     * @param min The lowest price, inclusive.
+     * @param max The highest price, inclusive.
+     * @return The predicate.
+     */
+    static Predicate<Book> priceBetween(double min, double max) {
+        return new PriceBetween(min, max);
+    }
+
+    /**
+     * Return a predicate for the books with an edition in a range.
+     * @param min The lowest edition, inclusive.
+     * @param max The highest edition, inclusive.
+     * @return The predicate.
+     */
+    static Predicate<Book> editionBetween(int min, int max) {
+        return new EditionBetween(min, max);
+    }
+
+    /**
+     * An Element object returns the item at a position of a list
+     */
+    private static class Element<T> implements IntFunction<T> {
+
+        private final List<T> items;
+
+        Element(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public T apply(int index) {
+            return items.get(index);
+        }
+    }
+
+    /**
+     * A Positions object lists positions, to be filtered in parallel
+     */
+    private static class Positions extends AbstractList<Integer> 
+            implements RandomAccess {
+        private final int from;
+        private final int size;
+
+        Positions(int from, int to) {
+            this.from = from;
+            this.size = to - from;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return from + index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A TextMatch is a condition on one text of a book, the ISBN number,
+     * the title or the name of an author. It can be tested on the text
+     * alone, so a book stored in a file does not have to be created to be
+     * compared, see MappedBookList.filter.
+     */
+    abstract static class TextMatch implements Predicate<Book> {
+
+        private final SearchField field;
+
+        TextMatch(SearchField field) {
+            this.field = field;
+        }
+
+        /**
+         * Return the text of the books the condition is about.
+         * @return ISBN, TITLE or AUTHOR for the names of the authors.
+         */
+        SearchField getField() {
+            return field;
+        }
+
+        /**
+         * Determine whether a text fulfils the condition.
+         * @param text The ISBN number, the title or the name of an author.
+         * @return true if the text matches, false otherwise.
+         */
+        abstract boolean matches(String text);
+
+        @Override
+        public boolean test(Book book) {
+            switch(field) {
+                case ISBN:
+                    return matches(book.getIsbn());
+                case TITLE:
+                    return matches(book.getTitle());
+                default:
+                    for(Author author: book.authorList()) {
+                        if(matches(author.getName())) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * A TitleContains object matches the books whose title contains a text
+     */
+    private static class TitleContains extends TextMatch {
+
+        private final String query;
+        private final boolean ignoreCase;
+
+        TitleContains(String title, boolean ignoreCase) {
+            super(SearchField.TITLE);
+            this.query = ignoreCase ? NGramIndex.fold(title) : title;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        boolean matches(String text) {
+            return (ignoreCase ? NGramIndex.fold(text) : text).contains(query);
+        }
+    }
+
+    /**
+     * An AuthorContains object matches the books having an author whose
+     * name contains a text
+     */
+    private static class AuthorContains extends TextMatch {
+
+        private final String query;
+        private final boolean ignoreCase;
+
+        AuthorContains(String author, boolean ignoreCase) {
+            super(SearchField.AUTHOR);
+            this.query = ignoreCase ? NGramIndex.fold(author) : author;
+            this.ignoreCase = ignoreCase;
+        }
+
+        @Override
+        boolean matches(String name) {
+            return (ignoreCase ? NGramIndex.fold(name) : name).contains(query);
+        }
+    }
+
+    /**
+     * An IsbnMatches object matches the books whose ISBN number contains,
+     * equals or starts with a text
+     */
+    private static class IsbnMatches extends TextMatch {
+
+        static final int CONTAINS = 0;
+        static final int EQUALS = 1;
+        static final int STARTS_WITH = 2;
+
+        private final String query;
+        private final int match;
+
+        IsbnMatches(String query, int match) {
+            super(SearchField.ISBN);
+            this.query = query;
+            this.match = match;
+        }
+
+        @Override
+        boolean matches(String isbn) {
+            switch(match) {
+                case EQUALS:
+                    return Isbn.canonical(isbn).equals(query);
+                case STARTS_WITH:
+                    return Isbn.normalize(isbn).startsWith(query);
+                default:
+                    return Isbn.normalize(isbn).contains(query);
+            }
+        }
+    }
+
+    /**
+     * A PriceBetween object matches the books with a price in a range
+     */
+    private static class PriceBetween implements Predicate<Book> {
+
+        private final double min;
+        private final double max;
+
+        PriceBetween(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            return book.getPrice() >= min && book.getPrice() <= max;
+        }
+    }
+
+    /**
+     * An EditionBetween object matches the books with an edition in a range
+     */
+    private static class EditionBetween implements Predicate<Book> {
+
+        private final int min;
+        private final int max;
+
+        EditionBetween(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(Book book) {
+            return book.getEdition() >= min && book.getEdition() <= max;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package Model;
+
+/**
+ * A SearchField is the property of the books searched by 
+ * CollectionOfBooks.search.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public enum SearchField {
+    
+    /**
+     * The ISBN number. A complete ISBN number is matched exactly, other
+     * text matches any part of the ISBN number. Hyphens and spaces are
+     * ignored.
+     */
+    ISBN,
+    
+    /**
+     * Any part of the title.
+     */
+    TITLE,
+    
+    /**
+     * Any part of the name of one of the authors.
+     */
+    AUTHOR
+}
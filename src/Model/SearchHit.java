@@ -0,0 +1,65 @@
+package Model;
+
+import java.util.ArrayList;
+
+/**
+ * A SearchHit is a book found by a FederatedSearch, together with the
+ * names of the libraries holding a book with its ISBN number.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class SearchHit {
+
+    private final Book book;
+    private final ArrayList<String> libraries;
+
+    /**
+     * Constructor, creates a hit found in one library.
+     * @param book The book found.
+     * @param library The name of the library the book was found in.
+     */
+    public SearchHit(Book book, String library) {
+        this.book = book;
+        this.libraries = new ArrayList<>(1);
+        this.libraries.add(library);
+    }
+
+    /**
+     * Return the book found, the one of the first library that found it.
+     * @return The book.
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Return the name of the first library the book was found in.
+     * @return The name of the library.
+     */
+    public synchronized String getLibrary() {
+        return libraries.get(0);
+    }
+
+    /**
+     * Return the names of all libraries the book was found in, in the order
+     * they were found, separated by commas.
+     * @return The names of the libraries.
+     */
+    public synchronized String getLibraries() {
+        return String.join(", ", libraries);
+    }
+
+    /**
+     * Record that another library holds the book.
+     * @param library The name of the library.
+     */
+    synchronized void addLibrary(String library) {
+        libraries.add(library);
+    }
+
+    @Override
+    public String toString() {
+        return getLibraries() + ": " + book;
+    }
+}
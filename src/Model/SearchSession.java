@@ -0,0 +1,171 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A SearchSession searches a collection while a query is typed. When the
+ * query contains the previous query of the session and the collection has
+ * not changed since, only the books found by the previous query can match,
+ * so only those are compared if they are fewer than the books the indexes
+ * of the collection would narrow the search down to. Any other query is
+ * searched as by CollectionOfBooks.search, so the books found are the same
+ * but may be in another order. The methods are thread safe, searches of
+ * the same session run one after the other.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class SearchSession {
+
+    private final CollectionOfBooks library;
+    private SearchField field;
+    private String query;
+    private boolean ignoreCase;
+    private ArrayList<Book> found;
+    private long version;
+    private long refined;
+    private long searched;
+
+    /**
+     * Constructor, creates a session without a previous query.
+     * @param library The collection to be searched.
+     */
+    public SearchSession(CollectionOfBooks library) {
+        this.library = library;
+    }
+
+    /**
+     * Return the collection searched by the session.
+     * @return The collection.
+     */
+    public CollectionOfBooks getLibrary() {
+        return library;
+    }
+
+    /**
+     * Return the books matching a search, see CollectionOfBooks.search.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @return The books found.
+     */
+    public synchronized ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase) {
+        try {
+            return search(field, query, ignoreCase, null);
+        }
+        catch(InterruptedException ex) {
+            // Only a search with a sink is interrupted
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Return the books matching a search, see CollectionOfBooks.search
+     * with a sink. The books found are passed to the sink while the
+     * collection is still searched, the books found by the previous query
+     * once they are compared. An interrupted search does not change the
+     * previous query of the session.
+     * @param field The property of the books to be searched.
+     * @param query The text to be searched.
+     * @param ignoreCase true to ignore case and accents, false otherwise.
+     * @param sink The consumer of the books found, null to only return
+     * them.
+     * @return The books found.
+     * @throws InterruptedException If the thread is interrupted while the
+     * collection is searched, only with a sink.
+     */
+    public synchronized ArrayList<Book> search(SearchField field, String query,
+            boolean ignoreCase, Consumer<List<Book>> sink) 
+            throws InterruptedException {
+        ArrayList<Book> result = null;
+        long before = library.version();
+
+        if(refines(field, query, ignoreCase, before) &&
+                found.size() < library.searchCost(field, query)) {
+            result = QueryEngine.filter(found, matches(field, query, ignoreCase));
+            // A change while comparing could have been missed
+            if(library.version() != before) {
+                result = null;
+            }
+        }
+        if(result == null) {
+            result = sink == null ? library.search(field, query, ignoreCase) :
+                    library.search(field, query, ignoreCase, sink);
+            searched++;
+        }
+        else {
+            refined++;
+            if(sink != null && !result.isEmpty()) {
+                sink.accept(new ArrayList<>(result));
+            }
+        }
+        this.field = field;
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        this.found = result;
+        this.version = before;
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Forget the previous query, the next search compares all books.
+     */
+    public synchronized void reset() {
+        query = null;
+        found = null;
+    }
+
+    /**
+     * Return the number of searches that only compared the books found by
+     * the previous query.
+     * @return The number of refined searches.
+     */
+    public synchronized long getRefined() {
+        return refined;
+    }
+
+    /**
+     * Return the number of searches of the whole collection.
+     * @return The number of full searches.
+     */
+    public synchronized long getSearched() {
+        return searched;
+    }
+
+    /**
+     * Determine whether a query can be answered from the books found by the
+     * previous query. Complete ISBN numbers are always looked up, since
+     * they also match the other form of the number.
+     */
+    private boolean refines(SearchField field, String query,
+            boolean ignoreCase, long version) {
+        if(found == null || field != this.field ||
+                ignoreCase != this.ignoreCase || version != this.version) {
+            return false;
+        }
+        switch(field) {
+            case ISBN:
+                return !Isbn.isComplete(this.query) && 
+                        !Isbn.isComplete(query) && Isbn.normalize(query).
+                        contains(Isbn.normalize(this.query));
+            default:
+                return query.contains(this.query);
+        }
+    }
+
+    private Predicate<Book> matches(SearchField field, String query,
+            boolean ignoreCase) {
+        switch(field) {
+            case ISBN:
+                return QueryEngine.isbnContains(query);
+            case TITLE:
+                return QueryEngine.titleContains(query, ignoreCase);
+            default:
+                return QueryEngine.authorContains(query, ignoreCase);
+        }
+    }
+}
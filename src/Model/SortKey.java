@@ -0,0 +1,136 @@
+package Model;
+
+import java.util.Comparator;
+
+/**
+ * A SortKey is a property the books of a collection can be ordered by,
+ * see CollectionOfBooks.getBooks(SortKey).
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public enum SortKey implements Comparator<Book> {
+
+    /**
+     * The title, in the order of Book.compareTo.
+     */
+    TITLE("title") {
+        @Override
+        Object key(Book book) {
+            return book.getTitle();
+        }
+
+        @Override
+        int compareKey(Book book, Object key) {
+            return book.getTitle().compareTo((String) key);
+        }
+    },
+
+    /**
+     * The ISBN number.
+     */
+    ISBN("isbn") {
+        @Override
+        Object key(Book book) {
+            return book.getIsbn();
+        }
+
+        @Override
+        int compareKey(Book book, Object key) {
+            return book.getIsbn().compareTo((String) key);
+        }
+    },
+
+    /**
+     * The price, lowest first.
+     */
+    PRICE("price") {
+        @Override
+        Object key(Book book) {
+            return book.getPrice();
+        }
+
+        @Override
+        int compareKey(Book book, Object key) {
+            return Double.compare(book.getPrice(), (Double) key);
+        }
+
+        @Override
+        public int compare(Book first, Book second) {
+            return Double.compare(first.getPrice(), second.getPrice());
+        }
+    },
+
+    /**
+     * The edition, lowest first.
+     */
+    EDITION("edition") {
+        @Override
+        Object key(Book book) {
+            return book.getEdition();
+        }
+
+        @Override
+        int compareKey(Book book, Object key) {
+            return Integer.compare(book.getEdition(), (Integer) key);
+        }
+
+        @Override
+        public int compare(Book first, Book second) {
+            return Integer.compare(first.getEdition(), second.getEdition());
+        }
+    },
+
+    /**
+     * The name of the first author. Adding authors to a book does not
+     * change its first author, renaming it moves the books of the author,
+     * see SortedIndex.renamed.
+     */
+    AUTHOR(null) {
+        @Override
+        Object key(Book book) {
+            return book.authorList().get(0).getName();
+        }
+
+        @Override
+        int compareKey(Book book, Object key) {
+            return book.authorList().get(0).getName().compareTo((String) key);
+        }
+    };
+
+    private final String property;
+
+    private SortKey(String property) {
+        this.property = property;
+    }
+
+    @Override
+    public int compare(Book first, Book second) {
+        return compareKey(first, key(second));
+    }
+
+    /**
+     * Return the name of the book property that changes this key, as used
+     * in the property change events of a book.
+     * @return The name of the property, or null if no event changes it.
+     */
+    String getProperty() {
+        return property;
+    }
+
+    /**
+     * Return the value of this key for a book.
+     * @param book The book.
+     * @return The value of the key.
+     */
+    abstract Object key(Book book);
+
+    /**
+     * Compare the value of this key for a book with a value of the key.
+     * @param book The book.
+     * @param key A value of the key, as returned by key.
+     * @return A negative number, zero or a positive number if the book is
+     * ordered before, with or after the value.
+     */
+    abstract int compareKey(Book book, Object key);
+}
@@ -0,0 +1,262 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SortedIndex keeps the books of a collection ordered by a sort key.
+ * Books are inserted at their position and moved when their key changes,
+ * so the order never has to be sorted again. Books with equal keys stay
+ * in the order they were inserted. The listeners of the index are told
+ * about the changes in the sorted order.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+class SortedIndex {
+
+    private final SortKey key;
+    private final ArrayList<Book> books;
+    private final List<Book> readOnly;
+    private final ArrayList<CollectionListener> listeners;
+
+    /**
+     * Constructor, creates an index of books.
+     * @param key The order of the index.
+     * @param all The books to be indexed.
+     */
+    SortedIndex(SortKey key, List<Book> all) {
+        this.key = key;
+        this.books = new ArrayList<>(all);
+        this.readOnly = Collections.unmodifiableList(books);
+        this.listeners = new ArrayList<>();
+        Collections.sort(books, key);
+    }
+
+    /**
+     * Return a read only list of the books in sorted order, which follows
+     * the changes of the index.
+     * @return The sorted books.
+     */
+    List<Book> asList() {
+        return readOnly;
+    }
+
+    void addListener(CollectionListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(CollectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replace all books of the index.
+     * @param all The books to be indexed.
+     */
+    void rebuild(List<Book> all) {
+        books.clear();
+        books.addAll(all);
+        Collections.sort(books, key);
+        for(CollectionListener listener: listeners) {
+            listener.booksReset();
+        }
+    }
+
+    /**
+     * Insert a book after the books with the same key.
+     * @param book The book to be added.
+     */
+    void add(Book book) {
+        int index = upperBound(key.key(book));
+        books.add(index, book);
+        for(CollectionListener listener: listeners) {
+            listener.bookAdded(index);
+        }
+    }
+
+    /**
+     * Insert many books, after the books with the same keys. The books are
+     * sorted and merged with the index in one pass, and the listeners are
+     * told that the books were reset.
+     * @param added The books to be added.
+     */
+    void addAll(List<Book> added) {
+        ArrayList<Book> sorted = new ArrayList<>(added);
+        Collections.sort(sorted, key);
+        ArrayList<Book> merged = new ArrayList<>(books.size() + sorted.size());
+
+        int i = 0;
+        int j = 0;
+        while(i < books.size() && j < sorted.size()) {
+            if(key.compare(books.get(i), sorted.get(j)) <= 0) {
+                merged.add(books.get(i++));
+            }
+            else {
+                merged.add(sorted.get(j++));
+            }
+        }
+        merged.addAll(books.subList(i, books.size()));
+        merged.addAll(sorted.subList(j, sorted.size()));
+        books.clear();
+        books.addAll(merged);
+        for(CollectionListener listener: listeners) {
+            listener.booksReset();
+        }
+    }
+
+    /**
+     * Remove a book from the index.
+     * @param book The book to be removed.
+     */
+    void remove(Book book) {
+        int index = indexOf(book, key.key(book));
+        if(index >= 0) {
+            books.remove(index);
+            for(CollectionListener listener: listeners) {
+                listener.bookRemoved(index, book);
+            }
+        }
+    }
+
+    /**
+     * Move a book whose key has changed, or tell the listeners that a book
+     * has changed in place.
+     * @param book The changed book.
+     * @param property The name of the changed property.
+     * @param oldValue The value of the property before the change.
+     */
+    void changed(Book book, String property, Object oldValue) {
+        if(!property.equals(key.getProperty())) {
+            int index = listeners.isEmpty() ? -1 : indexOf(book, key.key(book));
+            if(index >= 0) {
+                for(CollectionListener listener: listeners) {
+                    listener.bookUpdated(index);
+                }
+            }
+            return;
+        }
+
+        int old = indexOf(book, oldValue);
+        if(old < 0) {
+            return;
+        }
+        books.remove(old);
+        int index = upperBound(key.key(book));
+        books.add(index, book);
+        for(CollectionListener listener: listeners) {
+            if(index == old) {
+                listener.bookUpdated(index);
+            }
+            else {
+                listener.bookRemoved(old, book);
+                listener.bookAdded(index);
+            }
+        }
+    }
+
+    /**
+     * Move the books of a renamed author when they are ordered by their
+     * first author, or tell the listeners that the books have changed in
+     * place. The books are removed and inserted again in the order they had.
+     * @param author The renamed author.
+     */
+    void renamed(Author author) {
+        if(key != SortKey.AUTHOR) {
+            for(int i = 0; i < books.size() && !listeners.isEmpty(); i++) {
+                if(books.get(i).authorList().indexOf(author) >= 0) {
+                    for(CollectionListener listener: listeners) {
+                        listener.bookUpdated(i);
+                    }
+                }
+            }
+            return;
+        }
+
+        ArrayList<Book> moved = new ArrayList<>();
+        int kept = 0;
+        for(int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            if(book.authorList().get(0) == author) {
+                moved.add(book);
+            }
+            else {
+                books.set(kept++, book);
+            }
+        }
+        if(moved.isEmpty()) {
+            return;
+        }
+        books.subList(kept, books.size()).clear();
+        for(Book book: moved) {
+            books.add(upperBound(key.key(book)), book);
+        }
+        for(CollectionListener listener: listeners) {
+            listener.booksReset();
+        }
+    }
+
+    /**
+     * Return the position of a book.
+     * @param book The book to be found.
+     * @param value The key of the book when it was inserted or last moved.
+     * @return The position, or -1 if the book is not in the index.
+     */
+    private int indexOf(Book book, Object value) {
+        for(int i = lowerBound(value, book); i < books.size() &&
+                compareAt(i, value, book) == 0; i++) {
+            if(books.get(i) == book) {
+                return i;
+            }
+        }
+        // The key changed without an event
+        for(int i = 0; i < books.size(); i++) {
+            if(books.get(i) == book) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int lowerBound(Object value, Book book) {
+        int low = 0;
+        int high = books.size();
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(compareAt(middle, value, book) < 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare the book at a position with a key. The book being looked up
+     * is still at the position of its old key, it is equal to that key.
+     */
+    private int compareAt(int index, Object value, Book book) {
+        Book other = books.get(index);
+        return other == book ? 0 : key.compareKey(other, value);
+    }
+
+    private int upperBound(Object value) {
+        int low = 0;
+        int high = books.size();
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(key.compareKey(books.get(middle), value) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
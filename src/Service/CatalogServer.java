@@ -0,0 +1,694 @@
+package Service;
+
+import Model.Author;
+import Model.Book;
+import Model.CatalogExporter;
+import Model.CollectionOfBooks;
+import Model.DaemonThreadFactory;
+import Model.ExportFormat;
+import Model.LibraryEngine;
+import Model.Metric;
+import Model.Metrics;
+import Model.SearchField;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CatalogServer answers HTTP requests about the books of a library with
+ * JSON, so other programs can query a catalogue. Books are written as the
+ * JSON objects of ExportFormat.JSON_LINES, one after the other, so large
+ * results are streamed without being formatted in memory first.
+ * <pre>
+ *   GET    /books?field=title&amp;q=java&amp;ignoreCase=true&amp;limit=100
+ *                          search isbn, title or author, see
+ *                          CollectionOfBooks.search, an array of books
+ *   GET    /books/ISBN     the books with an ISBN number, 404 if none
+ *   POST   /books          add the book sent as a JSON object with isbn,
+ *                          title, edition, price and authors, 413 if it
+ *                          is larger than 64 KB
+ *   DELETE /books/ISBN     remove the books with an ISBN number
+ *   GET    /stats          the times of all operations, see Metrics
+ * </pre>
+ * Every request is handled by a thread of its own, a virtual thread when
+ * the Java runtime has them (Java 21 and later). At most a fixed number
+ * of requests are handled at the same time, the others are answered with
+ * 503 Service Unavailable at once, so a burst of requests cannot exhaust
+ * the threads or the heap.
+ * <p>
+ * Usage: java -cp classes Service.CatalogServer [options] [library file]
+ * <pre>
+ *   -host 127.0.0.1        address listened to, 0.0.0.0 for all interfaces
+ *   -port 8080             port listened to
+ *   -max-in-flight 256     requests handled at the same time
+ * </pre>
+ * Books can be added and removed without authentication, so by default
+ * only programs on the same computer can connect. Without a library file
+ * the server starts with an empty library. The changes of a library file
+ * are saved to it when the server is stopped.
+ * @author
+ * @version 1.3
+ * @since 1.3
+ */
+public class CatalogServer {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Connections waiting to be accepted
+    private static final int BACKLOG = 1024;
+    private static final int DEFAULT_LIMIT = 1000;
+    // The largest book sent to be added, larger requests are refused
+    private static final int MAX_BODY = 1 << 16;
+    private static final String JSON = "application/json; charset=utf-8";
+    // Read by the JDK HttpServer when the first server is created
+    private static final String NO_DELAY = "sun.net.httpserver.nodelay";
+
+    private static final Metric SEARCH =
+            Metrics.metric("CatalogServer.search");
+    private static final Metric LOOKUP =
+            Metrics.metric("CatalogServer.lookup");
+    private static final Metric ADD = Metrics.metric("CatalogServer.add");
+    private static final Metric REMOVE =
+            Metrics.metric("CatalogServer.remove");
+
+    private final CollectionOfBooks library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final AtomicLong rejected;
+
+    /**
+     * Constructor, creates a server that is not started yet.
+     * @param library The library queried.
+     * @param address The address listened to, port 0 picks a free port.
+     * @param maxInFlight The number of requests handled at the same time.
+     * @throws IOException If the address cannot be listened to.
+     */
+    public CatalogServer(CollectionOfBooks library, InetSocketAddress address,
+            int maxInFlight) throws IOException {
+        this.library = library;
+        // The headers and the body of an answer are written separately, so
+        // without TCP_NODELAY every small answer waits for a delayed ACK
+        if(System.getProperty(NO_DELAY) == null) {
+            System.setProperty(NO_DELAY, "true");
+        }
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = newExecutor();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.rejected = new AtomicLong();
+        server.createContext("/books", new BooksHandler());
+        server.createContext("/stats", new StatsHandler());
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws Exception {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = 8080;
+        int maxInFlight = 256;
+        File file = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-host":
+                    host = InetAddress.getByName(args[++i]);
+                    break;
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-max-in-flight":
+                    maxInFlight = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    file = new File(args[i]);
+                    break;
+            }
+        }
+
+        LibraryEngine engine = new LibraryEngine();
+        int lib = engine.createLibrary(file != null ? file.getName() : "Library");
+        if(file != null) {
+            int recovered = engine.loadFile(lib, file);
+            System.out.println(engine.getLibrary(lib).getSize() + " books, " +
+                    recovered + " unsaved changes recovered");
+        }
+        CatalogServer server = new CatalogServer(engine.getLibrary(lib),
+                new InetSocketAddress(host, port), maxInFlight);
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                new Shutdown(server, engine), "Catalog shutdown"));
+        server.start();
+        System.out.println("Serving " + engine.getName(lib) + " on " +
+                host.getHostAddress() + " port " + server.getPort());
+    }
+
+    /**
+     * Start answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop answering requests.
+     * @param delay The seconds to wait for the requests being handled.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Return the port listened to.
+     * @return The port, also when it was picked by the system.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Return the number of requests answered with 503 because too many
+     * requests were handled at the time.
+     * @return The number of rejected requests.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Return an executor starting a virtual thread per request if the Java
+     * runtime has them, otherwise one reusing idle threads.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(
+                    new DaemonThreadFactory("Catalog request"));
+        }
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> params;
+        try {
+            params = parameters(exchange);
+        }
+        catch(IllegalArgumentException ex) {
+            error(exchange, 400, "Malformed query: " + ex.getMessage());
+            return;
+        }
+        String query = params.get("q");
+        SearchField field;
+        try {
+            field = SearchField.valueOf(params.getOrDefault("field", "title").
+                    toUpperCase(Locale.ROOT));
+        }
+        catch(IllegalArgumentException ex) {
+            error(exchange, 400, "field must be isbn, title or author");
+            return;
+        }
+        if(query == null || query.isEmpty()) {
+            error(exchange, 400, "q is missing");
+            return;
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(params.getOrDefault("limit",
+                    Integer.toString(DEFAULT_LIMIT)));
+        }
+        catch(NumberFormatException ex) {
+            limit = -1;
+        }
+        if(limit < 0) {
+            error(exchange, 400, "limit must be a number of 0 or more");
+            return;
+        }
+        boolean ignoreCase = Boolean.parseBoolean(params.get("ignoreCase"));
+
+        long start = SEARCH.start();
+        ArrayList<Book> found;
+        try {
+            found = library.search(field, query, ignoreCase, limit);
+        }
+        catch(InterruptedException ex) {
+            // The server is stopping
+            Thread.currentThread().interrupt();
+            error(exchange, 503, "Search canceled");
+            return;
+        }
+        finally {
+            SEARCH.stop(start);
+        }
+        books(exchange, 200, found);
+    }
+
+    private void lookup(HttpExchange exchange, String isbn) throws IOException {
+        long start = LOOKUP.start();
+        ArrayList<Book> found = library.getBooksByExactIsbn(isbn);
+        LOOKUP.stop(start);
+        books(exchange, found.isEmpty() ? 404 : 200, found);
+    }
+
+    private void add(HttpExchange exchange) throws IOException {
+        String body = read(exchange);
+        if(body == null) {
+            error(exchange, 413, "Book larger than " + MAX_BODY + " bytes");
+            return;
+        }
+        Book book;
+        try {
+            book = new JsonBook(body).parse();
+        }
+        catch(IllegalArgumentException ex) {
+            error(exchange, 400, ex.getMessage());
+            return;
+        }
+        long start = ADD.start();
+        library.addBook(book);
+        ADD.stop(start);
+        ArrayList<Book> added = new ArrayList<>();
+        added.add(book);
+        books(exchange, 201, added);
+    }
+
+    private void remove(HttpExchange exchange, String isbn) throws IOException {
+        long start = REMOVE.start();
+        int removed = 0;
+        for(Book book: library.getBooksByExactIsbn(isbn)) {
+            if(library.removeBook(book)) {
+                removed++;
+            }
+        }
+        REMOVE.stop(start);
+        send(exchange, removed == 0 ? 404 : 200, "{\"removed\":" + removed + "}");
+    }
+
+    /**
+     * Send books as a JSON array, each book is written as soon as it is
+     * formatted.
+     */
+    private static void books(HttpExchange exchange, int status,
+            List<Book> books) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        // A length of 0 sends the body in chunks of unknown total length
+        exchange.sendResponseHeaders(status, 0);
+        CatalogExporter exporter = new CatalogExporter(ExportFormat.JSON_LINES);
+        try(Writer out = new BufferedWriter(new OutputStreamWriter(
+                exchange.getResponseBody(), StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+            out.write('[');
+            for(int i = 0; i < books.size(); i++) {
+                if(i > 0) {
+                    out.write(',');
+                }
+                exporter.write(books.get(i), out);
+            }
+            out.write(']');
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status,
+            String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+        for(char c: message.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c < 0x20 ? ' ' : c);
+        }
+        send(exchange, status, json.append("\"}").toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Return the parameters of the query string of a request.
+     */
+    private static Map<String, String> parameters(HttpExchange exchange)
+            throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) {
+            return params;
+        }
+        for(String pair: query.split("&")) {
+            int equals = pair.indexOf('=');
+            if(equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Return the body of a request, or null if it is larger than MAX_BODY.
+     * A body announced to be too large is not read at all.
+     */
+    private static String read(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if(length != null && Long.parseLong(length.trim()) > MAX_BODY) {
+                return null;
+            }
+        }
+        catch(NumberFormatException ex) {
+            // Read and counted below
+        }
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while((n = in.read(buffer)) > 0) {
+            if(bytes.size() + n > MAX_BODY) {
+                return null;
+            }
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A BooksHandler object answers the requests about books, unless too
+     * many requests are handled already
+     */
+    private class BooksHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if(!inFlight.tryAcquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                error(exchange, 503, "Too many requests");
+                return;
+            }
+            try {
+                route(exchange);
+            }
+            catch(RuntimeException ex) {
+                // Requests are checked before they are answered, this is a
+                // bug, and an answer that has started cannot be replaced
+                ex.printStackTrace();
+                if(exchange.getResponseCode() < 0) {
+                    error(exchange, 500, "Internal error");
+                }
+            }
+            finally {
+                inFlight.release();
+                exchange.close();
+            }
+        }
+
+        private void route(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String isbn = path.startsWith("/books/") ?
+                    path.substring("/books/".length()) : "";
+
+            if(path.equals("/books") || path.equals("/books/")) {
+                if(method.equals("GET")) {
+                    search(exchange);
+                    return;
+                }
+                if(method.equals("POST")) {
+                    add(exchange);
+                    return;
+                }
+            }
+            else if(!isbn.isEmpty() && isbn.indexOf('/') < 0) {
+                if(method.equals("GET")) {
+                    lookup(exchange, isbn);
+                    return;
+                }
+                if(method.equals("DELETE")) {
+                    remove(exchange, isbn);
+                    return;
+                }
+            }
+            else {
+                error(exchange, 404, "Not found: " + path);
+                return;
+            }
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Allow", isbn.isEmpty() ? "GET, POST" : "GET, DELETE");
+            error(exchange, 405, "Method not allowed: " + method);
+        }
+    }
+
+    /**
+     * A StatsHandler object answers with the times of all operations
+     */
+    private static class StatsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] bytes = Metrics.report().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        }
+    }
+
+    /**
+     * A JsonBook object reads a book from a JSON object with the fields
+     * isbn, title, edition, price and authors, an array of names. Other
+     * fields are ignored.
+     */
+    private static class JsonBook {
+        private final String json;
+        private int pos;
+
+        public JsonBook(String json) {
+            this.json = json;
+        }
+
+        public Book parse() {
+            String isbn = null;
+            String title = null;
+            double edition = 0;
+            double price = 0;
+            List<String> authors = new ArrayList<>();
+
+            expect('{');
+            for(boolean first = true; !next('}'); first = false) {
+                if(!first) {
+                    expect(',');
+                }
+                String name = string();
+                expect(':');
+                switch(name) {
+                    case "isbn":
+                        isbn = string();
+                        break;
+                    case "title":
+                        title = string();
+                        break;
+                    case "edition":
+                        edition = number();
+                        break;
+                    case "price":
+                        price = number();
+                        break;
+                    case "authors":
+                        expect('[');
+                        while(!next(']')) {
+                            if(!authors.isEmpty()) {
+                                expect(',');
+                            }
+                            authors.add(string());
+                        }
+                        break;
+                    default:
+                        skip();
+                        break;
+                }
+            }
+            if(authors.isEmpty()) {
+                throw new IllegalArgumentException("authors is missing");
+            }
+            if(edition != Math.rint(edition)) {
+                throw new IllegalArgumentException("edition is not a number");
+            }
+            Book book = new Book(isbn, title, (int) edition, price,
+                    Author.valueOf(authors.get(0)));
+            for(int i = 1; i < authors.size(); i++) {
+                book.addAuthor(authors.get(i));
+            }
+            return book;
+        }
+
+        /**
+         * Skip spaces and consume a character if it is the next one.
+         */
+        private boolean next(char c) {
+            spaces();
+            if(pos < json.length() && json.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void spaces() {
+            while(pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void expect(char c) {
+            if(!next(c)) {
+                throw new IllegalArgumentException("Invalid JSON, expected " +
+                        c + " at " + pos);
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while(pos < json.length() && json.charAt(pos) != '"') {
+                char c = json.charAt(pos++);
+                if(c == '\\' && pos < json.length()) {
+                    c = json.charAt(pos++);
+                    switch(c) {
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'u':
+                            if(pos + 4 > json.length()) {
+                                throw new IllegalArgumentException(
+                                        "Invalid JSON escape at " + pos);
+                            }
+                            c = (char) Integer.parseInt(
+                                    json.substring(pos, pos + 4), 16);
+                            pos += 4;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                value.append(c);
+            }
+            expect('"');
+            return value.toString();
+        }
+
+        private double number() {
+            spaces();
+            int begin = pos;
+            literal();
+            try {
+                return Double.parseDouble(json.substring(begin, pos));
+            }
+            catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid JSON number at " +
+                        begin);
+            }
+        }
+
+        /**
+         * Skip a value of a field that is not read: a string, a number, a
+         * literal or an array of those.
+         */
+        private void skip() {
+            if(next('[')) {
+                for(boolean first = true; !next(']'); first = false) {
+                    if(!first) {
+                        expect(',');
+                    }
+                    skip();
+                }
+            }
+            else if(pos < json.length() && json.charAt(pos) == '"') {
+                string();
+            }
+            else if(literal() == 0) {
+                throw new IllegalArgumentException("Invalid JSON value at " +
+                        pos);
+            }
+        }
+
+        /**
+         * Skip a number, true, false or null.
+         * @return The number of characters skipped.
+         */
+        private int literal() {
+            int begin = pos;
+            while(pos < json.length() &&
+                    (Character.isLetterOrDigit(json.charAt(pos)) ||
+                    "+-.".indexOf(json.charAt(pos)) >= 0)) {
+                pos++;
+            }
+            return pos - begin;
+        }
+    }
+
+    /**
+     * A Shutdown object stops the server, saves the changes of the library
+     * to its file and closes the journal when the program is stopped. If
+     * the library cannot be saved its changes stay in the journal
+     */
+    private static class Shutdown implements Runnable {
+        private final CatalogServer server;
+        private final LibraryEngine engine;
+
+        public Shutdown(CatalogServer server, LibraryEngine engine) {
+            this.server = server;
+            this.engine = engine;
+        }
+
+        @Override
+        public void run() {
+            server.stop(1);
+            for(CollectionOfBooks library: engine.getLibraries()) {
+                try {
+                    library.compact();
+                }
+                catch(IOException ex) {
+                    System.err.println("Library not saved: " + ex.getMessage());
+                }
+            }
+            try {
+                engine.closeJournals();
+            }
+            catch(IOException ex) {
+                System.err.println("Journal not closed: " + ex.getMessage());
+            }
+        }
+    }
+}
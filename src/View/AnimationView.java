@@ -15,16 +15,25 @@ import javafx.util.Duration;
  */
 public class AnimationView {
     private VBox root;
-    private String image;
+    private Image picture;
+    private double height;
+    private double width;
     
     /**
      * Constructor of AnimationView
+     * The picture is decoded in the background at the size shown, so the
+     * window can be shown before it is loaded
      * @param root The pane for the image
      * @param image The picture selected to show in the animation
+     * @param height The height of the image
+     * @param width The width of the image
      */
-    public AnimationView(VBox root, String image) {
+    public AnimationView(VBox root, String image, double height, double width) {
         this.root = root;
-        this.image = image;
+        this.height = height;
+        this.width = width;
+        this.picture = new Image(this.getClass().getResource("/resources/" + image).
+                toString(), width, height, false, true, true);
     }
     
     /**
@@ -57,15 +66,11 @@ public class AnimationView {
     
     /**
      * Create an image for the animation effect
-     * @param height The height of the image
-     * @param width The width of the image
+     * The image is empty until the picture is loaded
      * @return img  The image in the animation
      */
-    public ImageView createImage(double height, double width) {
-        Image images = new Image(this.getClass().getResource("/resources/" + this.image).
-                toString());
-        
-        ImageView img = new ImageView(images);
+    public ImageView createImage() {
+        ImageView img = new ImageView(picture);
         img.setFitHeight(height);
         img.setFitWidth(width);
         return img;
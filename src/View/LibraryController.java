@@ -1,14 +1,36 @@
 package View;
 
 import Model.Book;
+import Model.CatalogImporter;
 import Model.CollectionOfBooks;
+import Model.DaemonThreadFactory;
+import Model.FederatedSearch;
+import Model.ImportReport;
+import Model.LibraryEngine;
+import Model.Metric;
+import Model.Metrics;
+import Model.ProgressListener;
+import Model.SearchField;
+import Model.SearchHit;
+import Model.SearchSession;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
 import javafx.animation.PathTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Tab;
@@ -28,51 +50,81 @@ import javafx.stage.Stage;
  * @author 
  */
 public class LibraryController {
-    private ArrayList<CollectionOfBooks> libraries;
+    private final LibraryEngine engine;
     private Stage primaryStage;
     private LibraryView library;
     private ObservableList<Book> data;
+    private final ExecutorService saver;
+    private final ExecutorService searcher;
+    private SearchTask search;
+    // Refines the results of the library searched last while typing
+    private SearchSession session;
+    private FederatedTask federated;
+    
+    // Results are shown in chunks growing from FIRST_CHUNK to MAX_CHUNK books
+    private static final int FIRST_CHUNK = 64;
+    private static final int MAX_CHUNK = 4096;
+    // The times of the operations of the user, see Metrics
+    private static final Metric SEARCH_BOOK = 
+            Metrics.metric("LibraryController.searchBook");
+    private static final Metric SEARCH_ALL = 
+            Metrics.metric("LibraryController.searchAll");
+    private static final Metric LOAD_FILE = 
+            Metrics.metric("LibraryController.loadFile");
+    private static final Metric IMPORT_CATALOG = 
+            Metrics.metric("LibraryController.importCatalog");
+    private static final Metric EXPORT_TABLE = 
+            Metrics.metric("LibraryController.exportTable");
     
     /**
      * Constructor of LibraryController
-     * @param libraries The libraries(tabs) to show
+     * @param engine The libraries(tabs) to show
      * @param primaryStage  The stage of the GUI
      * @param library The GUI
      */
-    public LibraryController(ArrayList<CollectionOfBooks> libraries, 
-            Stage primaryStage, LibraryView library) {
-        this.libraries = libraries;
+    public LibraryController(LibraryEngine engine, Stage primaryStage, 
+            LibraryView library) {
+        this.engine = engine;
         this.primaryStage = primaryStage;
         this.library = library;
+        this.saver = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), 
+                new DaemonThreadFactory("Library save"));
+        this.searcher = Executors.newCachedThreadPool(
+                new DaemonThreadFactory("Library search"));
     }
     
     /**
      * Update the table view
-     * Reload the items(books) in the observable array list
+     * Show the library again instead of search results, the table follows
+     * the changes of the library by itself
      * @param lib The index of tab(library Array List)
      */
     public void updateTableView(int lib) {
+        cancelSearch();
         if(library.getSelectedTab() < 0) {
             throw new ArrayIndexOutOfBoundsException("No libraries created");
         }
-        if(libraries.get(lib).getSize() == 0) {
+        if(engine.getLibrary(lib).getSize() == 0) {
             library.showAlert("No results");
         }
-        else {
-            data = FXCollections.observableArrayList(libraries.get(lib).getBooks());
+        // Only the rows shown by the table are read from the library, in
+        // read mode only those are decoded from the file
+        data = library.getLibraryLists().get(lib);
+        if(library.getTables().get(lib).getItems() != data) {
             library.getTables().get(lib).setItems(data);
         }
     }
     /**
      * Update the table view after search in a certain library(tab)
-     * @param temp The search result saved in a temporary array list
+     * @param found The books found by the search
      */
-    public void updateSearchView(CollectionOfBooks temp) {
-        if(temp.getSize() == 0) {
+    public void updateSearchView(ArrayList<Book> found) {
+        if(found.isEmpty()) {
             library.showAlert("No results");
         }
         else {
-            data = FXCollections.observableArrayList(temp.getBooks());
+            data = FXCollections.observableArrayList(found);
             library.getTables().get(library.getSelectedTab()).setItems(data);
         }
     }
@@ -84,17 +136,17 @@ public class LibraryController {
      * @param fileChooser The file chooser
      * @param tabs The tabs
      */
-    public void trySave(Dialog exitSave, FileChooser fileChooser, ArrayList<Tab> tabs) {
-        Optional result = exitSave.showAndWait();
-        int temp = (int) result.get();
+    public void trySave(Dialog<Integer> exitSave, FileChooser fileChooser, 
+            ArrayList<Tab> tabs) {
+        Optional<Integer> result = exitSave.showAndWait();
+        int temp = result.get();
             
         switch(temp) {
             case 0:
                 break;
             case 1:
                 try {
-                    saveAs(fileChooser, tabs);
-                    primaryStage.close();
+                    closeWhenSaved(saveAs(fileChooser, tabs));
                 }
                 catch (NullPointerException ex) {
                     library.showAlert(ex.getMessage());
@@ -102,6 +154,7 @@ public class LibraryController {
                 }
                 break;
             case 2:
+                discardJournals();
                 primaryStage.close();
                 break;
             default:
@@ -112,54 +165,107 @@ public class LibraryController {
     /**
      * Invoke a dialog window when user closes a tab(library) 
      * Let user to choose a path and save changes in a file
+     * The library is saved in the background
      * @param fileChooser The file chooser
      * @param selected The library(tab) selected by user to shutdown
+     * @return task The task saving the library
      */
-    public void saveTabAs(FileChooser fileChooser, int selected) {
+    public SaveTask saveTabAs(FileChooser fileChooser, int selected) {
         fileChooser.setTitle("Save file");
         File name = fileChooser.showSaveDialog(primaryStage);
         if(name == null) {
             throw new NullPointerException("Save canceled");
         }
-        try {
-            libraries.get(selected).serializeToFile(name);
-        } 
-        catch (IOException ex) {
-            library.showAlert(ex.getMessage());
-            primaryStage.close();
-        }
+        return save(selected, name);
     }
     
     /**
      * Invoke a dialog Window when user click Exit
      * Let user to choose paths and save all libraries(tabs) in files
+     * The libraries are saved in the background at the same time
      * @param fileChooser The file Chooser
      * @param tabs The tabs(all)
+     * @return saves The tasks saving the libraries
      */
-    public void saveAs(FileChooser fileChooser, ArrayList<Tab> tabs) {
+    public ArrayList<SaveTask> saveAs(FileChooser fileChooser, ArrayList<Tab> tabs) {
+        ArrayList<SaveTask> saves = new ArrayList<>();
+        
         for(int i = 0; i < tabs.size(); i++) {
             fileChooser.setTitle("Save file library: " + (i+1));
-            if(libraries.get(i).getSize() > 0) {
+            if(engine.getLibrary(i).getSize() > 0) {
                 File name = fileChooser.showSaveDialog(primaryStage);
                 if(name == null) {
                     throw new NullPointerException("Save canceled");
                 }
-                try {
-                    libraries.get(i).serializeToFile(name);
-                } 
-                catch (IOException ex) {
-                    library.showAlert(ex.getMessage());
-                    primaryStage.close();
-                }
+                saves.add(save(i, name));
             }
         }
+        return saves;
+    }
+    
+    /**
+     * Save a library in the background
+     * The books are copied first, so the library can be changed while saved
+     * @param lib The index of tab(library Array List)
+     * @param name The file to save to
+     * @return task The task saving the library
+     */
+    private SaveTask save(int lib, File name) {
+        SaveTask task = new SaveTask(engine.getLibrary(lib), name);
+        task.setOnFailed(new SaveFailedHandler());
+        library.showProgress(task, "Saving " + name.getName());
+        saver.execute(task);
+        return task;
+    }
+    
+    /**
+     * Close the window when all saves have succeeded
+     * The window stays open if a save fails
+     * @param saves The tasks saving the libraries
+     */
+    private void closeWhenSaved(ArrayList<SaveTask> saves) {
+        if(saves.isEmpty()) {
+            closeJournals();
+            primaryStage.close();
+            return;
+        }
+        SavedHandler handler = new SavedHandler(saves.size());
+        for(SaveTask task: saves) {
+            task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, handler);
+        }
+    }
+    
+    /**
+     * Close the journals of all libraries when the program exits
+     * The changes not saved stay in the journals
+     */
+    private void closeJournals() {
+        try {
+            engine.closeJournals();
+        }
+        catch(IOException ex) {
+            System.err.println("Journal not closed: " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Delete the journals of all libraries when the program exits
+     * The changes not saved have been discarded by the user
+     */
+    private void discardJournals() {
+        try {
+            engine.discardJournals();
+        }
+        catch(IOException ex) {
+            System.err.println("Journal not deleted: " + ex.getMessage());
+        }
     }
     
     /**
      * Remove a book from the table
      * @param tables The tables in table view area
      */
-    public void removeBook(ArrayList<TableView> tables) {
+    public void removeBook(ArrayList<TableView<Book>> tables) {
         int selected = library.getSelectedTab();
         updateTableView(selected);
         int index = tables.get(selected).getSelectionModel().
@@ -169,9 +275,8 @@ public class LibraryController {
             library.showAlert("Select book");
         }
         else {
-            Book temp = (Book) data.get(index);
-            data.remove(temp);
-            libraries.get(selected).removeBook(temp);
+            Book temp = data.get(index);
+            engine.removeBook(selected, temp);
             tables.get(selected).getSelectionModel().clearSelection();
         }
     }
@@ -180,7 +285,7 @@ public class LibraryController {
      * Re-order the book items in the table
      */
     public void sortBooks() {
-        libraries.get(library.getSelectedTab()).sortBooks();
+        engine.sortBooks(library.getSelectedTab());
         updateTableView(library.getSelectedTab());
     }
     
@@ -189,7 +294,8 @@ public class LibraryController {
      * @param tabView The tab pane
      */
     public void createLibrary(TabPane tabView) {
-        libraries.add(new CollectionOfBooks());
+        engine.setOffHeap(library.isOffHeap());
+        engine.createLibrary("Library " + (engine.getSize() + 1));
         tabView.getTabs().add(library.createTab());
     }
     
@@ -200,7 +306,8 @@ public class LibraryController {
      * @param fileChooser The file chooser
      * @param tabs The tabs(all)
      */
-    public void closeWindow(Dialog exitSave, FileChooser fileChooser, ArrayList<Tab> tabs) {
+    public void closeWindow(Dialog<Integer> exitSave, FileChooser fileChooser, 
+            ArrayList<Tab> tabs) {
         trySave(exitSave, fileChooser, tabs);
     }
     
@@ -210,23 +317,21 @@ public class LibraryController {
      * @param fileChooser The file Chooser
      * @param exitSave The dialog window for Save and Exit
      */
-    public void trySaveTab(FileChooser fileChooser, Dialog exitSave) {
+    public void trySaveTab(FileChooser fileChooser, 
+            Dialog<Integer> exitSave) {
         int selected = library.getSelectedTab();
-        Optional result = exitSave.showAndWait();
-        int temp = (int) result.get();
+        Optional<Integer> result = exitSave.showAndWait();
+        int temp = result.get();
         
         switch(temp) {
             case 0:
                 break;
             case 1:
                 try {
-                    saveTabAs(fileChooser, selected);
-                    try {
-                        library.removeTab(selected);
-                    }
-                    catch(ArrayIndexOutOfBoundsException ex) {
-                        library.showAlert("Error, cant close tab " + ex.getMessage());
-                    }
+                    // The tab stays open if the save fails
+                    saveTabAs(fileChooser, selected).addEventHandler(
+                            WorkerStateEvent.WORKER_STATE_SUCCEEDED, 
+                            new TabSavedHandler(engine.getLibrary(selected)));
                 }
                 catch (NullPointerException ex) {
                     library.showAlert(ex.getMessage());
@@ -234,6 +339,12 @@ public class LibraryController {
                 }
                 break;
             case 2:
+                try {
+                    engine.discardJournal(selected);
+                }
+                catch(IOException ex) {
+                    library.showAlert("Journal not deleted: " + ex.getMessage());
+                }
                 try {
                     library.removeTab(selected);
                 }
@@ -263,7 +374,7 @@ public class LibraryController {
         if(result.isPresent()) {
             Book temp = result.get();
             int selected = library.getSelectedTab();
-            libraries.get(selected).addBook(temp);
+            engine.addBook(selected, temp);
             updateTableView(selected);
             pane.getChildren().addAll(path,image);
             transition.play();
@@ -279,44 +390,118 @@ public class LibraryController {
      * @param titleRadio    The radio button for Title
      * @param authorRadio   The radio button for Authors
      * @param searchField   The text field in search area
+     * @param ignoreCaseBox The check box to ignore case and accents
+     */
+    public void searchBook(ToggleGroup radioGroup, RadioButton isbnRadio, 
+            RadioButton titleRadio, RadioButton authorRadio, TextField searchField,
+            CheckBox ignoreCaseBox) {
+        searchBook(radioGroup, isbnRadio, titleRadio, authorRadio, searchField, 
+                ignoreCaseBox, false);
+    }
+    
+    /**
+     * Search a book in a library(tab) in the background
+     * A search still running is cancelled, the books found are added to the
+     * table view in chunks as soon as they are available
+     * @param radioGroup The toggle group of buttons
+     * @param isbnRadio The radio button for ISBN
+     * @param titleRadio    The radio button for Title
+     * @param authorRadio   The radio button for Authors
+     * @param searchField   The text field in search area
+     * @param ignoreCaseBox The check box to ignore case and accents
+     * @param typed true when searching while the text is typed, no alerts 
+     *              are shown then and an empty text shows the whole library
      */
     public void searchBook(ToggleGroup radioGroup, RadioButton isbnRadio, 
-            RadioButton titleRadio, RadioButton authorRadio, TextField searchField) {
+            RadioButton titleRadio, RadioButton authorRadio, TextField searchField,
+            CheckBox ignoreCaseBox, boolean typed) {
         
-        String search = searchField.getText();
-            
-        if(search == null || search.isEmpty()) {
-            library.showAlert("Invalid search, try again");
+        String text = searchField.getText();
+        int selected = library.getSelectedTab();
+        cancelSearch();
+        
+        if(typed && (selected < 0 || engine.getLibrary(selected).getSize() == 0)) {
+            return;
         }
-        else {
-            CollectionOfBooks temp = new CollectionOfBooks();
-                
-            if(radioGroup.getSelectedToggle() == isbnRadio) {
-                    
-                ArrayList<Book> isbn = libraries.get(library.getSelectedTab()).
-                        getBooksByIsbn(search);
-                    
-                for(Book found: isbn) {
-                    temp.addBook(found);
-                }
+        if(text == null || text.isEmpty()) {
+            if(typed) {
+                updateTableView(selected);
             }
-            else if(radioGroup.getSelectedToggle() == titleRadio) {
-                ArrayList<Book> title = libraries.get(library.getSelectedTab()).
-                        getBooksByTitle(search);
-                    
-                for(Book found: title) {
-                    temp.addBook(found);
-                }
+            else {
+                library.showAlert("Invalid search, try again");
             }
-            else if(radioGroup.getSelectedToggle() == authorRadio) {
-                ArrayList<Book> author = libraries.get(library.getSelectedTab()).
-                        getBooksByAuthor(search);
-                
-                for(Book found: author) {
-                    temp.addBook(found);
-                }
-            } 
-            updateSearchView(temp);
+            return;
+        }
+        
+        SearchField field = selectedField(radioGroup, isbnRadio, titleRadio, 
+                authorRadio);
+        if(field == null) {
+            return;
+        }
+        if(session == null || session.getLibrary() != engine.getLibrary(selected)) {
+            session = new SearchSession(engine.getLibrary(selected));
+        }
+        search = new SearchTask(selected, session, field, text, 
+                ignoreCaseBox.isSelected(), typed);
+        searcher.execute(search);
+    }
+    
+    /**
+     * Search the books of all libraries(tabs) at once in the background
+     * The books found are shown in a window of their own as the libraries
+     * are searched, a book held by several libraries is shown once
+     * @param radioGroup The toggle group of buttons
+     * @param isbnRadio The radio button for ISBN
+     * @param titleRadio    The radio button for Title
+     * @param authorRadio   The radio button for Authors
+     * @param searchField   The text field in search area
+     * @param ignoreCaseBox The check box to ignore case and accents
+     */
+    public void searchAll(ToggleGroup radioGroup, RadioButton isbnRadio, 
+            RadioButton titleRadio, RadioButton authorRadio, TextField searchField,
+            CheckBox ignoreCaseBox) {
+        String text = searchField.getText();
+        SearchField field = selectedField(radioGroup, isbnRadio, titleRadio, 
+                authorRadio);
+        if(text == null || text.isEmpty() || field == null) {
+            library.showAlert("Invalid search, try again");
+            return;
+        }
+        if(federated != null) {
+            federated.cancel();
+        }
+        federated = new FederatedTask(engine.federatedSearch(searcher), field, 
+                text, ignoreCaseBox.isSelected());
+        library.showSearchResults(federated.hits, "Search all libraries: " + text);
+        searcher.execute(federated);
+    }
+    
+    /**
+     * Return the property of the books chosen to be searched
+     * @return field The field of the selected radio button, null if none
+     */
+    private SearchField selectedField(ToggleGroup radioGroup, 
+            RadioButton isbnRadio, RadioButton titleRadio, RadioButton authorRadio) {
+        if(radioGroup.getSelectedToggle() == isbnRadio) {
+            return SearchField.ISBN;
+        }
+        else if(radioGroup.getSelectedToggle() == titleRadio) {
+            return SearchField.TITLE;
+        }
+        else if(radioGroup.getSelectedToggle() == authorRadio) {
+            return SearchField.AUTHOR;
+        }
+        return null;
+    }
+    
+    /**
+     * Cancel the search running in the background, its remaining results
+     * are not shown
+     */
+    public void cancelSearch() {
+        if(search != null) {
+            search.cancel();
+            search = null;
         }
     }
     
@@ -342,9 +527,15 @@ public class LibraryController {
         try {
             File name = fileChooser.showOpenDialog(primaryStage);
             if(name != null) {
+                long start = LOAD_FILE.start();
                 createLibrary(tabView);
-                libraries.get(library.getSelectedTab()).deSerializeFromFile(name);
+                int recovered = engine.loadFile(library.getSelectedTab(), name);
+                LOAD_FILE.stop(start);
                 updateTableView(library.getSelectedTab());
+                if(recovered > 0) {
+                    library.showAlert("Recovered " + recovered + 
+                            " unsaved changes");
+                }
             }
             else {
                 library.showAlert("Canceled file load");
@@ -355,4 +546,513 @@ public class LibraryController {
             primaryStage.close();
         } 
     }
+    
+    /**
+     * Import a catalogue feed (.csv or .mrk) into the selected library in
+     * the background, the table shows the books as they are added
+     * @param fileChooser The file chooser
+     */
+    public void importCatalog(FileChooser fileChooser) {
+        fileChooser.setTitle("Import catalog (.csv, .mrk)");
+        File name = fileChooser.showOpenDialog(primaryStage);
+        if(name == null) {
+            library.showAlert("Canceled import");
+            return;
+        }
+        ImportTask task = new ImportTask(
+                engine.getLibrary(library.getSelectedTab()), name);
+        task.setOnSucceeded(new ImportedHandler());
+        task.setOnFailed(new ImportFailedHandler());
+        library.showProgress(task, "Importing " + name.getName());
+        saver.execute(task);
+    }
+    
+    /**
+     * Export the books shown in the selected table, the whole library or
+     * the results of the last search, in the background
+     * The format is chosen by the extension: .csv, .jsonl or plain text
+     * @param fileChooser The file chooser
+     */
+    public void exportTable(FileChooser fileChooser) {
+        fileChooser.setTitle("Export books (.csv, .jsonl, .txt)");
+        File name = fileChooser.showSaveDialog(primaryStage);
+        if(name == null) {
+            library.showAlert("Canceled export");
+            return;
+        }
+        int selected = library.getSelectedTab();
+        List<Book> shown = library.getTables().get(selected).getItems();
+        List<Book> books;
+        if(shown == library.getLibraryLists().get(selected)) {
+            books = engine.getLibrary(selected).snapshot();
+        }
+        else {
+            // Search results are only changed on this thread, so copy them
+            books = new ArrayList<>(shown);
+        }
+        ExportTask task = new ExportTask(books, name);
+        task.setOnSucceeded(new ExportedHandler());
+        task.setOnFailed(new ExportFailedHandler());
+        library.showProgress(task, "Exporting " + name.getName());
+        saver.execute(task);
+    }
+    
+    /**
+     * A SaveTask object saves a copy of a library to a file
+     * The saved changes are removed from the journal of the library
+     */
+    public static class SaveTask extends Task<Void> implements ProgressListener {
+        private final CollectionOfBooks lib;
+        private final List<Book> books;
+        private final long mark;
+        private final File name;
+        
+        /**
+         * Constructor of SaveTask, copies the books of the library
+         * @param lib The library to save
+         * @param name The file to save to
+         */
+        public SaveTask(CollectionOfBooks lib, File name) {
+            this.lib = lib;
+            this.books = lib.snapshot();
+            this.mark = lib.journalMark();
+            this.name = name;
+        }
+
+        @Override
+        protected Void call() throws IOException {
+            CollectionOfBooks.saveBooks(books, name, this);
+            // Before the handlers of the saved library close its journal
+            try {
+                lib.journalSaved(name, mark);
+            }
+            catch(IOException ex) {
+                System.err.println("Journal not updated: " + ex.getMessage());
+            }
+            return null;
+        }
+
+        @Override
+        public void progress(long done, long total) {
+            updateProgress(done, total);
+        }
+    }
+    
+    /**
+     * An ImportTask object imports a catalogue feed into a library
+     */
+    public static class ImportTask extends Task<ImportReport> 
+            implements ProgressListener, Consumer<List<Book>> {
+        private final CollectionOfBooks lib;
+        private final File name;
+        
+        /**
+         * Constructor of ImportTask
+         * @param lib The library the books are added to
+         * @param name The catalogue file
+         */
+        public ImportTask(CollectionOfBooks lib, File name) {
+            this.lib = lib;
+            this.name = name;
+        }
+
+        @Override
+        protected ImportReport call() throws IOException {
+            long start = IMPORT_CATALOG.start();
+            try {
+                return new CatalogImporter(lib, this).importFile(name, this);
+            }
+            finally {
+                IMPORT_CATALOG.stop(start);
+            }
+        }
+
+        /**
+         * Add the books of a chunk on the JavaFX thread, since the library
+         * may be shown in a table, and wait until they are added. The books
+         * are not added if the task is canceled before they are
+         * @param books The books to add
+         */
+        @Override
+        public void accept(List<Book> books) {
+            FutureTask<Void> add = new FutureTask<>(
+                    new AddBooks(lib, books, this), null);
+            Platform.runLater(add);
+            try {
+                add.get();
+            }
+            catch(InterruptedException ex) {
+                // The import stops before the next chunk
+                Thread.currentThread().interrupt();
+            }
+            catch(ExecutionException ex) {
+                throw new IllegalStateException("Books not added: " + 
+                        ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+
+        @Override
+        public void progress(long done, long total) {
+            updateProgress(done, total);
+        }
+    }
+    
+    /**
+     * An AddBooks object adds books to a library, unless the task adding
+     * them was canceled before it ran
+     */
+    private static class AddBooks implements Runnable {
+        private final CollectionOfBooks lib;
+        private final List<Book> books;
+        private final Task<?> task;
+        
+        public AddBooks(CollectionOfBooks lib, List<Book> books, Task<?> task) {
+            this.lib = lib;
+            this.books = books;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if(!task.isCancelled()) {
+                lib.addBooks(books);
+            }
+        }
+    }
+    
+    /**
+     * An ExportTask object writes books to a text file, one book at a time
+     */
+    public static class ExportTask extends Task<Integer> 
+            implements ProgressListener {
+        private final List<Book> books;
+        private final File name;
+        
+        /**
+         * Constructor of ExportTask
+         * @param books The books to export, not changed while exporting
+         * @param name The file to export to
+         */
+        public ExportTask(List<Book> books, File name) {
+            this.books = books;
+            this.name = name;
+        }
+
+        @Override
+        protected Integer call() throws IOException {
+            long start = EXPORT_TABLE.start();
+            try {
+                LibraryEngine.export(books, name, this);
+                return books.size();
+            }
+            finally {
+                EXPORT_TABLE.stop(start);
+            }
+        }
+
+        @Override
+        public void progress(long done, long total) {
+            updateProgress(done, total);
+        }
+    }
+    
+    /**
+     * A SearchTask object searches a library in the background
+     * The books found are passed to the table view while the library is
+     * searched, in chunks starting with a small one so that the first books
+     * are shown right away, and cancelling the task stops the search
+     * While typing, a text extending the previous one only compares the
+     * books found for the previous text
+     */
+    private class SearchTask extends Task<Integer> 
+            implements Consumer<List<Book>> {
+        private final int tab;
+        private final SearchSession session;
+        private final SearchField field;
+        private final String text;
+        private final boolean ignoreCase;
+        private final boolean typed;
+        private final ObservableList<Book> results;
+        // Until the last results are shown
+        private final long start = SEARCH_BOOK.start();
+        private int chunk = FIRST_CHUNK;
+        
+        public SearchTask(int tab, SearchSession session, SearchField field, 
+                String text, boolean ignoreCase, boolean typed) {
+            this.tab = tab;
+            this.session = session;
+            this.field = field;
+            this.text = text;
+            this.ignoreCase = ignoreCase;
+            this.typed = typed;
+            this.results = FXCollections.observableArrayList();
+        }
+
+        @Override
+        protected Integer call() throws InterruptedException {
+            // Cancelling the task interrupts the search
+            return session.search(field, text, ignoreCase, this).size();
+        }
+
+        /**
+         * Pass books found to the table view while the library is still
+         * searched
+         * @param found The books found
+         */
+        @Override
+        public void accept(List<Book> found) {
+            int i = 0;
+            while(i < found.size() && !isCancelled()) {
+                int end = Math.min(i + chunk, found.size());
+                Platform.runLater(new ShowResults(this, 
+                        new ArrayList<>(found.subList(i, end))));
+                chunk = Math.min(chunk * 2, MAX_CHUNK);
+                i = end;
+            }
+        }
+
+        @Override
+        protected void succeeded() {
+            SEARCH_BOOK.stop(start);
+            if(getValue() == 0) {
+                if(typed) {
+                    show(results);
+                }
+                else {
+                    library.showAlert("No results");
+                }
+            }
+        }
+
+        @Override
+        protected void failed() {
+            if(!typed) {
+                library.showAlert("Search failed: " + getException().getMessage());
+            }
+        }
+        
+        /**
+         * Show the results in the table view of the library searched
+         * The table view keeps its books until the first results arrive
+         * @param chunk The books found to be added
+         */
+        private void show(List<Book> chunk) {
+            if(isCancelled() || tab >= library.getTables().size()) {
+                return;
+            }
+            if(data != results) {
+                data = results;
+                library.getTables().get(tab).setItems(results);
+            }
+            if(chunk != results) {
+                results.addAll(chunk);
+            }
+        }
+    }
+    
+    /**
+     * A FederatedTask object searches all libraries in the background
+     * The books found in each library are added to the results on the
+     * application thread as soon as the library has been searched
+     */
+    private class FederatedTask extends Task<Integer> 
+            implements Consumer<List<SearchHit>> {
+        private final FederatedSearch search;
+        private final SearchField field;
+        private final String text;
+        private final boolean ignoreCase;
+        private final ObservableList<SearchHit> hits;
+        // Until the last hits are shown
+        private final long start = SEARCH_ALL.start();
+        
+        public FederatedTask(FederatedSearch search, SearchField field, 
+                String text, boolean ignoreCase) {
+            this.search = search;
+            this.field = field;
+            this.text = text;
+            this.ignoreCase = ignoreCase;
+            this.hits = FXCollections.observableArrayList();
+        }
+
+        @Override
+        protected Integer call() throws InterruptedException {
+            return search.search(field, text, ignoreCase, this).size();
+        }
+
+        @Override
+        public void accept(List<SearchHit> added) {
+            Platform.runLater(new ShowHits(this, added));
+        }
+
+        @Override
+        protected void succeeded() {
+            SEARCH_ALL.stop(start);
+            if(getValue() == 0) {
+                library.showAlert("No results");
+            }
+        }
+
+        @Override
+        protected void failed() {
+            library.showAlert("Search failed: " + getException().getMessage());
+        }
+        
+        /**
+         * Add the books found in a library to the results
+         * Books found before may now be held by more libraries
+         * @param added The books not found before
+         */
+        private void show(List<SearchHit> added) {
+            if(isCancelled()) {
+                return;
+            }
+            hits.addAll(added);
+            library.refreshSearchResults();
+        }
+    }
+    
+    /**
+     * A ShowHits object adds the books found in a library to the results
+     * of a search of all libraries on the application thread
+     */
+    private static class ShowHits implements Runnable {
+        private final FederatedTask task;
+        private final List<SearchHit> added;
+        
+        public ShowHits(FederatedTask task, List<SearchHit> added) {
+            this.task = task;
+            this.added = added;
+        }
+
+        @Override
+        public void run() {
+            task.show(added);
+        }
+    }
+    
+    /**
+     * A ShowResults object adds a chunk of search results to the table view
+     * on the application thread
+     */
+    private static class ShowResults implements Runnable {
+        private final SearchTask task;
+        private final List<Book> chunk;
+        
+        public ShowResults(SearchTask task, List<Book> chunk) {
+            this.task = task;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run() {
+            task.show(chunk);
+        }
+    }
+    
+    /**
+     * A SaveFailedHandler object shows why a save failed
+     */
+    private class SaveFailedHandler implements EventHandler<WorkerStateEvent> {
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            library.showAlert("Save failed: " + 
+                    event.getSource().getException().getMessage());
+        }
+    }
+    
+    /**
+     * An ImportedHandler object shows the report of an import
+     */
+    private class ImportedHandler implements EventHandler<WorkerStateEvent> {
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            ImportReport report = (ImportReport) event.getSource().getValue();
+            StringBuilder message = new StringBuilder(report.toString());
+            // The first errors are enough to see what is wrong with a feed
+            List<String> errors = report.getErrors();
+            for(int i = 0; i < errors.size() && i < 10; i++) {
+                message.append('\n').append(errors.get(i));
+            }
+            library.showAlert(message.toString());
+        }
+    }
+    
+    /**
+     * An ImportFailedHandler object shows why an import failed
+     */
+    private class ImportFailedHandler implements EventHandler<WorkerStateEvent> {
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            library.showAlert("Import failed: " + 
+                    event.getSource().getException().getMessage());
+        }
+    }
+    
+    /**
+     * An ExportedHandler object tells how many books were exported
+     */
+    private class ExportedHandler implements EventHandler<WorkerStateEvent> {
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            library.showAlert("Exported " + event.getSource().getValue() + 
+                    " books");
+        }
+    }
+    
+    /**
+     * An ExportFailedHandler object shows why an export failed
+     */
+    private class ExportFailedHandler implements EventHandler<WorkerStateEvent> {
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            library.showAlert("Export failed: " + 
+                    event.getSource().getException().getMessage());
+        }
+    }
+    
+    /**
+     * A TabSavedHandler object closes the tab of a library when the library
+     * has been saved
+     */
+    private class TabSavedHandler implements EventHandler<WorkerStateEvent> {
+        private final CollectionOfBooks lib;
+        
+        public TabSavedHandler(CollectionOfBooks lib) {
+            this.lib = lib;
+        }
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            // Other tabs may have been closed while the library was saved
+            int tab = engine.getLibraries().indexOf(lib);
+            if(tab >= 0) {
+                library.removeTab(tab);
+            }
+        }
+    }
+    
+    /**
+     * A SavedHandler object closes the window when all saves have succeeded
+     */
+    private class SavedHandler implements EventHandler<WorkerStateEvent> {
+        private int remaining;
+        
+        public SavedHandler(int saves) {
+            this.remaining = saves;
+        }
+
+        @Override
+        public void handle(WorkerStateEvent event) {
+            remaining--;
+            if(remaining == 0) {
+                closeJournals();
+                primaryStage.close();
+            }
+        }
+    }
 }
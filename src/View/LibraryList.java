@@ -0,0 +1,167 @@
+package View;
+
+import Model.Book;
+import Model.CollectionListener;
+import Model.CollectionOfBooks;
+import Model.SortKey;
+import java.util.Collections;
+import java.util.List;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * A LibraryList shows the books of a library in a table view
+ * The list reads the books from the library when the table asks for them
+ * and passes every change of the library on to the table, so the books are
+ * never copied and a single change only updates a single row
+ * The books can be shown in the order of a sort key of the library, which
+ * the library keeps sorted, so changing the order does not sort the books
+ * The library must be changed on the application thread while it is shown
+ * @author
+ */
+public class LibraryList extends ObservableListBase<Book>
+        implements CollectionListener {
+    private final CollectionOfBooks lib;
+    private List<Book> sorted;
+    private SortKey order;
+    private boolean ascending;
+    private int size;
+
+    /**
+     * Constructor of LibraryList, starts observing the library
+     * @param lib The library to show
+     */
+    public LibraryList(CollectionOfBooks lib) {
+        this.lib = lib;
+        this.ascending = true;
+        this.size = lib.getSize();
+        lib.addCollectionListener(this);
+    }
+
+    /**
+     * Stop observing the library, when its table is closed
+     */
+    public void dispose() {
+        if(order == null) {
+            lib.removeCollectionListener(this);
+        }
+        else {
+            lib.removeCollectionListener(order, this);
+        }
+    }
+    
+    /**
+     * Show the books in another order
+     * @param order The sort key, or null for the order of the library
+     * @param ascending true for ascending order, false for descending
+     */
+    public void setOrder(SortKey order, boolean ascending) {
+        if(order == this.order && ascending == this.ascending) {
+            return;
+        }
+        dispose();
+        this.order = order;
+        this.ascending = ascending;
+        if(order == null) {
+            sorted = null;
+            lib.addCollectionListener(this);
+        }
+        else {
+            sorted = lib.getBooks(order);
+            lib.addCollectionListener(order, this);
+        }
+        booksReset();
+    }
+
+    @Override
+    public Book get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + 
+                    ", Size: " + size);
+        }
+        if(!ascending) {
+            index = size - 1 - index;
+        }
+        return sorted == null ? lib.getBook(index) : sorted.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void bookAdded(int index) {
+        if(!Platform.isFxApplicationThread()) {
+            resetLater();
+            return;
+        }
+        size++;
+        if(!ascending) {
+            index = size - 1 - index;
+        }
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    @Override
+    public void bookRemoved(int index, Book book) {
+        if(!Platform.isFxApplicationThread()) {
+            resetLater();
+            return;
+        }
+        if(!ascending) {
+            index = size - 1 - index;
+        }
+        size--;
+        beginChange();
+        nextRemove(index, book);
+        endChange();
+    }
+
+    @Override
+    public void bookUpdated(int index) {
+        if(!Platform.isFxApplicationThread()) {
+            resetLater();
+            return;
+        }
+        if(!ascending) {
+            index = size - 1 - index;
+        }
+        beginChange();
+        nextUpdate(index);
+        endChange();
+    }
+
+    @Override
+    public void booksReset() {
+        if(!Platform.isFxApplicationThread()) {
+            resetLater();
+            return;
+        }
+        // The books that were shown are not known any more, the table only
+        // needs to know how many rows were replaced
+        int removed = size;
+        size = lib.getSize();
+        beginChange();
+        nextReplace(0, size, Collections.<Book>nCopies(removed, null));
+        endChange();
+    }
+
+    private void resetLater() {
+        Platform.runLater(new ResetHandler());
+    }
+
+    /**
+     * A ResetHandler object shows the books again after the library was
+     * changed by another thread
+     */
+    private class ResetHandler implements Runnable {
+
+        @Override
+        public void run() {
+            booksReset();
+        }
+    }
+}
@@ -3,24 +3,44 @@ package View;
 import Model.Author;
 import Model.Book;
 import javafx.scene.layout.BorderPane;
-import Model.CollectionOfBooks;
+import Model.LibraryEngine;
+import Model.Metric;
+import Model.Metrics;
+import Model.SearchHit;
+import Model.SortKey;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
 import javafx.animation.PathTransition;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
+import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar.ButtonData;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
@@ -39,6 +59,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import javafx.util.Callback;
+import javafx.util.Duration;
 
 /**
  * A LibraryView is an object that contains nodes of the GUI
@@ -46,21 +67,35 @@ import javafx.util.Callback;
  */
 public class LibraryView extends VBox {
     
+    // Milliseconds without typing before the search text is searched
+    private static final int SEARCH_DELAY = 300;
+    // Milliseconds between two updates of the statistics shown
+    private static final int STATISTICS_INTERVAL = 1000;
+    
     private final Stage primaryStage;
     private AnimationView animation;
-    private ArrayList<CollectionOfBooks> libraries;
-    private final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+    private final LibraryEngine engine;
+    private Alert alert;
     private LibraryController controller;
     
     private FileChooser fileChooser;
     private BorderPane pane;
     private Dialog<Book> dialogAdd;
-    private Dialog exitSave;
+    private Dialog<Integer> exitSave;
     private ToggleGroup radioGroup;
     private TextField searchField;
+    private CheckBox ignoreCaseBox;
+    private CheckMenuItem offHeapItem;
     private TabPane tabView;
-    private ArrayList<TableView> tables;
+    private ArrayList<TableView<Book>> tables;
+    private ArrayList<LibraryList> lists;
     private ArrayList<Tab> tabs;
+    private Stage resultsStage;
+    private TableView<SearchHit> resultsTable;
+    private Stage statisticsStage;
+    private TableView<Metric> statisticsTable;
+    private Timeline statisticsUpdate;
+    private VBox progressBox;
     private PathTransition transition;
     private ImageView image;
     private Path path;
@@ -72,22 +107,49 @@ public class LibraryView extends VBox {
     public LibraryView(Stage primaryStage) {
         
         this.primaryStage = primaryStage;
-        this.libraries = new ArrayList<>();
+        this.engine = new LibraryEngine();
         this.tables = new ArrayList<>();
+        this.lists = new ArrayList<>();
         this.tabs = new ArrayList<>();
-        this.controller = new LibraryController(libraries, primaryStage, this);
+        this.controller = new LibraryController(engine, primaryStage, this);
         initView();
-        initAnimation();
+        // Only the picture is loaded now, in the background, the dialogs
+        // and the animation are built when they are first used
+        this.animation = new AnimationView(this, "book.png", 80, 80);
     }
     
     /**
      * Return table views
      * @return tables   The tables shown in the GUI
      */
-    public ArrayList<TableView> getTables() {
+    public ArrayList<TableView<Book>> getTables() {
         return this.tables;
     }
     
+    /**
+     * Return the tabs of the libraries
+     * @return tabs The tabs, one per library
+     */
+    public ArrayList<Tab> getTabs() {
+        return this.tabs;
+    }
+    
+    /**
+     * Return the lists showing the libraries in the table views
+     * @return lists    The lists of the libraries, one per table
+     */
+    public ArrayList<LibraryList> getLibraryLists() {
+        return this.lists;
+    }
+    
+    /**
+     * Return whether new libraries store their books outside the Java heap
+     * @return true if the user chose off-heap storage, false otherwise
+     */
+    public boolean isOffHeap() {
+        return offHeapItem.isSelected();
+    }
+    
     /**
      * Return the tab selected by user
      * @return tabView  The index of the tab array list selected by user
@@ -130,8 +192,13 @@ public class LibraryView extends VBox {
      */
     public Tab createTab() {
         Tab tab = new Tab();
-        tab.setText("Library " + libraries.size());
-        tab.setContent(initTableView());
+        int lib = engine.getSize() - 1;
+        tab.setText(engine.getName(lib));
+        TableView<Book> table = initTableView();
+        LibraryList list = new LibraryList(engine.getLibrary(lib));
+        table.setItems(list);
+        lists.add(list);
+        tab.setContent(table);
         tab.setOnCloseRequest(new CloseTabHandler());
         tabs.add(tab);
         tabView.getSelectionModel().select(tab);
@@ -147,27 +214,68 @@ public class LibraryView extends VBox {
             throw new ArrayIndexOutOfBoundsException("Tab is out of bounds");
         }
         else {
-            libraries.remove(tab);
+            controller.cancelSearch();
+            try {
+                engine.closeLibrary(tab);
+            }
+            catch(IOException ex) {
+                showAlert("Journal not closed: " + ex.getMessage());
+            }
+            lists.remove(tab).dispose();
             tables.remove(tab);
             tabs.remove(tab);
             tabView.getTabs().remove(tab);
         }
     }
     
+    /**
+     * Return the file chooser, initialized when first used
+     * @return fileChooser The file chooser
+     */
+    private FileChooser getFileChooser() {
+        if(fileChooser == null) {
+            initFileChooser();
+        }
+        return fileChooser;
+    }
+    
+    /**
+     * Return the dialog window for saving, initialized when first used
+     * @return exitSave The dialog window for Save and Exit
+     */
+    private Dialog<Integer> getSaveDialog() {
+        if(exitSave == null) {
+            initSaveDialog();
+        }
+        return exitSave;
+    }
+    
+    /**
+     * Return the dialog window for the Add button, initialized when first used
+     * @return dialogAdd The dialog window to add a book
+     */
+    private Dialog<Book> getAddDialog() {
+        if(dialogAdd == null) {
+            initAddDialogView();
+        }
+        return dialogAdd;
+    }
+    
     /**
      * Initialize the file chooser to load an existing file
      */
     private void initFileChooser() {
         fileChooser = new FileChooser();
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
-                "SER", "*.ser"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Library", "*.lib", "*.ser"),
+                new FileChooser.ExtensionFilter("SER", "*.ser"));
     }
     /**
      * Initialize a dialog window for saving purpose
      * User can chose save or cancel
      */
     private void initSaveDialog() {
-        exitSave = new Dialog();
+        exitSave = new Dialog<>();
         exitSave.setContentText("Save before closing?");
         exitSave.setTitle("Close and save");
         
@@ -216,20 +324,28 @@ public class LibraryView extends VBox {
         Menu fileMenu = new Menu("File");
         MenuItem saveItem = new MenuItem("Save as");
         MenuItem loadItem = new MenuItem("Load file");
+        MenuItem importItem = new MenuItem("Import catalog");
+        MenuItem exportItem = new MenuItem("Export table");
+        offHeapItem = new CheckMenuItem("Store new libraries off-heap");
         
         saveItem.setOnAction(new SaveHandler());
         loadItem.setOnAction(new LoadHandler());
+        importItem.setOnAction(new ImportHandler());
+        exportItem.setOnAction(new ExportHandler());
         
-        fileMenu.getItems().addAll(saveItem, loadItem);
+        fileMenu.getItems().addAll(saveItem, loadItem, importItem, exportItem,
+                offHeapItem);
         
         Menu helpMenu = new Menu("Help");
         MenuItem versionItem = new MenuItem("Version");
         MenuItem aboutItem = new MenuItem("About");
+        MenuItem statisticsItem = new MenuItem("Statistics");
         
         versionItem.setOnAction(new VersionHandler());
         aboutItem.setOnAction(new AboutHandler());
+        statisticsItem.setOnAction(new StatisticsHandler());
         
-        helpMenu.getItems().addAll(versionItem, aboutItem);
+        helpMenu.getItems().addAll(versionItem, aboutItem, statisticsItem);
 
         menuBar = new MenuBar();
         menuBar.getMenus().addAll(menu, fileMenu, helpMenu);
@@ -242,28 +358,33 @@ public class LibraryView extends VBox {
      * Set columns for the table
      * @return table    The table initialized
      */
-    private TableView initTableView() {
-        TableView table = new TableView();
+    private TableView<Book> initTableView() {
+        TableView<Book> table = new TableView<>();
         table.setTableMenuButtonVisible(true);
         table.setEditable(false);
-        TableColumn isbnColumn = new TableColumn("ISBN");
+        TableColumn<Book, Object> isbnColumn = new TableColumn<>("ISBN");
+        isbnColumn.setUserData(SortKey.ISBN);
         isbnColumn.setMinWidth(100);
         isbnColumn.setCellValueFactory(new PropertyValueFactory<>("isbn"));
         
-        TableColumn titleColumn = new TableColumn("Title");
+        TableColumn<Book, Object> titleColumn = new TableColumn<>("Title");
+        titleColumn.setUserData(SortKey.TITLE);
         titleColumn.setMinWidth(300);
         titleColumn.setCellValueFactory(new PropertyValueFactory<>("title"));
         
-        TableColumn editionColumn = new TableColumn("Edition");
+        TableColumn<Book, Object> editionColumn = new TableColumn<>("Edition");
+        editionColumn.setUserData(SortKey.EDITION);
         editionColumn.setMinWidth(50);
         editionColumn.setCellValueFactory(new PropertyValueFactory<>("edition"));
         
-        TableColumn priceColumn = new TableColumn("Price");
+        TableColumn<Book, Object> priceColumn = new TableColumn<>("Price");
+        priceColumn.setUserData(SortKey.PRICE);
         priceColumn.setMinWidth(80);
         priceColumn.setCellValueFactory(new PropertyValueFactory<>("price"));
         
         // The method to read author names from ArrayList
-        TableColumn authorsColumn = new TableColumn("Authors");
+        TableColumn<Book, String> authorsColumn = new TableColumn<>("Authors");
+        authorsColumn.setUserData(SortKey.AUTHOR);
         authorsColumn.setMinWidth(300);
         authorsColumn.setCellValueFactory(new Callback<CellDataFeatures<Book,String>,
                 ObservableValue<String>>() {
@@ -273,8 +394,12 @@ public class LibraryView extends VBox {
             }
         }) ;
         
-        table.getColumns().addAll(isbnColumn, titleColumn, editionColumn, 
-                priceColumn, authorsColumn);
+        table.getColumns().add(isbnColumn);
+        table.getColumns().add(titleColumn);
+        table.getColumns().add(editionColumn);
+        table.getColumns().add(priceColumn);
+        table.getColumns().add(authorsColumn);
+        table.setSortPolicy(new SortPolicyHandler());
         
         tables.add(table);
         return table;
@@ -354,7 +479,7 @@ public class LibraryView extends VBox {
                         String[] authors = author.split(",");
 
                         Book temp = new Book(isbnField.getText(), titleField.getText(),
-                        edition, price, new Author(authors[0]));
+                        edition, price, Author.valueOf(authors[0]));
                         
                         for(int i = 1; i < authors.length; i++) {
                             temp.addAuthor(authors[i]);
@@ -395,26 +520,37 @@ public class LibraryView extends VBox {
         authorRadio.setToggleGroup(radioGroup);
         
         Button searchButton = new Button("Search");
+        Button searchAllButton = new Button("Search all");
         
         searchField = new TextField();
         searchField.setPromptText("Enter search");
         searchField.setMinWidth(190);
         
+        ignoreCaseBox = new CheckBox("Ignore case");
+        
         boxSearch.getChildren().addAll(isbnRadio, titleRadio, authorRadio, 
-                searchField, searchButton);
+                searchField, ignoreCaseBox, searchButton, searchAllButton);
+        
+        searchButton.setOnAction(new SearchHandler(isbnRadio, titleRadio, 
+                authorRadio, false));
+        searchAllButton.setOnAction(new SearchAllHandler(isbnRadio, titleRadio, 
+                authorRadio));
         
-        searchButton.setOnAction(new SearchHandler(isbnRadio, titleRadio, authorRadio));
+        // Search as the user types, once the text has not changed for a while
+        PauseTransition typing = new PauseTransition(Duration.millis(SEARCH_DELAY));
+        typing.setOnFinished(new SearchHandler(isbnRadio, titleRadio, 
+                authorRadio, true));
+        searchField.textProperty().addListener(new TypingHandler(typing));
         
         return boxSearch;
     }
     
     /**
-     * Initialize the animation
+     * Initialize the animation, when a book is added for the first time
      */
     private void initAnimation() {
-        this.animation = new AnimationView(this, "book.png");
         this.path = animation.createPath();
-        this.image = animation.createImage(80,80);
+        this.image = animation.createImage();
         this.transition = animation.createTransition(path, image);
         this.transition.setOnFinished(new LibraryView.AnimationFinishedHandler());
     }
@@ -430,15 +566,13 @@ public class LibraryView extends VBox {
         tabView = new TabPane();
         
         pane.setCenter(tabView);
-        pane.setBottom(initButtonView());
+        progressBox = new VBox(5);
+        progressBox.setAlignment(Pos.CENTER);
+        pane.setBottom(new VBox(10, initButtonView(), progressBox));
         pane.setTop(initSearchDialogView());
         pane.prefHeightProperty().bind(this.heightProperty());
         pane.prefWidthProperty().bind(this.widthProperty());
         
-        initAddDialogView();
-        initFileChooser();
-        initSaveDialog();
-        
         this.getChildren().addAll(menuBar, pane);
         
         controller.createLibrary(tabView);
@@ -451,12 +585,147 @@ public class LibraryView extends VBox {
      * @param message   The message to be shown in Alert window
      */
     public void showAlert(String message) {
+        if(alert == null) {
+            alert = new Alert(Alert.AlertType.INFORMATION);
+        }
         alert.setHeaderText("");
         alert.setTitle("Alert!");
         alert.setContentText(message);
         alert.show();
     }
     
+    /**
+     * Show the results of a search of all libraries in a window of their
+     * own, the window follows later changes of the results
+     * @param hits The books found
+     * @param text The description of the search
+     */
+    public void showSearchResults(ObservableList<SearchHit> hits, String text) {
+        if(resultsStage == null) {
+            resultsTable = initResultsView();
+            resultsStage = new Stage();
+            resultsStage.initOwner(primaryStage);
+            resultsStage.setScene(new Scene(resultsTable, 1100, 500));
+        }
+        resultsStage.setTitle(text);
+        resultsTable.setItems(hits);
+        resultsStage.show();
+        resultsStage.toFront();
+    }
+    
+    /**
+     * Show the libraries of the search results again after more libraries
+     * were found to hold them
+     */
+    public void refreshSearchResults() {
+        if(resultsTable != null) {
+            resultsTable.refresh();
+        }
+    }
+    
+    /**
+     * Initialize the table view of the search results of all libraries
+     * @return table    The table initialized
+     */
+    private TableView<SearchHit> initResultsView() {
+        TableView<SearchHit> table = new TableView<>();
+        table.setEditable(false);
+        String[] names = {"Libraries", "ISBN", "Title", "Edition", "Price", 
+            "Authors"};
+        // The libraries holding a book have no sort key
+        SortKey[] keys = {null, SortKey.ISBN, SortKey.TITLE, SortKey.EDITION, 
+            SortKey.PRICE, SortKey.AUTHOR};
+        int[] widths = {150, 100, 300, 50, 80, 300};
+        for(int i = 0; i < names.length; i++) {
+            TableColumn<SearchHit, Object> column = new TableColumn<>(names[i]);
+            column.setMinWidth(widths[i]);
+            column.setCellValueFactory(new HitColumn(keys[i]));
+            table.getColumns().add(column);
+        }
+        return table;
+    }
+    
+    /**
+     * Show the times of the operations in a window of their own, updated
+     * every second while the window is shown
+     */
+    public void showStatistics() {
+        if(statisticsStage == null) {
+            statisticsTable = initStatisticsView();
+            CheckBox enabledBox = new CheckBox("Record statistics");
+            enabledBox.setSelected(Metrics.isEnabled());
+            enabledBox.setOnAction(new MetricsEnabledHandler(enabledBox));
+            Button resetButton = new Button("Reset");
+            resetButton.setOnAction(new ResetStatisticsHandler());
+            Button dumpButton = new Button("Save to file");
+            dumpButton.setOnAction(new DumpStatisticsHandler());
+            HBox buttons = new HBox(20, enabledBox, resetButton, dumpButton);
+            buttons.setAlignment(Pos.CENTER);
+            
+            statisticsStage = new Stage();
+            statisticsStage.initOwner(primaryStage);
+            statisticsStage.setTitle("Statistics");
+            statisticsStage.setScene(new Scene(new VBox(10, statisticsTable, 
+                    buttons), 900, 400));
+            statisticsUpdate = new Timeline(new KeyFrame(
+                    Duration.millis(STATISTICS_INTERVAL), 
+                    new UpdateStatisticsHandler()));
+            statisticsUpdate.setCycleCount(Animation.INDEFINITE);
+            statisticsStage.setOnHidden(new StatisticsHiddenHandler());
+        }
+        updateStatistics();
+        statisticsUpdate.play();
+        statisticsStage.show();
+        statisticsStage.toFront();
+    }
+    
+    /**
+     * Show the current times of the operations that have been timed
+     */
+    private void updateStatistics() {
+        ObservableList<Metric> used = FXCollections.observableArrayList();
+        for(Metric metric: Metrics.getMetrics()) {
+            if(metric.getCount() > 0) {
+                used.add(metric);
+            }
+        }
+        statisticsTable.setItems(used);
+        statisticsTable.refresh();
+    }
+    
+    /**
+     * Initialize the table view of the times of the operations
+     * @return table    The table initialized
+     */
+    private TableView<Metric> initStatisticsView() {
+        TableView<Metric> table = new TableView<>();
+        table.setEditable(false);
+        String[] names = {"Operation", "Count", "Mean (us)", "Median (us)", 
+            "99% (us)", "99.9% (us)", "Max (us)"};
+        for(int i = 0; i < names.length; i++) {
+            TableColumn<Metric, Object> column = new TableColumn<>(names[i]);
+            column.setMinWidth(i == 0 ? 260 : 80);
+            column.setCellValueFactory(new MetricColumn(i));
+            table.getColumns().add(column);
+        }
+        return table;
+    }
+    
+    /**
+     * Show the progress of a background task until it is finished
+     * @param task The task running in the background
+     * @param text The description of the task
+     */
+    public void showProgress(Task<?> task, String text) {
+        HBox row = new HBox(10);
+        row.setAlignment(Pos.CENTER);
+        ProgressBar bar = new ProgressBar();
+        bar.progressProperty().bind(task.progressProperty());
+        row.getChildren().addAll(new Label(text), bar);
+        progressBox.getChildren().add(row);
+        task.stateProperty().addListener(new TaskFinishedHandler(row));
+    }
+    
     /**
      * A CreateLibraryHandler object invokes method to create a new library
      */
@@ -477,7 +746,7 @@ public class LibraryView extends VBox {
         @Override
         public void handle(WindowEvent event) {
             event.consume();
-            controller.closeWindow(exitSave, fileChooser, tabs);
+            controller.closeWindow(getSaveDialog(), getFileChooser(), tabs);
         }
     }
     /**
@@ -489,7 +758,7 @@ public class LibraryView extends VBox {
         @Override
         public void handle(ActionEvent event) {
             event.consume();
-            controller.closeWindow(exitSave, fileChooser, tabs);
+            controller.closeWindow(getSaveDialog(), getFileChooser(), tabs);
         }
     }
     /**
@@ -501,7 +770,7 @@ public class LibraryView extends VBox {
         @Override
         public void handle(Event event) {
             event.consume();
-            controller.trySaveTab(fileChooser, exitSave);
+            controller.trySaveTab(getFileChooser(), getSaveDialog());
         }
     }
     /**
@@ -511,7 +780,106 @@ public class LibraryView extends VBox {
 
         @Override
         public void handle(ActionEvent event) {
-            controller.addBook(dialogAdd, pane, path, image, transition);
+            if(transition == null) {
+                initAnimation();
+            }
+            controller.addBook(getAddDialog(), pane, path, image, transition);
+        }
+    }
+    
+    /**
+     * A SearchAllHandler invokes method to search the books of all libraries
+     */
+    private class SearchAllHandler implements EventHandler<ActionEvent> {
+        private RadioButton isbnRadio;
+        private RadioButton titleRadio;
+        private RadioButton authorRadio;
+        
+        public SearchAllHandler(RadioButton isbnRadio, RadioButton titleRadio, 
+                RadioButton authorRadio) {
+            this.isbnRadio = isbnRadio;
+            this.titleRadio = titleRadio;
+            this.authorRadio = authorRadio;
+        }
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.searchAll(radioGroup, isbnRadio, titleRadio, authorRadio, 
+                    searchField, ignoreCaseBox);
+        }
+    }
+    
+    /**
+     * A HitColumn object reads a value of the book of a search result for a
+     * column, or the libraries holding it when there is no sort key
+     */
+    private static class HitColumn implements Callback<CellDataFeatures<SearchHit, 
+            Object>, ObservableValue<Object>> {
+        private final SortKey key;
+        
+        public HitColumn(SortKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public ObservableValue<Object> call(CellDataFeatures<SearchHit, Object> c) {
+            Book book = c.getValue().getBook();
+            if(key == null) {
+                return new SimpleObjectProperty<>(c.getValue().getLibraries());
+            }
+            switch(key) {
+                case ISBN:
+                    return new SimpleObjectProperty<>(book.getIsbn());
+                case TITLE:
+                    return new SimpleObjectProperty<>(book.getTitle());
+                case EDITION:
+                    return new SimpleObjectProperty<>(book.getEdition());
+                case PRICE:
+                    return new SimpleObjectProperty<>(book.getPrice());
+                default:
+                    return new SimpleObjectProperty<>(book.getAuthorNames());
+            }
+        }
+    }
+    
+    /**
+     * A MetricColumn object reads a value of a metric for a column, the
+     * times are rounded to a tenth of a microsecond
+     */
+    private static class MetricColumn implements Callback<CellDataFeatures<Metric, 
+            Object>, ObservableValue<Object>> {
+        private final int column;
+        
+        public MetricColumn(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public ObservableValue<Object> call(CellDataFeatures<Metric, Object> c) {
+            Metric metric = c.getValue();
+            double micros;
+            switch(column) {
+                case 0:
+                    return new SimpleObjectProperty<>(metric.getName());
+                case 1:
+                    return new SimpleObjectProperty<>(metric.getCount());
+                case 2:
+                    micros = metric.getMeanMicros();
+                    break;
+                case 3:
+                    micros = metric.getMedianMicros();
+                    break;
+                case 4:
+                    micros = metric.getP99Micros();
+                    break;
+                case 5:
+                    micros = metric.getP999Micros();
+                    break;
+                default:
+                    micros = metric.getMaxMicros();
+                    break;
+            }
+            return new SimpleObjectProperty<>(Math.round(micros * 10) / 10.0);
         }
     }
     
@@ -522,18 +890,63 @@ public class LibraryView extends VBox {
         private RadioButton isbnRadio;
         private RadioButton titleRadio;
         private RadioButton authorRadio;
+        private boolean typed;
         
         public SearchHandler(RadioButton isbnRadio, RadioButton titleRadio, 
-                RadioButton authorRadio) {
+                RadioButton authorRadio, boolean typed) {
             this.isbnRadio = isbnRadio;
             this.titleRadio = titleRadio;
             this.authorRadio = authorRadio;
+            this.typed = typed;
         }
 
         @Override
         public void handle(ActionEvent event) {
             controller.searchBook(radioGroup, isbnRadio, titleRadio, authorRadio, 
-                    searchField);
+                    searchField, ignoreCaseBox, typed);
+        }
+    }
+    
+    /**
+     * A SortPolicyHandler object sorts a table when a column header is 
+     * clicked. A library is shown in the order kept by the library for the
+     * first sorted column, search results are sorted as usual
+     */
+    private class SortPolicyHandler implements Callback<TableView<Book>, Boolean> {
+
+        @Override
+        public Boolean call(TableView<Book> table) {
+            if(!(table.getItems() instanceof LibraryList)) {
+                return TableView.DEFAULT_SORT_POLICY.call(table);
+            }
+            LibraryList list = (LibraryList) table.getItems();
+            if(table.getSortOrder().isEmpty()) {
+                list.setOrder(null, true);
+            }
+            else {
+                TableColumn<Book, ?> column = table.getSortOrder().get(0);
+                list.setOrder((SortKey) column.getUserData(), 
+                        column.getSortType() == TableColumn.SortType.ASCENDING);
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * A TypingHandler object restarts the delay before searching the text 
+     * being typed
+     */
+    private class TypingHandler implements ChangeListener<String> {
+        private PauseTransition typing;
+        
+        public TypingHandler(PauseTransition typing) {
+            this.typing = typing;
+        }
+
+        @Override
+        public void changed(ObservableValue<? extends String> observable, 
+                String oldValue, String newValue) {
+            typing.playFromStart();
         }
     }
     
@@ -577,7 +990,7 @@ public class LibraryView extends VBox {
         @Override
         public void handle(ActionEvent event) {
             try {
-                controller.saveAs(fileChooser, tabs);
+                controller.saveAs(getFileChooser(), tabs);
             }
             catch (NullPointerException ex) {
                 showAlert(ex.getMessage());
@@ -592,7 +1005,29 @@ public class LibraryView extends VBox {
 
         @Override
         public void handle(ActionEvent event) {
-            controller.loadFile(fileChooser, tabView);
+            controller.loadFile(getFileChooser(), tabView);
+        }
+    }
+    
+    /**
+     * An ImportHandler object invokes method to import a catalogue feed
+     */
+    private class ImportHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.importCatalog(getFileChooser());
+        }
+    }
+    
+    /**
+     * An ExportHandler object invokes method to export the books shown
+     */
+    private class ExportHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            controller.exportTable(getFileChooser());
         }
     }
     
@@ -618,6 +1053,94 @@ public class LibraryView extends VBox {
         }
     }
     
+    /**
+     * A StatisticsHandler object invokes method to show the times of the
+     * operations
+     */
+    private class StatisticsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            showStatistics();
+        }
+    }
+    
+    /**
+     * An UpdateStatisticsHandler object shows the current times of the
+     * operations
+     */
+    private class UpdateStatisticsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            updateStatistics();
+        }
+    }
+    
+    /**
+     * A StatisticsHiddenHandler object stops updating the statistics when
+     * their window is closed
+     */
+    private class StatisticsHiddenHandler implements EventHandler<WindowEvent> {
+
+        @Override
+        public void handle(WindowEvent event) {
+            statisticsUpdate.stop();
+        }
+    }
+    
+    /**
+     * A MetricsEnabledHandler object starts or stops timing operations
+     */
+    private class MetricsEnabledHandler implements EventHandler<ActionEvent> {
+        private final CheckBox enabledBox;
+        
+        public MetricsEnabledHandler(CheckBox enabledBox) {
+            this.enabledBox = enabledBox;
+        }
+
+        @Override
+        public void handle(ActionEvent event) {
+            Metrics.setEnabled(enabledBox.isSelected());
+        }
+    }
+    
+    /**
+     * A ResetStatisticsHandler object forgets the times of the operations
+     */
+    private class ResetStatisticsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            Metrics.reset();
+            updateStatistics();
+        }
+    }
+    
+    /**
+     * A DumpStatisticsHandler object saves the times of the operations to
+     * a text file chosen by the user
+     */
+    private class DumpStatisticsHandler implements EventHandler<ActionEvent> {
+
+        @Override
+        public void handle(ActionEvent event) {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Save statistics");
+            chooser.setInitialFileName("statistics.txt");
+            File file = chooser.showSaveDialog(statisticsStage);
+            if(file == null) {
+                return;
+            }
+            try {
+                Metrics.dump(file);
+            }
+            catch(IOException ex) {
+                showAlert("Statistics not saved: " + ex.getMessage());
+            }
+        }
+    }
+    
     /**
      * An AnimationFinishedHandler object invokes method to terminate the animation effect
      */
@@ -628,4 +1151,25 @@ public class LibraryView extends VBox {
             pane.getChildren().removeAll(path,image);
         }
     }
+    
+    /**
+     * A TaskFinishedHandler object removes the progress of a finished task
+     */
+    private class TaskFinishedHandler implements ChangeListener<Worker.State> {
+        private final HBox row;
+        
+        public TaskFinishedHandler(HBox row) {
+            this.row = row;
+        }
+
+        @Override
+        public void changed(ObservableValue<? extends Worker.State> observable,
+                Worker.State oldState, Worker.State newState) {
+            if(newState == Worker.State.SUCCEEDED || 
+                    newState == Worker.State.FAILED ||
+                    newState == Worker.State.CANCELLED) {
+                progressBox.getChildren().remove(row);
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package View;
 
+import Model.Metrics;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
@@ -26,6 +27,22 @@ public class Main extends Application {
     }
     
     public static void main(String[] args) {
+        // The metrics can be read by JConsole, registering them takes a while
+        Thread registration = new Thread(new MetricsRegistration(), 
+                "Metrics registration");
+        registration.setDaemon(true);
+        registration.start();
         launch(args);
     }
+    
+    /**
+     * A MetricsRegistration object makes the metrics available over JMX
+     */
+    private static class MetricsRegistration implements Runnable {
+
+        @Override
+        public void run() {
+            Metrics.registerMBeans();
+        }
+    }
 }